@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.EntryResult;
+import com.parkit.parkingsystem.service.ExitResult;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency of an exit under load, each benchmark thread being a gate: the calls of {@link ParkingService#exit(String)}
+ * one after another, or the graph of futures of {@link ParkingService#exitAsync(String)} with its two reads at the
+ * same time. The embedded database answers at once, {@code roundTripMicros} adds the round trip of a remote one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class AsyncExitBenchmark
+{
+    private static final int SPOTS = 1_000;
+    private static final int CONNECTIONS = 32;
+
+    @Param({"sync", "async"})
+    public String exit;
+
+    @Param({"0", "500"})
+    public long roundTripMicros;
+
+    private EmbeddedDataBase dataBase;
+    private ParkingService parkingService;
+
+    @State(Scope.Thread)
+    public static class Gate
+    {
+        private static final AtomicInteger gates = new AtomicInteger();
+        private final String prefix = "G" + gates.incrementAndGet() + "-";
+        private int vehicles;
+        private String parked;
+
+        /**
+         * The vehicle is let in before each exit, out of the measured time. H2 applies the limit of the spot claim
+         * before skipping the spots locked by the other gates, so an entry is sometimes refused with free spots left
+         * and is tried again.
+         */
+        @Setup(Level.Invocation)
+        public void enter(AsyncExitBenchmark benchmark)
+        {
+            parked = prefix + (vehicles++ % 100_000);
+            EntryResult result = benchmark.parkingService.enter(ParkingType.CAR, parked);
+            for (int attempt = 0; attempt < 100 && result.getStatus() == EntryResult.Status.PARKING_FULL; attempt++)
+            {
+                Thread.onSpinWait();
+                result = benchmark.parkingService.enter(ParkingType.CAR, parked);
+            }
+            if (result.getStatus() != EntryResult.Status.ENTERED)
+            {
+                throw new IllegalStateException("Vehicle " + parked + " could not enter: " + result.getMessage());
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        // the gates and the JDBC threads never wait for a connection, only for the database
+        System.setProperty("parkit.db.pool.maxSize", String.valueOf(CONNECTIONS));
+        dataBase = new EmbeddedDataBase("async-exit-benchmark");
+        dataBase.create(SPOTS, 0);
+        dataBase.setRoundTripMicros(roundTripMicros);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBase);
+        TicketDAO ticketDAO = new TicketDAO(dataBase);
+        parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+        if ("async".equals(exit))
+        {
+            parkingService.enableAsyncExits(CONNECTIONS / 2, 256);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() throws Exception
+    {
+        dataBase.setRoundTripMicros(0);
+        dataBase.clear();
+        dataBase.setRoundTripMicros(roundTripMicros);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        parkingService.disableAsyncExits();
+    }
+
+    @Benchmark
+    public ExitResult exit(Gate gate)
+    {
+        ExitResult result = "async".equals(exit) ? parkingService.exitAsync(gate.parked).join() : parkingService.exit(gate.parked);
+        if (result.getStatus() != ExitResult.Status.EXITED)
+        {
+            throw new IllegalStateException("Vehicle " + gate.parked + " could not exit: " + result.getMessage());
+        }
+        return result;
+    }
+}
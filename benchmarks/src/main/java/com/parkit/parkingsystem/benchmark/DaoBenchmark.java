@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry and exit paths of the DAOs against the embedded database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark
+{
+    private static final int SPOTS = 500;
+
+    @Param({"false", "true"})
+    public boolean spotIndex;
+
+    private EmbeddedDataBase dataBase;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+
+    @State(Scope.Thread)
+    public static class Gate
+    {
+        private static int gates;
+        private String platePrefix;
+        private int vehicles;
+
+        @Setup
+        public void setUp()
+        {
+            synchronized (Gate.class)
+            {
+                platePrefix = "G" + (gates++) + "-";
+            }
+        }
+
+        String nextPlate()
+        {
+            return platePrefix + (vehicles++ % 100_000);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        dataBase = new EmbeddedDataBase("dao-benchmark");
+        dataBase.create(SPOTS, SPOTS);
+        parkingSpotDAO = new ParkingSpotDAO(dataBase);
+        ticketDAO = new TicketDAO(dataBase);
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() throws Exception
+    {
+        // the ticket table would otherwise grow across iterations and skew the plate lookups
+        dataBase.clear();
+        if (spotIndex)
+        {
+            parkingSpotDAO.enableSpotIndex();
+        }
+        else
+        {
+            parkingSpotDAO.disableSpotIndex();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        parkingSpotDAO.disableSpotIndex();
+    }
+
+    @Benchmark
+    public int nextAvailableSlot()
+    {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    public boolean isRecurringUser(Gate gate)
+    {
+        return ticketDAO.isRecurringUser(gate.nextPlate());
+    }
+
+    /**
+     * What a vehicle costs the DAOs: allocation on entry, then closing the ticket and freeing the spot on exit.
+     */
+    @Benchmark
+    public boolean entryThenExit(Gate gate)
+    {
+        Ticket ticket = parkingSpotDAO.allocateSpot(ParkingType.CAR, gate.nextPlate());
+        if (ticket == null)
+        {
+            return false;
+        }
+        ticket.setOutTime(new Date());
+        ticket.setPrice(1.5);
+        ticketDAO.updateTicket(ticket);
+        ticket.getParkingSpot().setAvailable(true);
+        return parkingSpotDAO.updateParking(ticket.getParkingSpot());
+    }
+}
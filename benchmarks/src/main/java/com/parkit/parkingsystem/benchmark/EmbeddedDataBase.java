@@ -0,0 +1,106 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory H2 database, in MySQL mode, with the tables of {@code resources/Data.sql}.
+ * The DAOs reach it through the regular pooled {@link DataBaseConfig}.
+ */
+public class EmbeddedDataBase extends DataBaseConfig
+{
+    private volatile long roundTripNanos;
+
+    public EmbeddedDataBase(String name)
+    {
+        super("jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    /**
+     * Makes every connection borrowed, about one per DAO call, wait that long first, as if the database were on
+     * another host.
+     */
+    public void setRoundTripMicros(long roundTripMicros)
+    {
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    @Override
+    public Connection getConnection() throws ClassNotFoundException, SQLException
+    {
+        roundTrip();
+        return super.getConnection();
+    }
+
+    @Override
+    public Connection getReadConnection() throws ClassNotFoundException, SQLException
+    {
+        roundTrip();
+        return super.getReadConnection();
+    }
+
+    private void roundTrip()
+    {
+        if (roundTripNanos > 0)
+        {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+
+    /**
+     * Creates the tables and {@code carSpots} CAR spots followed by {@code bikeSpots} BIKE spots, all free.
+     */
+    public void create(int carSpots, int bikeSpots) throws Exception
+    {
+        try (Connection con = getConnection(); Statement statement = con.createStatement())
+        {
+            statement.execute("drop all objects");
+            for (String ddl : readSchema().split(";"))
+            {
+                if (!ddl.trim().isEmpty())
+                {
+                    statement.execute(ddl);
+                }
+            }
+            try (PreparedStatement ps = con.prepareStatement("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(?, true, ?)"))
+            {
+                for (int number = 1; number <= carSpots + bikeSpots; number++)
+                {
+                    ps.setInt(1, number);
+                    ps.setString(2, number <= carSpots ? "CAR" : "BIKE");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Frees every spot and empties the ticket table, like DataBasePrepareService does for the integration tests.
+     */
+    public void clear() throws SQLException, ClassNotFoundException
+    {
+        try (Connection con = getConnection(); Statement statement = con.createStatement())
+        {
+            statement.execute("update parking set available = true, LEASE_OWNER = null, LEASE_EXPIRY = null");
+            statement.execute("truncate table ticket");
+        }
+    }
+
+    private static String readSchema() throws IOException
+    {
+        try (InputStream in = EmbeddedDataBase.class.getResourceAsStream("/schema.sql"))
+        {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("(?s)/\\*.*?\\*/", "");
+        }
+    }
+}
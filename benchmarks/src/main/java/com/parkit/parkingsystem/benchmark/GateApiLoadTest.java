@@ -0,0 +1,181 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.GateHttpServer;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the gate HTTP API: each client thread lets a new vehicle in then out, as fast as the server answers,
+ * and the latency of every request is recorded.
+ * <p>
+ * {@code GateApiLoadTest [url] [clients] [seconds]}, by default against a server started in this JVM over an
+ * in-memory database, with 64 clients for 30 seconds. Pass e.g. {@code http://parking:8080} to load a running
+ * server instead; {@code -} keeps the embedded one.
+ * <p>
+ * Every answer other than 2xx counts as a failure. When the lowest free spots are locked by other gates, H2 can find
+ * no spot to claim where MySQL would skip to the next one, so the embedded database answers a few entries with
+ * "parking full" under contention.
+ */
+public class GateApiLoadTest
+{
+    private static final int EMBEDDED_SPOTS = 2_000;
+
+    public static void main(String[] args) throws Exception
+    {
+        String url = args.length > 0 && !"-".equals(args[0]) ? args[0] : null;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        GateHttpServer server = null;
+        if (url == null)
+        {
+            server = startEmbeddedServer(clients);
+            url = "http://localhost:" + server.getPort();
+        }
+        try
+        {
+            run(url, clients, seconds);
+        }
+        finally
+        {
+            if (server != null)
+            {
+                server.close();
+            }
+        }
+    }
+
+    private static GateHttpServer startEmbeddedServer(int clients) throws Exception
+    {
+        EmbeddedDataBase dataBase = new EmbeddedDataBase("gate-api-load-test");
+        dataBase.create(EMBEDDED_SPOTS / 2, EMBEDDED_SPOTS / 2);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBase);
+        parkingSpotDAO.enableSpotIndex();
+        parkingSpotDAO.enableOccupancyCounters();
+        TicketDAO ticketDAO = new TicketDAO(dataBase);
+
+        GateHttpServer server = new GateHttpServer(new ParkingService(null, parkingSpotDAO, ticketDAO),
+                                                   new InetSocketAddress("localhost", 0), 32, Math.max(clients, 1) * 2);
+        server.start();
+        return server;
+    }
+
+    private static void run(String url, int clients, int seconds) throws InterruptedException
+    {
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong failures = new AtomicLong();
+        List<Client> running = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++)
+        {
+            Client client = new Client(httpClient, url, "L" + i + "-", deadline, failures);
+            running.add(client);
+            client.start();
+        }
+        long start = System.nanoTime();
+        long[] latencies = new long[0];
+        for (Client client : running)
+        {
+            client.join();
+            long[] clientLatencies = Arrays.copyOf(client.latencies, client.count);
+            long[] merged = Arrays.copyOf(latencies, latencies.length + clientLatencies.length);
+            System.arraycopy(clientLatencies, 0, merged, latencies.length, clientLatencies.length);
+            latencies = merged;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.println(clients + " clients against " + url + " for " + seconds + " s");
+        System.out.printf("requests: %d, failures: %d, throughput: %.0f req/s%n",
+                          latencies.length, failures.get(), latencies.length / elapsedSeconds);
+        if (latencies.length > 0)
+        {
+            System.out.printf("latency p50: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+                              percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile)
+    {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private static final class Client extends Thread
+    {
+        private final HttpClient httpClient;
+        private final String url;
+        private final String platePrefix;
+        private final long deadline;
+        private final AtomicLong failures;
+        private long[] latencies = new long[1024];
+        private int count;
+
+        Client(HttpClient httpClient, String url, String platePrefix, long deadline, AtomicLong failures)
+        {
+            super("load-" + platePrefix);
+            this.httpClient = httpClient;
+            this.url = url;
+            this.platePrefix = platePrefix;
+            this.deadline = deadline;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run()
+        {
+            for (int vehicle = 0; System.nanoTime() < deadline; vehicle++)
+            {
+                String plate = platePrefix + vehicle;
+                String type = vehicle % 2 == 0 ? "CAR" : "BIKE";
+                if (post("/entry?type=" + type + "&plate=" + plate) == 201)
+                {
+                    post("/exit?plate=" + plate);
+                }
+            }
+        }
+
+        private int post(String path)
+        {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + path))
+                                             .POST(HttpRequest.BodyPublishers.noBody())
+                                             .build();
+            long start = System.nanoTime();
+            int status;
+            try
+            {
+                status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            }
+            catch (Exception e)
+            {
+                status = -1;
+            }
+            record(System.nanoTime() - start);
+            if (status < 200 || status >= 300)
+            {
+                failures.incrementAndGet();
+            }
+            return status;
+        }
+
+        private void record(long nanos)
+        {
+            if (count == latencies.length)
+            {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full visit through {@link ParkingService}: console entry flow then console exit flow, the console being scripted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParkingServiceCycleBenchmark
+{
+    private EmbeddedDataBase dataBase;
+    private ScriptedInputReaderUtil inputReaderUtil;
+    private ParkingService parkingService;
+    private PrintStream out;
+    private int vehicles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        dataBase = new EmbeddedDataBase("cycle-benchmark");
+        dataBase.create(100, 100);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBase);
+        TicketDAO ticketDAO = new TicketDAO(dataBase);
+
+        inputReaderUtil = new ScriptedInputReaderUtil(1);
+        parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        out = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() throws Exception
+    {
+        dataBase.clear();
+    }
+
+    @Benchmark
+    public void entryToExit()
+    {
+        inputReaderUtil.setVehicleRegNumber("V" + (vehicles++ % 1_000_000));
+        parkingService.processIncomingVehicle(inputReaderUtil, out);
+        parkingService.processExitingVehicle(inputReaderUtil, out);
+    }
+}
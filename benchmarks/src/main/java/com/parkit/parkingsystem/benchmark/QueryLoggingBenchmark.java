@@ -0,0 +1,59 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of logging on a query: the same DAO lookup, which closes its statement and result set through
+ * {@code DataBaseConfig}, with the shipped asynchronous configuration and with the previous synchronous logging of
+ * every database event. Each variant runs in its own JVM since the logging configuration is fixed at startup.
+ * Run with {@code -prof gc} to compare the allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class QueryLoggingBenchmark
+{
+    private ParkingSpotDAO parkingSpotDAO;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        EmbeddedDataBase dataBase = new EmbeddedDataBase("query-logging-benchmark");
+        dataBase.create(100, 100);
+        parkingSpotDAO = new ParkingSpotDAO(dataBase);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dparkit.log.dir=target/benchmark-logs")
+    public int asyncSampledDebug()
+    {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Dparkit.log.dir=target/benchmark-logs",
+                                      "-DLog4jContextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector",
+                                      "-Dlog4j.configurationFile=log4j2-legacy.xml",
+                                      "-Dparkit.log.dbLifecycleSample=1"})
+    public int synchronousEveryEvent()
+    {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+}
@@ -0,0 +1,35 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+/**
+ * Answers the prompts of {@code ParkingService} without a console: always the same vehicle type,
+ * and the plate set before each flow.
+ */
+public class ScriptedInputReaderUtil extends InputReaderUtil
+{
+    private final int vehicleTypeSelection;
+    private String vehicleRegNumber;
+
+    public ScriptedInputReaderUtil(int vehicleTypeSelection)
+    {
+        this.vehicleTypeSelection = vehicleTypeSelection;
+    }
+
+    public void setVehicleRegNumber(String vehicleRegNumber)
+    {
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    @Override
+    public int readSelection()
+    {
+        return vehicleTypeSelection;
+    }
+
+    @Override
+    public String readVehicleRegistrationNumber()
+    {
+        return vehicleRegNumber;
+    }
+}
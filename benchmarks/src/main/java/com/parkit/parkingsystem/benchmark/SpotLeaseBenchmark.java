@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.LeasedSpotAllocator;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entries and exits of several nodes sharing the embedded database, each benchmark thread being one node: allocating
+ * the lowest free spot in the database, or from the spots the node leased.
+ * <p>
+ * Run it with {@code -t 1}, {@code -t 2}, {@code -t 4}... to see how the throughput scales with the nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpotLeaseBenchmark
+{
+    private static final int SPOTS = 500;
+
+    @Param({"direct", "leased"})
+    public String allocation;
+
+    private EmbeddedDataBase dataBase;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+
+    @State(Scope.Thread)
+    public static class Node
+    {
+        private static int nodes;
+        private String nodeId;
+        private SpotRepository spots;
+        private LeasedSpotAllocator allocator;
+        private int vehicles;
+
+        @Setup(Level.Iteration)
+        public void setUp(SpotLeaseBenchmark benchmark)
+        {
+            synchronized (Node.class)
+            {
+                if (nodeId == null)
+                {
+                    nodeId = "N" + (nodes++);
+                }
+            }
+            if ("leased".equals(benchmark.allocation))
+            {
+                allocator = new LeasedSpotAllocator(nodeId, benchmark.parkingSpotDAO, benchmark.parkingSpotDAO, 16, 60_000);
+                allocator.maintain();
+                spots = allocator;
+            }
+            else
+            {
+                spots = benchmark.parkingSpotDAO;
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown()
+        {
+            if (allocator != null)
+            {
+                allocator.close();
+                allocator = null;
+            }
+        }
+
+        String nextPlate()
+        {
+            return nodeId + "-" + (vehicles++ % 100_000);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        dataBase = new EmbeddedDataBase("spot-lease-benchmark");
+        dataBase.create(SPOTS, 0);
+        parkingSpotDAO = new ParkingSpotDAO(dataBase);
+        ticketDAO = new TicketDAO(dataBase);
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() throws Exception
+    {
+        dataBase.clear();
+    }
+
+    @Benchmark
+    public boolean entryThenExit(Node node)
+    {
+        Ticket ticket = node.spots.allocateSpot(ParkingType.CAR, node.nextPlate());
+        if (ticket == null)
+        {
+            return false;
+        }
+        ticket.setOutTime(new Date());
+        ticket.setPrice(1.5);
+        ticketDAO.updateTicket(ticket);
+        ticket.getParkingSpot().setAvailable(true);
+        return node.spots.updateParking(ticket.getParkingSpot());
+    }
+}
@@ -0,0 +1,26 @@
+/* Same tables as resources/Data.sql, for the embedded H2 database of the benchmarks */
+create table parking(
+PARKING_NUMBER int PRIMARY KEY,
+AVAILABLE bool NOT NULL,
+TYPE varchar(10) NOT NULL,
+LEASE_OWNER varchar(64),
+LEASE_EXPIRY DATETIME
+);
+
+create index PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
+
+create table ticket(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME,
+ OPEN_PLATE varchar(10) GENERATED ALWAYS AS (case when OUT_TIME is null then VEHICLE_REG_NUMBER end),
+ FOREIGN KEY (PARKING_NUMBER)
+ REFERENCES parking(PARKING_NUMBER));
+
+create index TICKET_VEHICLE_OUT_TIME on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index TICKET_OUT_TIME on ticket(OUT_TIME);
+/* at most one open ticket per vehicle, whatever the process or the gate letting it in */
+create unique index TICKET_OPEN_PLATE on ticket(OPEN_PLATE);
@@ -5,9 +5,13 @@ use prod;
 create table parking(
 PARKING_NUMBER int PRIMARY KEY,
 AVAILABLE bool NOT NULL,
-TYPE varchar(10) NOT NULL
+TYPE varchar(10) NOT NULL,
+LEASE_OWNER varchar(64),
+LEASE_EXPIRY DATETIME
 );
 
+create index PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
+
 create table ticket(
  ID int PRIMARY KEY AUTO_INCREMENT,
  PARKING_NUMBER int NOT NULL,
@@ -15,14 +19,28 @@ create table ticket(
  PRICE double,
  IN_TIME DATETIME NOT NULL,
  OUT_TIME DATETIME,
+ OPEN_PLATE varchar(10) GENERATED ALWAYS AS (case when OUT_TIME is null then VEHICLE_REG_NUMBER end),
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create index TICKET_VEHICLE_OUT_TIME on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index TICKET_OUT_TIME on ticket(OUT_TIME);
+/* at most one open ticket per vehicle, whatever the process or the gate letting it in */
+create unique index TICKET_OPEN_PLATE on ticket(OPEN_PLATE);
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(4,true,'BIKE');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(5,true,'BIKE');
+
+/* Written by the primary, read back from the read replicas to know how far behind they are */
+create table replication_heartbeat(
+ID int PRIMARY KEY,
+BEAT bigint NOT NULL
+);
+
+insert into replication_heartbeat(ID,BEAT) values(1,0);
 commit;
 
 /* Setting up TEST DB */
@@ -32,9 +50,13 @@ use test;
 create table parking(
 PARKING_NUMBER int PRIMARY KEY,
 AVAILABLE bool NOT NULL,
-TYPE varchar(10) NOT NULL
+TYPE varchar(10) NOT NULL,
+LEASE_OWNER varchar(64),
+LEASE_EXPIRY DATETIME
 );
 
+create index PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
+
 create table ticket(
  ID int PRIMARY KEY AUTO_INCREMENT,
  PARKING_NUMBER int NOT NULL,
@@ -42,12 +64,26 @@ create table ticket(
  PRICE double,
  IN_TIME DATETIME NOT NULL,
  OUT_TIME DATETIME,
+ OPEN_PLATE varchar(10) GENERATED ALWAYS AS (case when OUT_TIME is null then VEHICLE_REG_NUMBER end),
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create index TICKET_VEHICLE_OUT_TIME on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+create index TICKET_OUT_TIME on ticket(OUT_TIME);
+/* at most one open ticket per vehicle, whatever the process or the gate letting it in */
+create unique index TICKET_OPEN_PLATE on ticket(OPEN_PLATE);
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(4,true,'BIKE');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(5,true,'BIKE');
+
+/* Written by the primary, read back from the read replicas to know how far behind they are */
+create table replication_heartbeat(
+ID int PRIMARY KEY,
+BEAT bigint NOT NULL
+);
+
+insert into replication_heartbeat(ID,BEAT) values(1,0);
 commit;
@@ -0,0 +1,7 @@
+/* Index for the exit lookup of the open ticket of a vehicle (DBConstants.GET_OPEN_TICKET).
+   Data.sql already creates it, run this file on databases created before it was added. */
+use prod;
+create index TICKET_VEHICLE_OUT_TIME on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+
+use test;
+create index TICKET_VEHICLE_OUT_TIME on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
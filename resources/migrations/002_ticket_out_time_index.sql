@@ -0,0 +1,7 @@
+/* Index for the range scans on exit time of the revenue report (DBConstants.GET_TICKETS_CLOSED_BETWEEN)
+   and of the ticket archiver (DBConstants.GET_CLOSED_TICKETS_BEFORE). */
+use prod;
+create index TICKET_OUT_TIME on ticket(OUT_TIME);
+
+use test;
+create index TICKET_OUT_TIME on ticket(OUT_TIME);
@@ -0,0 +1,7 @@
+/* Leases of free spots by the nodes sharing the database (ParkingSpotDAO as a SpotLeaseStore).
+   Data.sql already creates the columns, run this file on databases created before they were added. */
+use prod;
+alter table parking add column LEASE_OWNER varchar(64), add column LEASE_EXPIRY DATETIME;
+
+use test;
+alter table parking add column LEASE_OWNER varchar(64), add column LEASE_EXPIRY DATETIME;
@@ -0,0 +1,9 @@
+/* Heartbeat of the primary, read back from the read replicas (-Dparkit.db.replicas) to bound their staleness.
+   Data.sql already creates the table, run this file on databases created before it was added. */
+use prod;
+create table replication_heartbeat(ID int PRIMARY KEY, BEAT bigint NOT NULL);
+insert into replication_heartbeat(ID,BEAT) values(1,0);
+
+use test;
+create table replication_heartbeat(ID int PRIMARY KEY, BEAT bigint NOT NULL);
+insert into replication_heartbeat(ID,BEAT) values(1,0);
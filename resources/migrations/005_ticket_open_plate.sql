@@ -0,0 +1,10 @@
+/* At most one open ticket per vehicle, enforced by the database for the gates of every process.
+   Data.sql already creates the column and the index, run this file on databases created before they were added.
+   Close or delete the extra open tickets of a vehicle first, the index cannot be created while they exist. */
+use prod;
+alter table ticket add column OPEN_PLATE varchar(10) GENERATED ALWAYS AS (case when OUT_TIME is null then VEHICLE_REG_NUMBER end);
+create unique index TICKET_OPEN_PLATE on ticket(OPEN_PLATE);
+
+use test;
+alter table ticket add column OPEN_PLATE varchar(10) GENERATED ALWAYS AS (case when OUT_TIME is null then VEHICLE_REG_NUMBER end);
+create unique index TICKET_OPEN_PLATE on ticket(OPEN_PLATE);
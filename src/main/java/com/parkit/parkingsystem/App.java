@@ -10,9 +10,30 @@ public class App
 {
     private static final Logger logger = LogManager.getLogger("App");
 
-    public static void main(String args[])
+    public static void main(String args[]) throws Exception
     {
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        if (args.length > 0 && "report".equals(args[0]))
+        {
+            // report 2024-01-01 2024-02-01 [csv|json] [partitions] : revenue per type, day and hour of the range
+            InteractiveShell.printReport(args);
+            return;
+        }
+        Integer httpPort = Integer.getInteger("parkit.http.port");
+        Integer gatesPort = Integer.getInteger("parkit.gates.port");
+        if (httpPort != null)
+        {
+            // -Dparkit.http.port=8080 : the gates call the HTTP/JSON API instead of driving a menu
+            InteractiveShell.serveHttp(httpPort);
+        }
+        else if (gatesPort != null)
+        {
+            // -Dparkit.gates.port=7000 : one process serves every gate of the facility over TCP
+            InteractiveShell.listenForGates(gatesPort, Integer.getInteger("parkit.gates.max", 32));
+        }
+        else
+        {
+            InteractiveShell.loadInterface();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,430 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections.
+ * <p>
+ * Borrowed connections are proxies: calling {@link Connection#close()} hands the physical connection
+ * back to the pool instead of closing it, so the DAOs keep their usual try-with-resources / finally blocks.
+ * Idle connections are validated on borrow and evicted in the background once they have been idle for too long.
+ * Each connection keeps its prepared statements open in a {@link StatementCache}.
+ */
+public class ConnectionPool implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    /**
+     * Opens a new physical connection.
+     */
+    public interface ConnectionFactory
+    {
+        Connection create() throws SQLException;
+    }
+
+    private final String name;
+    private final ConnectionFactory connectionFactory;
+    private final PoolSettings settings;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    public ConnectionPool(String name, ConnectionFactory connectionFactory, PoolSettings settings)
+    {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.getMaxSize(), true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "pool-evictor-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections,
+                                       settings.getEvictionIntervalMillis(),
+                                       settings.getEvictionIntervalMillis(),
+                                       TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting at most {@link PoolSettings#getMaxWaitMillis()} for one to be free.
+     * @throws SQLTimeoutException when no connection became available in time
+     */
+    public Connection borrow() throws SQLException
+    {
+        return borrow(null);
+    }
+
+    /**
+     * @param onReturn run once the connection is back in the pool, after whatever the borrower committed
+     */
+    public Connection borrow(Runnable onReturn) throws SQLException
+    {
+        if (closed)
+        {
+            throw new SQLException("Connection pool " + name + " is closed");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try
+        {
+            acquired = permits.tryAcquire(settings.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        if (!acquired)
+        {
+            timeouts.increment();
+            ParkingMetrics.getDefault().connectionError();
+            throw new SQLTimeoutException("Timed out after " + settings.getMaxWaitMillis() + "ms waiting for a connection from pool " + name);
+        }
+
+        try
+        {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null)
+            {
+                pooled = open();
+            }
+            active.incrementAndGet();
+            borrowed.increment();
+            return pooled.lease(onReturn);
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            permits.release();
+            ParkingMetrics.getDefault().connectionError();
+            throw e;
+        }
+    }
+
+    public PoolMetrics getMetrics()
+    {
+        return new PoolMetrics(active.get(),
+                               idle.size(),
+                               created.sum(),
+                               destroyed.sum(),
+                               borrowed.sum(),
+                               timeouts.sum(),
+                               totalWaitNanos.sum(),
+                               maxWaitNanos.get(),
+                               statementHits.sum(),
+                               statementMisses.sum(),
+                               statementEvictions.sum());
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null)
+        {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection takeIdle()
+    {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null)
+        {
+            if (isValid(pooled))
+            {
+                return pooled;
+            }
+            destroy(pooled);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled)
+    {
+        if (System.currentTimeMillis() - pooled.lastReturned < settings.getValidationBypassMillis())
+        {
+            return true;
+        }
+        try
+        {
+            return pooled.physical.isValid(settings.getValidationTimeoutSeconds());
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException
+    {
+        Connection physical = connectionFactory.create();
+        created.increment();
+        logger.debug("Create DB connection");
+        return new PooledConnection(physical);
+    }
+
+    private void destroy(PooledConnection pooled)
+    {
+        try
+        {
+            pooled.statements.closeAll();
+            pooled.physical.close();
+            logger.debug("Closing DB connection");
+        }
+        catch (SQLException e)
+        {
+            logger.error("Error while closing connection", e);
+        }
+        finally
+        {
+            destroyed.increment();
+        }
+    }
+
+    private void release(PooledConnection pooled)
+    {
+        active.decrementAndGet();
+        try
+        {
+            pooled.statements.releaseAll();
+            if (closed || pooled.broken || !reset(pooled))
+            {
+                destroy(pooled);
+            }
+            else
+            {
+                pooled.lastReturned = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Rolls back whatever transaction the borrower left open so the next borrower starts clean.
+     */
+    private boolean reset(PooledConnection pooled)
+    {
+        try
+        {
+            if (pooled.physical.isClosed())
+            {
+                return false;
+            }
+            if (!pooled.physical.getAutoCommit())
+            {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            return true;
+        }
+        catch (SQLException e)
+        {
+            logger.error("Error while resetting pooled connection", e);
+            return false;
+        }
+    }
+
+    /**
+     * Closes connections idle for longer than {@link PoolSettings#getIdleTimeoutMillis()}, keeping at least
+     * {@link PoolSettings#getMinIdle()} of them. Runs periodically on the evictor thread.
+     */
+    public void evictIdleConnections()
+    {
+        long deadline = System.currentTimeMillis() - settings.getIdleTimeoutMillis();
+        // the oldest connections sit at the tail of the deque
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && idle.size() > settings.getMinIdle())
+        {
+            PooledConnection pooled = iterator.next();
+            if (pooled.lastReturned < deadline && idle.remove(pooled))
+            {
+                destroy(pooled);
+            }
+        }
+    }
+
+    private final class PooledConnection
+    {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastReturned = System.currentTimeMillis();
+        private volatile boolean broken;
+
+        private PooledConnection(Connection physical)
+        {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, settings.getStatementCacheSize(), statementHits, statementMisses, statementEvictions);
+        }
+
+        private Connection lease(Runnable onReturn)
+        {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                                                       new Class<?>[]{Connection.class},
+                                                       new Lease(this, onReturn));
+        }
+    }
+
+    /**
+     * Handle given to a borrower. Once closed it can no longer reach the physical connection.
+     */
+    private final class Lease implements InvocationHandler
+    {
+        private final PooledConnection pooled;
+        private final Runnable onReturn;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Lease(PooledConnection pooled, Runnable onReturn)
+        {
+            this.pooled = pooled;
+            this.onReturn = onReturn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName())
+            {
+                case "close":
+                {
+                    if (returned.compareAndSet(false, true))
+                    {
+                        try
+                        {
+                            release(pooled);
+                        }
+                        finally
+                        {
+                            if (onReturn != null)
+                            {
+                                onReturn.run();
+                            }
+                        }
+                    }
+                    return null;
+                }
+                case "isClosed":
+                {
+                    if (returned.get())
+                    {
+                        return true;
+                    }
+                    break;
+                }
+                case "equals":
+                {
+                    return proxy == args[0];
+                }
+                case "hashCode":
+                {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString":
+                {
+                    return "Pooled[" + name + "] " + pooled.physical;
+                }
+                default:
+                    break;
+            }
+
+            if (returned.get())
+            {
+                throw new SQLException("Connection has already been returned to pool " + name);
+            }
+
+            if (method.getName().equals("prepareStatement"))
+            {
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                if (parameterTypes.length == 1)
+                {
+                    return pooled.statements.prepare((Connection) proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (parameterTypes.length == 2 && parameterTypes[1] == int.class)
+                {
+                    return pooled.statements.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                }
+            }
+
+            try
+            {
+                Object result = method.invoke(pooled.physical, args);
+                if (result instanceof Statement)
+                {
+                    pooled.statements.track((Statement) result);
+                }
+                if (method.getName().equals("prepareStatement"))
+                {
+                    return TimedStatement.wrap((Connection) proxy, (PreparedStatement) result, (String) args[0]);
+                }
+                return result;
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isConnectionFailure((SQLException) cause))
+                {
+                    pooled.broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        private boolean isConnectionFailure(SQLException e)
+        {
+            // SQL state class 08 means the connection itself is gone
+            return e.getSQLState() != null && e.getSQLState().startsWith("08");
+        }
+    }
+}
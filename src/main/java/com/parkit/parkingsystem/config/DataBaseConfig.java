@@ -2,28 +2,210 @@ package com.parkit.parkingsystem.config;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.util.Unbox;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    /**
+     * Key of the logging context marking a caller without a stable session, such as an HTTP gate that does not name
+     * itself: its reads cannot be matched with its writes, so they all go to the primary.
+     */
+    public static final String NO_SESSION = "noSession";
+
+    private static final String URL = "jdbc:mysql://localhost:3306/prod?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC&rewriteBatchedStatements=true&useServerPrepStmts=true&useCursorFetch=true";
+
+    /**
+     * One pool per database, shared by every DAO (each DAO owns its own DataBaseConfig instance).
+     */
+    private static final ConcurrentMap<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Replicas of each primary with replicas, shared like the pools so that a write through one DAO sends the reads of
+     * the same gate through any other DAO to the primary.
+     */
+    private static final ConcurrentMap<String, ReplicaSet> replicaSets = new ConcurrentHashMap<>();
+
+    /**
+     * Statements and result sets are closed after every query: only one close in this many is logged, at DEBUG.
+     */
+    private static final long LIFECYCLE_LOG_SAMPLE = Math.max(1, Long.getLong("parkit.log.dbLifecycleSample", 1000L));
+    private static final AtomicLong closedStatements = new AtomicLong();
+    private static final AtomicLong closedResultSets = new AtomicLong();
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<DataBaseConfig> replicas;
+
+    /**
+     * The default database, with the read replicas of {@code -Dparkit.db.replicas} if any.
+     */
+    public DataBaseConfig() {
+        this(URL, "root", "rootroot", replicas(System.getProperty("parkit.db.replicas"), "root", "rootroot"));
+    }
+
+    protected DataBaseConfig(String url, String user, String password) {
+        this(url, user, password, Collections.emptyList());
+    }
+
+    /**
+     * @param replicas read replicas of the database, see {@link #getReadConnection()}
+     */
+    protected DataBaseConfig(String url, String user, String password, List<DataBaseConfig> replicas) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.replicas = replicas;
+    }
+
+    /**
+     * @param urls comma-separated JDBC urls, connected to as {@code -Dparkit.db.replica.user}, the user of the primary
+     * by default
+     */
+    private static List<DataBaseConfig> replicas(String urls, String user, String password) {
+        if (urls == null || urls.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DataBaseConfig> replicas = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (!url.trim().isEmpty()) {
+                replicas.add(new DataBaseConfig(url.trim(), System.getProperty("parkit.db.replica.user", user),
+                                                System.getProperty("parkit.db.replica.password", password)));
+            }
+        }
+        return replicas;
+    }
+
+    /**
+     * Shard of a facility: {@code -Dparkit.facility.<id>.url} (with {@code .user} and {@code .password}) when it has its
+     * own database, otherwise the schema named after the facility on the default server. Each shard gets its own pool,
+     * and the read replicas of {@code -Dparkit.facility.<id>.replicas} if any.
+     */
+    public static DataBaseConfig forFacility(String facilityId) {
+        String prefix = "parkit.facility." + facilityId + ".";
+        String url = System.getProperty(prefix + "url");
+        if (url == null) {
+            if (!facilityId.matches("[A-Za-z0-9_]+")) {
+                throw new IllegalArgumentException("Facility " + facilityId + " cannot be a schema name, give it a url");
+            }
+            url = URL.replaceFirst("/prod\\?", "/" + facilityId + "?");
+        }
+        String user = System.getProperty(prefix + "user", "root");
+        String password = System.getProperty(prefix + "password", "rootroot");
+        return new DataBaseConfig(url, user, password, replicas(System.getProperty(prefix + "replicas"), user, password));
+    }
+
+    /**
+     * Connection to the primary, for the writes and the reads that must see every write. Until it is handed back,
+     * and after that until the replicas have caught up, the reads of the same gate go to the primary as well.
+     */
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC", "root", "rootroot");
+        if (replicas.isEmpty() || ThreadContext.containsKey(NO_SESSION)) {
+            return getPool().borrow();
+        }
+        ReplicaSet replicaSet = getReplicaSet();
+        String session = session();
+        replicaSet.beginWrite(session);
+        try {
+            return getPool().borrow(() -> replicaSet.endWrite(session));
+        } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+            replicaSet.endWrite(session);
+            throw e;
+        }
     }
 
+    /**
+     * Connection for a query-only read that may lag behind the primary by up to
+     * {@code -Dparkit.db.replica.maxStalenessMillis} (1 second by default): a replica when one is that fresh and has
+     * the last write of the gate, the primary otherwise.
+     */
+    public Connection getReadConnection() throws ClassNotFoundException, SQLException {
+        if (replicas.isEmpty() || ThreadContext.containsKey(NO_SESSION)) {
+            return getPool().borrow();
+        }
+        DataBaseConfig replica = getReplicaSet().route(session());
+        if (replica != null) {
+            try {
+                return replica.getPool().borrow();
+            } catch (SQLException e) {
+                logger.warn("Replica " + replica + " is not available, reading from the primary", e);
+            }
+        }
+        return getPool().borrow();
+    }
 
+    /**
+     * The gate in the logging context, like the sessions of the console, TCP and HTTP gates put it, or the thread for
+     * the background tasks.
+     */
+    private static String session() {
+        String gate = ThreadContext.get("gate");
+        return gate != null ? gate : "thread:" + Thread.currentThread().getName();
+    }
 
+    /**
+     * @return the replicas of this database, checked in the background every {@code -Dparkit.db.replica.heartbeatMillis},
+     * or null when it has none
+     */
+    public ReplicaSet getReplicaSet() {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        ReplicaSet replicaSet = replicaSets.get(url);
+        if (replicaSet == null) {
+            replicaSet = replicaSets.computeIfAbsent(url, key -> {
+                ReplicaSet created = new ReplicaSet(this, replicas, Long.getLong("parkit.db.replica.maxStalenessMillis", 1_000L));
+                created.start(Long.getLong("parkit.db.replica.heartbeatMillis", 200L));
+                return created;
+            });
+        }
+        return replicaSet;
+    }
 
+    public ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool pool = pools.get(url);
+        if (pool == null) {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            pool = pools.computeIfAbsent(url, key -> new ConnectionPool(
+                    key.split("\\?")[0],
+                    () -> DriverManager.getConnection(url, user, password),
+                    PoolSettings.fromSystemProperties()));
+        }
+        return pool;
+    }
+
+    public PoolMetrics getPoolMetrics() throws ClassNotFoundException {
+        return getPool().getMetrics();
+    }
+
+    /**
+     * Closes every pool opened by this JVM, typically on shutdown.
+     */
+    public static void closePools() {
+        replicaSets.values().forEach(ReplicaSet::close);
+        replicaSets.clear();
+        pools.values().forEach(ConnectionPool::close);
+        pools.clear();
+    }
+
+    /**
+     * Hands the connection back to the pool.
+     */
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -34,7 +216,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logSampled("Closing Prepared Statement, {} closed", closedStatements);
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -45,10 +227,24 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logSampled("Closing Result Set, {} closed", closedResultSets);
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
         }
     }
+
+    @Override
+    public String toString() {
+        return url.split("\\?")[0];
+    }
+
+    private static void logSampled(String message, AtomicLong closed) {
+        if(logger.isDebugEnabled()){
+            long count = closed.incrementAndGet();
+            if((count - 1) % LIFECYCLE_LOG_SAMPLE == 0){
+                logger.debug(message, Unbox.box(count));
+            }
+        }
+    }
 }
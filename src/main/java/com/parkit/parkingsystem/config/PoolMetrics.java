@@ -0,0 +1,111 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Point in time snapshot of the counters of a {@link ConnectionPool}.
+ */
+public class PoolMetrics
+{
+    private final int active;
+    private final int idle;
+    private final long created;
+    private final long destroyed;
+    private final long borrowed;
+    private final long timeouts;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long statementHits;
+    private final long statementMisses;
+    private final long statementEvictions;
+
+    public PoolMetrics(int active, int idle, long created, long destroyed, long borrowed, long timeouts, long totalWaitNanos, long maxWaitNanos,
+                       long statementHits, long statementMisses, long statementEvictions)
+    {
+        this.active = active;
+        this.idle = idle;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.borrowed = borrowed;
+        this.timeouts = timeouts;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.statementHits = statementHits;
+        this.statementMisses = statementMisses;
+        this.statementEvictions = statementEvictions;
+    }
+
+    public int getActive()
+    {
+        return active;
+    }
+
+    public int getIdle()
+    {
+        return idle;
+    }
+
+    public long getCreated()
+    {
+        return created;
+    }
+
+    public long getDestroyed()
+    {
+        return destroyed;
+    }
+
+    public long getBorrowed()
+    {
+        return borrowed;
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    public long getTotalWaitNanos()
+    {
+        return totalWaitNanos;
+    }
+
+    public long getMaxWaitNanos()
+    {
+        return maxWaitNanos;
+    }
+
+    public long getStatementHits()
+    {
+        return statementHits;
+    }
+
+    public long getStatementMisses()
+    {
+        return statementMisses;
+    }
+
+    public long getStatementEvictions()
+    {
+        return statementEvictions;
+    }
+
+    public double getAverageWaitMillis()
+    {
+        return borrowed == 0 ? 0 : (totalWaitNanos / 1_000_000.0) / borrowed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "active=" + active
+                + " idle=" + idle
+                + " created=" + created
+                + " destroyed=" + destroyed
+                + " borrowed=" + borrowed
+                + " timeouts=" + timeouts
+                + " avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+                + " maxWaitMs=" + String.format("%.3f", maxWaitNanos / 1_000_000.0)
+                + " statementHits=" + statementHits
+                + " statementMisses=" + statementMisses
+                + " statementEvictions=" + statementEvictions;
+    }
+}
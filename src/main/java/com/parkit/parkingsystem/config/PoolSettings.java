@@ -0,0 +1,126 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Tuning parameters of a {@link ConnectionPool}.
+ * Every value can be overridden with a system property, e.g. {@code -Dparkit.db.pool.maxSize=20}.
+ */
+public class PoolSettings
+{
+    private int maxSize = 10;
+    private int minIdle = 1;
+    private long maxWaitMillis = 5_000;
+    private long idleTimeoutMillis = 60_000;
+    private long evictionIntervalMillis = 30_000;
+    private int validationTimeoutSeconds = 2;
+    private long validationBypassMillis = 500;
+    private int statementCacheSize = 32;
+
+    public static PoolSettings fromSystemProperties()
+    {
+        PoolSettings settings = new PoolSettings();
+        settings.setMaxSize(Integer.getInteger("parkit.db.pool.maxSize", settings.getMaxSize()));
+        settings.setMinIdle(Integer.getInteger("parkit.db.pool.minIdle", settings.getMinIdle()));
+        settings.setMaxWaitMillis(Long.getLong("parkit.db.pool.maxWaitMillis", settings.getMaxWaitMillis()));
+        settings.setIdleTimeoutMillis(Long.getLong("parkit.db.pool.idleTimeoutMillis", settings.getIdleTimeoutMillis()));
+        settings.setEvictionIntervalMillis(Long.getLong("parkit.db.pool.evictionIntervalMillis", settings.getEvictionIntervalMillis()));
+        settings.setValidationTimeoutSeconds(Integer.getInteger("parkit.db.pool.validationTimeoutSeconds", settings.getValidationTimeoutSeconds()));
+        settings.setValidationBypassMillis(Long.getLong("parkit.db.pool.validationBypassMillis", settings.getValidationBypassMillis()));
+        settings.setStatementCacheSize(Integer.getInteger("parkit.db.pool.statementCacheSize", settings.getStatementCacheSize()));
+        return settings;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.maxSize = maxSize;
+    }
+
+    public int getMinIdle()
+    {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle)
+    {
+        this.minIdle = minIdle;
+    }
+
+    public long getMaxWaitMillis()
+    {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis)
+    {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis)
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getEvictionIntervalMillis()
+    {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis)
+    {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public int getValidationTimeoutSeconds()
+    {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds)
+    {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * A connection returned to the pool less than this many milliseconds ago is handed out
+     * again without the validation round trip.
+     */
+    public long getValidationBypassMillis()
+    {
+        return validationBypassMillis;
+    }
+
+    public void setValidationBypassMillis(long validationBypassMillis)
+    {
+        this.validationBypassMillis = validationBypassMillis;
+    }
+
+    /**
+     * Number of prepared statements kept open per connection, 0 disables the cache.
+     */
+    public int getStatementCacheSize()
+    {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize)
+    {
+        if (statementCacheSize < 0)
+        {
+            throw new IllegalArgumentException("Statement cache size must not be negative");
+        }
+        this.statementCacheSize = statementCacheSize;
+    }
+}
@@ -0,0 +1,240 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read replicas of a primary database, and what each gate session wrote to the primary.
+ * <p>
+ * A background thread writes the time in the heartbeat row of the primary, then reads it back from every replica:
+ * a replica showing the heartbeat of time {@code t} has applied everything committed on the primary before
+ * {@code t}. A read goes to a replica whose heartbeat is at most {@code maxStalenessMillis} old, and more recent
+ * than the last write of the session, so that a gate always reads what it just wrote. Otherwise it goes to the
+ * primary, which is also where every read goes while a replica is down or lagging.
+ */
+public class ReplicaSet implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("ReplicaSet");
+
+    private final DataBaseConfig primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxStalenessMillis;
+    private final ConcurrentMap<String, SessionWrites> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService heartbeat;
+
+    private static final class Replica
+    {
+        final DataBaseConfig dataBaseConfig;
+        // primary time up to which the replica has applied the writes, 0 until it has been read once
+        volatile long appliedUpTo;
+        volatile boolean reachable = true;
+
+        Replica(DataBaseConfig dataBaseConfig)
+        {
+            this.dataBaseConfig = dataBaseConfig;
+        }
+    }
+
+    /**
+     * Changed under the lock of the session in the map only; read without it, {@code inFlight} last.
+     */
+    private static final class SessionWrites
+    {
+        volatile int inFlight;
+        volatile long lastWrite;
+    }
+
+    public ReplicaSet(DataBaseConfig primary, List<DataBaseConfig> replicas, long maxStalenessMillis)
+    {
+        this.primary = primary;
+        for (DataBaseConfig replica : replicas)
+        {
+            this.replicas.add(new Replica(replica));
+        }
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * Beats and checks the replicas every {@code intervalMillis}, which must be well below the staleness bound.
+     */
+    public synchronized void start(long intervalMillis)
+    {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                beat();
+            }
+            catch (RuntimeException e)
+            {
+                // an exception would cancel the next beats, and every read would end up on the primary
+                logger.error("Error checking the replicas", e);
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the heartbeat on the primary, then reads where each replica is.
+     */
+    public void beat()
+    {
+        try (Connection con = primary.getPool().borrow();
+             PreparedStatement ps = con.prepareStatement(DBConstants.WRITE_HEARTBEAT))
+        {
+            ps.setLong(1, System.currentTimeMillis());
+            ps.execute();
+        }
+        catch (SQLException | ClassNotFoundException e)
+        {
+            logger.error("Error writing the replication heartbeat", e);
+        }
+        checkReplicas();
+        forgetCaughtUpSessions();
+    }
+
+    /**
+     * Reads the heartbeat each replica has applied.
+     */
+    public void checkReplicas()
+    {
+        for (Replica replica : replicas)
+        {
+            try (Connection con = replica.dataBaseConfig.getPool().borrow();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.READ_HEARTBEAT);
+                 ResultSet rs = ps.executeQuery())
+            {
+                if (rs.next())
+                {
+                    replica.appliedUpTo = rs.getLong(1);
+                }
+                if (!replica.reachable)
+                {
+                    replica.reachable = true;
+                    logger.info("Replica " + replica.dataBaseConfig + " is reachable again");
+                }
+            }
+            catch (SQLException | ClassNotFoundException e)
+            {
+                // its heartbeat gets older until reads no longer go there
+                if (replica.reachable)
+                {
+                    replica.reachable = false;
+                    logger.error("Replica " + replica.dataBaseConfig + " cannot be read, reads go to the primary", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when the session borrows a primary connection, which may write.
+     */
+    public void beginWrite(String session)
+    {
+        sessions.compute(session, (key, writes) ->
+        {
+            if (writes == null)
+            {
+                writes = new SessionWrites();
+            }
+            writes.inFlight++;
+            return writes;
+        });
+    }
+
+    /**
+     * Called once the primary connection is back in the pool, when what it wrote is committed or rolled back.
+     */
+    public void endWrite(String session)
+    {
+        long now = System.currentTimeMillis();
+        sessions.computeIfPresent(session, (key, writes) ->
+        {
+            // the time first: a reader seeing the write finished also sees when
+            writes.lastWrite = now;
+            writes.inFlight--;
+            return writes;
+        });
+    }
+
+    /**
+     * @return the replica for a read of the session, or null when the read must go to the primary
+     */
+    public DataBaseConfig route(String session)
+    {
+        long now = System.currentTimeMillis();
+        long lastWrite = 0;
+        SessionWrites writes = sessions.get(session);
+        if (writes != null)
+        {
+            // a write still running has no time yet, the replicas cannot have it
+            lastWrite = writes.inFlight > 0 ? Long.MAX_VALUE : writes.lastWrite;
+        }
+        int size = replicas.size();
+        int first = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++)
+        {
+            Replica replica = replicas.get((first + i) % size);
+            long appliedUpTo = replica.appliedUpTo;
+            if (now - appliedUpTo <= maxStalenessMillis && appliedUpTo > lastWrite)
+            {
+                return replica.dataBaseConfig;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sessions whose last write every replica has applied, or is older than any replica reads may go to, read from
+     * the replicas again: they are forgotten so that the map does not grow with every gate ever seen.
+     */
+    private void forgetCaughtUpSessions()
+    {
+        long appliedEverywhere = System.currentTimeMillis() - maxStalenessMillis;
+        long lowest = Long.MAX_VALUE;
+        for (Replica replica : replicas)
+        {
+            lowest = Math.min(lowest, replica.appliedUpTo);
+        }
+        long bound = Math.max(appliedEverywhere, lowest);
+        for (String session : sessions.keySet())
+        {
+            sessions.computeIfPresent(session, (key, writes) -> writes.inFlight == 0 && writes.lastWrite < bound ? null : writes);
+        }
+    }
+
+    public int getSessionCount()
+    {
+        return sessions.size();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (heartbeat != null)
+        {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prepared statements of one pooled connection, kept open across borrows and keyed by their SQL
+ * (in practice the {@code DBConstants} strings).
+ * <p>
+ * The statement handed to a DAO is a proxy: closing it only gives it back to the cache. Whatever the DAO
+ * did not close is reclaimed when the connection returns to the pool, so the DAOs do not have to manage
+ * statement lifetimes. Like its connection, a cache is used by one thread at a time.
+ */
+class StatementCache
+{
+    private static final Logger logger = LogManager.getLogger("StatementCache");
+
+    private final Connection physical;
+    private final int capacity;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    private final LinkedHashMap<StatementKey, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Statement> uncached = new ArrayList<>();
+
+    StatementCache(Connection physical, int capacity, LongAdder hits, LongAdder misses, LongAdder evictions)
+    {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException
+    {
+        StatementKey key = new StatementKey(sql, autoGeneratedKeys);
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse)
+        {
+            hits.increment();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        misses.increment();
+        PreparedStatement statement = autoGeneratedKeys == Statement.NO_GENERATED_KEYS
+                                      ? physical.prepareStatement(sql)
+                                      : physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null || capacity == 0)
+        {
+            // the cached one is already used by this borrower, this copy lives until it is closed or the lease ends
+            track(statement);
+            return TimedStatement.wrap(owner, statement, sql);
+        }
+
+        cached = new CachedStatement(owner, statement, sql);
+        statements.put(key, cached);
+        evictEldest();
+        return cached.proxy;
+    }
+
+    /**
+     * Statement created outside of the cache, closed at the latest when the lease ends.
+     */
+    void track(Statement statement)
+    {
+        uncached.add(statement);
+    }
+
+    /**
+     * Called when the connection returns to the pool.
+     */
+    void releaseAll()
+    {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (iterator.hasNext())
+        {
+            CachedStatement cached = iterator.next();
+            if (cached.inUse && !cached.release())
+            {
+                iterator.remove();
+            }
+        }
+        for (Statement statement : uncached)
+        {
+            closeQuietly(statement);
+        }
+        uncached.clear();
+    }
+
+    /**
+     * Called when the connection is destroyed.
+     */
+    void closeAll()
+    {
+        releaseAll();
+        for (CachedStatement cached : statements.values())
+        {
+            closeQuietly(cached.physical);
+        }
+        statements.clear();
+    }
+
+    private void evictEldest()
+    {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (statements.size() > capacity && iterator.hasNext())
+        {
+            CachedStatement eldest = iterator.next();
+            iterator.remove();
+            evictions.increment();
+            if (eldest.inUse)
+            {
+                eldest.evicted = true;
+            }
+            else
+            {
+                closeQuietly(eldest.physical);
+            }
+        }
+    }
+
+    private void closeQuietly(Statement statement)
+    {
+        try
+        {
+            statement.close();
+        }
+        catch (SQLException e)
+        {
+            logger.error("Error while closing prepared statement", e);
+        }
+    }
+
+    private static final class StatementKey
+    {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        private StatementKey(String sql, int autoGeneratedKeys)
+        {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof StatementKey)) return false;
+            StatementKey that = (StatementKey) o;
+            return autoGeneratedKeys == that.autoGeneratedKeys && sql.equals(that.sql);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+
+    private final class CachedStatement implements InvocationHandler
+    {
+        private final Connection owner;
+        private final PreparedStatement physical;
+        private final PreparedStatement proxy;
+        private final ParkingMetrics.QueryMetrics metrics;
+        private boolean inUse = true;
+        private boolean evicted;
+
+        private CachedStatement(Connection owner, PreparedStatement physical, String sql)
+        {
+            this.owner = owner;
+            this.physical = physical;
+            this.metrics = ParkingMetrics.getDefault().query(sql);
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                                                                   new Class<?>[]{PreparedStatement.class},
+                                                                   this);
+        }
+
+        /**
+         * @return false when the statement could not be reset and has been closed instead
+         */
+        private boolean release()
+        {
+            inUse = false;
+            if (evicted)
+            {
+                closeQuietly(physical);
+                return true;
+            }
+            try
+            {
+                physical.clearParameters();
+                physical.clearBatch();
+                return true;
+            }
+            catch (SQLException e)
+            {
+                logger.error("Error while resetting cached prepared statement", e);
+                closeQuietly(physical);
+                return false;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName())
+            {
+                case "close":
+                {
+                    if (inUse && !release())
+                    {
+                        statements.values().remove(this);
+                    }
+                    return null;
+                }
+                case "isClosed":
+                {
+                    return !inUse || physical.isClosed();
+                }
+                case "getConnection":
+                {
+                    return owner;
+                }
+                case "equals":
+                {
+                    return proxy == args[0];
+                }
+                case "hashCode":
+                {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString":
+                {
+                    return "Cached " + physical;
+                }
+                default:
+                    break;
+            }
+
+            if (!inUse)
+            {
+                throw new SQLException("Prepared statement has already been closed");
+            }
+
+            return TimedStatement.execute(physical, method, args, metrics);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Prepared statement that records the latency and the failures of its executions in {@link ParkingMetrics}.
+ * Cached statements do the same through {@link #execute}.
+ */
+class TimedStatement implements InvocationHandler
+{
+    private final Connection owner;
+    private final PreparedStatement physical;
+    private final ParkingMetrics.QueryMetrics metrics;
+
+    private TimedStatement(Connection owner, PreparedStatement physical, ParkingMetrics.QueryMetrics metrics)
+    {
+        this.owner = owner;
+        this.physical = physical;
+        this.metrics = metrics;
+    }
+
+    static PreparedStatement wrap(Connection owner, PreparedStatement physical, String sql)
+    {
+        return (PreparedStatement) Proxy.newProxyInstance(TimedStatement.class.getClassLoader(),
+                                                          new Class<?>[]{PreparedStatement.class},
+                                                          new TimedStatement(owner, physical, ParkingMetrics.getDefault().query(sql)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        switch (method.getName())
+        {
+            case "getConnection":
+                return owner;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return execute(physical, method, args, metrics);
+        }
+    }
+
+    /**
+     * Calls the method on the statement, timing it when it runs the query.
+     */
+    static Object execute(PreparedStatement physical, Method method, Object[] args, ParkingMetrics.QueryMetrics metrics) throws Throwable
+    {
+        if (!method.getName().startsWith("execute"))
+        {
+            return invoke(physical, method, args);
+        }
+        long start = System.nanoTime();
+        try
+        {
+            return invoke(physical, method, args);
+        }
+        catch (SQLException e)
+        {
+            metrics.error();
+            throw e;
+        }
+        finally
+        {
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    private static Object invoke(PreparedStatement physical, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(physical, args);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+}
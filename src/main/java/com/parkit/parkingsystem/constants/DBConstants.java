@@ -3,16 +3,39 @@ package com.parkit.parkingsystem.constants;
 public class DBConstants
 {
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_ALL_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String CLAIM_NEXT_PARKING_SPOT = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE = ? order by PARKING_NUMBER limit 1 for update skip locked";
+    public static final String TAKE_PARKING_SPOT = "update parking set AVAILABLE = false, LEASE_OWNER = null, LEASE_EXPIRY = null where PARKING_NUMBER = ? and AVAILABLE = true";
+    public static final String TAKE_LEASED_PARKING_SPOT = "update parking set AVAILABLE = false, LEASE_OWNER = null, LEASE_EXPIRY = null where PARKING_NUMBER = ? and AVAILABLE = true and LEASE_OWNER = ?";
+    public static final String GET_LEASABLE_PARKING_SPOTS = "select PARKING_NUMBER from parking where TYPE = ? and AVAILABLE = true and (LEASE_OWNER is null or LEASE_EXPIRY < ?) order by PARKING_NUMBER limit ?";
+    public static final String COUNT_LEASABLE_PARKING_SPOTS = "select count(*) from parking where TYPE = ? and AVAILABLE = true and (LEASE_OWNER is null or LEASE_EXPIRY < ?)";
+    public static final String LEASE_PARKING_SPOT = "update parking set LEASE_OWNER = ?, LEASE_EXPIRY = ? where PARKING_NUMBER = ? and AVAILABLE = true and (LEASE_OWNER is null or LEASE_EXPIRY < ?)";
+    public static final String RENEW_PARKING_SPOT_LEASE = "update parking set LEASE_EXPIRY = ? where PARKING_NUMBER = ? and AVAILABLE = true and LEASE_OWNER = ?";
+    public static final String RELEASE_PARKING_SPOT_LEASE = "update parking set LEASE_OWNER = null, LEASE_EXPIRY = null where PARKING_NUMBER = ? and LEASE_OWNER = ?";
+    public static final String FIND_OPEN_TICKET_SPOT = "select t.PARKING_NUMBER, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? and t.OUT_TIME is null limit 1";
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME  limit 1";
+    public static final String FIND_OPEN_TICKET_PLATES = "select VEHICLE_REG_NUMBER from ticket where OUT_TIME is null and VEHICLE_REG_NUMBER in ";
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+    public static final String CLOSE_TICKET = "update ticket set PRICE = ?, OUT_TIME = ? where VEHICLE_REG_NUMBER = ? and IN_TIME = ? and OUT_TIME is null";
+    public static final String TICKET_EXISTS = "select count(*) from ticket where VEHICLE_REG_NUMBER = ? and IN_TIME = ?";
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? and t.OUT_TIME is null limit 1";
+    public static final String GET_CLOSED_TICKETS_BEFORE = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME < ? order by t.ID limit ?";
+    public static final String GET_TICKETS_CLOSED_BETWEEN = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME >= ? and t.OUT_TIME < ?";
+    public static final String DELETE_TICKET = "delete from ticket where ID = ?";
+    public static final String GET_ALL_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME is null";
 
     public static final String IS_RECURRING_USER = "select count(*) from ticket where VEHICLE_REG_NUMBER = ? and OUT_TIME is not null";
+    public static final String GET_RECURRING_USERS = "select distinct VEHICLE_REG_NUMBER from ticket where OUT_TIME is not null";
 
     public static final String IS_PARKING_SPOT_AVAILABLE = "select AVAILABLE from parking where PARKING_NUMBER = ?";
 
-    public static final String HAS_AN_OPEN_TICKET = "select t.PARKING_NUMBER, t.ID, t.IN_TIME, p.TYPE from ticket t, parking p  where VEHICLE_REG_NUMBER = ? and OUT_TIME is null";
+    public static final String HAS_AN_OPEN_TICKET = "select t.PARKING_NUMBER, t.ID, t.IN_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? and t.OUT_TIME is null limit 1";
 
-    public static final String COUNT_SLOT_BY_TYPE = "SELECT count(*) FROM test.parking WHERE TYPE = ?";
+    public static final String COUNT_SLOT_BY_TYPE = "select count(*) from parking where TYPE = ?";
+    public static final String COUNT_FREE_SLOT_BY_TYPE = "select count(*), coalesce(sum(case when AVAILABLE then 1 else 0 end), 0) from parking where TYPE = ?";
+
+    public static final String WRITE_HEARTBEAT = "update replication_heartbeat set BEAT = ? where ID = 1";
+    public static final String READ_HEARTBEAT = "select BEAT from replication_heartbeat where ID = 1";
 }
\ No newline at end of file
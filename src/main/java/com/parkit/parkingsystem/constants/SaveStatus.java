@@ -0,0 +1,10 @@
+package com.parkit.parkingsystem.constants;
+
+/**
+ * Outcome of saving one ticket through {@code TicketDAO.saveTickets}.
+ */
+public enum SaveStatus {
+    SAVED,
+    DUPLICATE_OPEN_TICKET,
+    FAILED
+}
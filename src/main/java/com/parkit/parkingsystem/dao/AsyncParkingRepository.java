@@ -0,0 +1,172 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The {@link TicketRepository} and {@link SpotRepository} calls as futures, run on a dedicated, bounded pool of JDBC
+ * threads so that independent calls overlap instead of each waiting for the round trip of the previous one.
+ * <p>
+ * The pool should not have more threads than the connection pool has connections. When its threads and its queue are
+ * all busy, the caller runs the call itself, which slows it down rather than queueing without limit. The logging
+ * context of the caller is carried over, so that the gate of the call is known to the logs and to the read replica
+ * routing of {@code DataBaseConfig}. A call submitted from a callback of another future runs on a JDBC thread whose
+ * context is empty: pass it the context captured on the gate with {@link #captureContext()}.
+ */
+public class AsyncParkingRepository implements AutoCloseable
+{
+    private final TicketRepository ticketRepository;
+    private final SpotRepository spotRepository;
+    private final ThreadPoolExecutor executor;
+
+    public AsyncParkingRepository(TicketRepository ticketRepository, SpotRepository spotRepository, int threads, int queueCapacity)
+    {
+        this.ticketRepository = ticketRepository;
+        this.spotRepository = spotRepository;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r ->
+        {
+            Thread thread = new Thread(r, "jdbc-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (r, pool) ->
+        {
+            // the caller-runs policy would silently drop the call once closed, leaving its future pending forever
+            if (pool.isShutdown())
+            {
+                throw new RejectedExecutionException("Asynchronous repository is closed");
+            }
+            r.run();
+        });
+    }
+
+    /**
+     * @return the logging context of the calling gate, to submit the later calls of the same operation with
+     */
+    public static Map<String, String> captureContext()
+    {
+        return ThreadContext.getImmutableContext();
+    }
+
+    private <T> CompletableFuture<T> submit(Map<String, String> context, Supplier<T> call)
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync(() ->
+            {
+                Map<String, String> previous = ThreadContext.getImmutableContext();
+                ThreadContext.clearMap();
+                ThreadContext.putAll(context);
+                try
+                {
+                    return call.get();
+                }
+                finally
+                {
+                    // the caller itself runs the call when the pool is full, its context must survive
+                    ThreadContext.clearMap();
+                    ThreadContext.putAll(previous);
+                }
+            }, executor);
+        }
+        catch (RejectedExecutionException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Ticket> getTicket(String vehicleRegNumber)
+    {
+        return getTicket(captureContext(), vehicleRegNumber);
+    }
+
+    public CompletableFuture<Ticket> getTicket(Map<String, String> context, String vehicleRegNumber)
+    {
+        return submit(context, () -> ticketRepository.getTicket(vehicleRegNumber));
+    }
+
+    public CompletableFuture<Ticket> getOpenTicket(String vehicleRegNumber)
+    {
+        return getOpenTicket(captureContext(), vehicleRegNumber);
+    }
+
+    public CompletableFuture<Ticket> getOpenTicket(Map<String, String> context, String vehicleRegNumber)
+    {
+        return submit(context, () -> ticketRepository.getOpenTicket(vehicleRegNumber));
+    }
+
+    public CompletableFuture<Boolean> updateTicket(Ticket ticket)
+    {
+        return updateTicket(captureContext(), ticket);
+    }
+
+    public CompletableFuture<Boolean> updateTicket(Map<String, String> context, Ticket ticket)
+    {
+        return submit(context, () -> ticketRepository.updateTicket(ticket));
+    }
+
+    public CompletableFuture<Boolean> isRecurringUser(String vehicleRegNumber)
+    {
+        return isRecurringUser(captureContext(), vehicleRegNumber);
+    }
+
+    public CompletableFuture<Boolean> isRecurringUser(Map<String, String> context, String vehicleRegNumber)
+    {
+        return submit(context, () -> ticketRepository.isRecurringUser(vehicleRegNumber));
+    }
+
+    public CompletableFuture<Boolean> updateParking(ParkingSpot parkingSpot)
+    {
+        return updateParking(captureContext(), parkingSpot);
+    }
+
+    public CompletableFuture<Boolean> updateParking(Map<String, String> context, ParkingSpot parkingSpot)
+    {
+        return submit(context, () -> spotRepository.updateParking(parkingSpot));
+    }
+
+    /**
+     * @return the future of the saved ticket, failed with {@link IllegalStateException} when the vehicle already has
+     * an open ticket
+     */
+    public CompletableFuture<Ticket> allocateSpot(ParkingType parkingType, String vehicleRegNumber)
+    {
+        return allocateSpot(captureContext(), parkingType, vehicleRegNumber);
+    }
+
+    public CompletableFuture<Ticket> allocateSpot(Map<String, String> context, ParkingType parkingType, String vehicleRegNumber)
+    {
+        return submit(context, () -> spotRepository.allocateSpot(parkingType, vehicleRegNumber));
+    }
+
+    public CompletableFuture<Occupancy> getOccupancy(ParkingType parkingType)
+    {
+        return getOccupancy(captureContext(), parkingType);
+    }
+
+    public CompletableFuture<Occupancy> getOccupancy(Map<String, String> context, ParkingType parkingType)
+    {
+        return submit(context, () -> spotRepository.getOccupancy(parkingType));
+    }
+
+    /**
+     * Lets the calls already submitted finish, refusing new ones.
+     */
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,178 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * {@link InMemoryParkingStore} made durable by a single log file, for the small lots that run without a database.
+ * <p>
+ * Every change is written and forced to the log before it is acknowledged, as a {@link TicketJournal} line where the
+ * sequence is the id of the ticket. The log is replayed when the store is opened, a torn line at its end being dropped,
+ * then rewritten with only what is still needed: the last ticket of each vehicle and the availability of every spot.
+ */
+public class FileParkingStore extends InMemoryParkingStore implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("FileParkingStore");
+
+    static final String STORE_FILE = "parking.log";
+
+    private final FileChannel channel;
+    private boolean failed;
+
+    private FileParkingStore(Map<Integer, ParkingType> spots, Path file) throws IOException
+    {
+        super(spots);
+        replay(file);
+        compact(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Opens the store of the directory, creating it with all the spots free if needed.
+     * @param spots the type of each spot, by number, see {@link #layout(int, int)}
+     */
+    public static FileParkingStore open(Path directory, Map<Integer, ParkingType> spots) throws IOException
+    {
+        Files.createDirectories(directory);
+        return new FileParkingStore(spots, directory.resolve(STORE_FILE));
+    }
+
+    private void replay(Path file) throws IOException
+    {
+        if (!Files.exists(file))
+        {
+            return;
+        }
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                JournalRecord record = JournalRecord.parse(line);
+                if (record == null)
+                {
+                    logger.warn("Parking store " + file + " ends with a torn record, it is dropped");
+                    break;
+                }
+                if (record.getKind() == JournalRecord.Kind.SPOT)
+                {
+                    restoreSpot(record.getParkingNumber(), record.isAvailable());
+                }
+                else
+                {
+                    Ticket ticket = record.toTicket();
+                    ticket.setId((int) record.getSequence());
+                    restoreTicket(ticket);
+                }
+                records++;
+            }
+        }
+        logger.info(records + " records replayed from " + file);
+    }
+
+    /**
+     * Writes the state next to the log and moves it over, so that the log does not grow from one run to the next.
+     */
+    private void compact(Path file) throws IOException
+    {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8))
+        {
+            for (Ticket ticket : getLastTickets().values())
+            {
+                JournalRecord record = ticket.getOutTime() == null
+                                       ? JournalRecord.entry(ticket.getId(), ticket)
+                                       : JournalRecord.exit(ticket.getId(), ticket);
+                writer.write(record.toLine());
+            }
+            for (Integer parkingNumber : getSpots().keySet())
+            {
+                writer.write(JournalRecord.spot(0, parkingNumber, isAvailable(parkingNumber)).toLine());
+            }
+        }
+        try (FileChannel written = FileChannel.open(compacted, StandardOpenOption.WRITE))
+        {
+            written.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    boolean persistEntry(Ticket ticket)
+    {
+        try
+        {
+            return append(JournalRecord.entry(ticket.getId(), ticket));
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("Ticket cannot be stored", e);
+            return false;
+        }
+    }
+
+    @Override
+    boolean persistUpdate(Ticket ticket)
+    {
+        if (ticket.getOutTime() == null)
+        {
+            logger.error("Ticket " + ticket.getId() + " cannot be updated without an out-time");
+            return false;
+        }
+        return append(JournalRecord.exit(ticket.getId(), ticket));
+    }
+
+    @Override
+    boolean persistSpot(int parkingNumber, boolean available)
+    {
+        return append(JournalRecord.spot(0, parkingNumber, available));
+    }
+
+    private synchronized boolean append(JournalRecord record)
+    {
+        if (failed)
+        {
+            logger.error("Parking store is closed or failed, change refused");
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record.toLine().getBytes(StandardCharsets.UTF_8));
+        try
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            return true;
+        }
+        catch (IOException e)
+        {
+            // the end of the log is unknown now, nothing more is acknowledged until the store is reopened
+            failed = true;
+            logger.error("Error writing to the parking store", e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        failed = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,455 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tickets and spots kept in memory only, for the edge kiosks that run without a database and for the benchmarks.
+ * <p>
+ * Nothing is locked: the free spots of each type are a sorted concurrent set the lowest spot is polled from, and a
+ * vehicle gets its open ticket with a {@code putIfAbsent}, so a spot is never given twice and a vehicle is never let in
+ * twice whatever the number of gates. Only the last ticket of each vehicle is kept, which is all
+ * {@link #getTicket(String)} and {@link #isRecurringUser(String)} need.
+ * <p>
+ * As a {@link SpotLeaseStore} it stands for the database shared by the nodes of the multi-node tests.
+ */
+public class InMemoryParkingStore implements TicketRepository, SpotRepository, SpotLeaseStore
+{
+    private final Map<Integer, ParkingType> spots;
+    private final Map<ParkingType, ConcurrentSkipListSet<Integer>> freeSpots = new EnumMap<>(ParkingType.class);
+    private final Map<ParkingType, AtomicInteger> freeCounts = new EnumMap<>(ParkingType.class);
+    private final Map<ParkingType, Integer> totals = new EnumMap<>(ParkingType.class);
+    private final ConcurrentMap<String, Ticket> openTickets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Ticket> lastTickets = new ConcurrentHashMap<>();
+    private final Set<String> recurringUsers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger ticketIds = new AtomicInteger();
+    private final ConcurrentMap<Integer, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * @param spots the type of each spot, by number; they are all free
+     */
+    public InMemoryParkingStore(Map<Integer, ParkingType> spots)
+    {
+        this.spots = Collections.unmodifiableMap(new LinkedHashMap<>(spots));
+        for (ParkingType parkingType : ParkingType.values())
+        {
+            freeSpots.put(parkingType, new ConcurrentSkipListSet<>());
+            freeCounts.put(parkingType, new AtomicInteger());
+            totals.put(parkingType, 0);
+        }
+        for (Map.Entry<Integer, ParkingType> spot : this.spots.entrySet())
+        {
+            freeSpots.get(spot.getValue()).add(spot.getKey());
+            freeCounts.get(spot.getValue()).incrementAndGet();
+            totals.merge(spot.getValue(), 1, Integer::sum);
+        }
+    }
+
+    public InMemoryParkingStore(int carSpots, int bikeSpots)
+    {
+        this(layout(carSpots, bikeSpots));
+    }
+
+    /**
+     * @return spots numbered from 1 like in the database: the cars first, then the bikes
+     */
+    public static Map<Integer, ParkingType> layout(int carSpots, int bikeSpots)
+    {
+        Map<Integer, ParkingType> spots = new LinkedHashMap<>();
+        for (int i = 1; i <= carSpots + bikeSpots; i++)
+        {
+            spots.put(i, i <= carSpots ? ParkingType.CAR : ParkingType.BIKE);
+        }
+        return spots;
+    }
+
+    public Map<Integer, ParkingType> getSpots()
+    {
+        return spots;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType)
+    {
+        Integer parkingNumber = freeSpots.get(parkingType).ceiling(Integer.MIN_VALUE);
+        return parkingNumber == null ? 0 : parkingNumber;
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot)
+    {
+        if (!spots.containsKey(parkingSpot.getId()) || !persistSpot(parkingSpot.getId(), parkingSpot.isAvailable()))
+        {
+            return false;
+        }
+        setAvailable(parkingSpot.getId(), parkingSpot.isAvailable());
+        return true;
+    }
+
+    @Override
+    public Ticket allocateSpot(ParkingType parkingType, String vehicleRegNumber) throws IllegalStateException
+    {
+        Ticket openedTicket = openTickets.get(vehicleRegNumber);
+        if (openedTicket != null)
+        {
+            throw alreadyInTheParking(openedTicket);
+        }
+        Integer parkingNumber = freeSpots.get(parkingType).pollFirst();
+        if (parkingNumber == null)
+        {
+            return null;
+        }
+        freeCounts.get(parkingType).decrementAndGet();
+        Ticket ticket = openOn(parkingNumber, parkingType, vehicleRegNumber);
+        if (ticket != null)
+        {
+            // a node holding the spot in a lease will fail to allocate it
+            leases.remove(parkingNumber);
+        }
+        return ticket;
+    }
+
+    /**
+     * Opens a ticket on a spot just taken out of the free ones, giving the spot back when it fails.
+     */
+    private Ticket openOn(int parkingNumber, ParkingType parkingType, String vehicleRegNumber)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        try
+        {
+            if (!open(ticket))
+            {
+                setAvailable(parkingNumber, true);
+                return null;
+            }
+        }
+        catch (IllegalStateException e)
+        {
+            // another gate let the same vehicle in meanwhile
+            setAvailable(parkingNumber, true);
+            throw e;
+        }
+        return copy(ticket);
+    }
+
+    @Override
+    public List<Integer> acquireLeases(String owner, ParkingType parkingType, int count, Date expiry)
+    {
+        List<Integer> acquired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Integer parkingNumber : freeSpots.get(parkingType))
+        {
+            if (acquired.size() >= count)
+            {
+                break;
+            }
+            Lease lease = new Lease(owner, expiry.getTime());
+            Lease result = leases.compute(parkingNumber, (number, current) ->
+                current == null || current.expiry < now ? lease : current);
+            if (result == lease)
+            {
+                acquired.add(parkingNumber);
+            }
+        }
+        return acquired;
+    }
+
+    @Override
+    public List<Integer> renewLeases(String owner, Collection<Integer> parkingNumbers, Date expiry)
+    {
+        List<Integer> renewed = new ArrayList<>();
+        for (Integer parkingNumber : parkingNumbers)
+        {
+            Lease lease = new Lease(owner, expiry.getTime());
+            Lease result = leases.computeIfPresent(parkingNumber, (number, current) ->
+                current.owner.equals(owner) && isAvailable(number) ? lease : current);
+            if (result == lease)
+            {
+                renewed.add(parkingNumber);
+            }
+        }
+        return renewed;
+    }
+
+    @Override
+    public void releaseLeases(String owner, Collection<Integer> parkingNumbers)
+    {
+        for (Integer parkingNumber : parkingNumbers)
+        {
+            leases.computeIfPresent(parkingNumber, (number, current) -> current.owner.equals(owner) ? null : current);
+        }
+    }
+
+    @Override
+    public int countLeasableSpots(ParkingType parkingType, Date now)
+    {
+        int leasable = 0;
+        for (Integer parkingNumber : freeSpots.get(parkingType))
+        {
+            Lease lease = leases.get(parkingNumber);
+            if (lease == null || lease.expiry < now.getTime())
+            {
+                leasable++;
+            }
+        }
+        return leasable;
+    }
+
+    @Override
+    public Ticket allocateLeasedSpot(String owner, int parkingNumber, ParkingType parkingType, String vehicleRegNumber)
+        throws IllegalStateException
+    {
+        Lease lease = leases.get(parkingNumber);
+        if (lease == null || !lease.owner.equals(owner))
+        {
+            return null;
+        }
+        Ticket openedTicket = openTickets.get(vehicleRegNumber);
+        if (openedTicket != null)
+        {
+            throw alreadyInTheParking(openedTicket);
+        }
+        // taking the spot out of the free ones is what settles a race with another node
+        if (!freeSpots.get(parkingType).remove(parkingNumber))
+        {
+            leases.remove(parkingNumber, lease);
+            return null;
+        }
+        freeCounts.get(parkingType).decrementAndGet();
+        Ticket ticket = openOn(parkingNumber, parkingType, vehicleRegNumber);
+        if (ticket != null)
+        {
+            leases.remove(parkingNumber, lease);
+        }
+        return ticket;
+    }
+
+    @Override
+    public Occupancy getOccupancy(ParkingType parkingType)
+    {
+        return new Occupancy(parkingType, totals.get(parkingType), freeCounts.get(parkingType).get());
+    }
+
+    /**
+     * Opens the ticket on the spot it holds, which is not marked as taken: that is left to {@link #updateParking}.
+     */
+    @Override
+    public void saveNewTicket(Ticket ticket) throws IllegalStateException
+    {
+        Ticket saved = copy(ticket);
+        if (open(saved))
+        {
+            ticket.setId(saved.getId());
+        }
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber)
+    {
+        return copy(lastTickets.get(vehicleRegNumber));
+    }
+
+    @Override
+    public Ticket getOpenTicket(String vehicleRegNumber)
+    {
+        return copy(openTickets.get(vehicleRegNumber));
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket)
+    {
+        String vehicleRegNumber = ticket.getVehicleRegNumber();
+        Ticket current = lastTickets.get(vehicleRegNumber);
+        if (current == null || current.getId() != ticket.getId() || current.getOutTime() != null)
+        {
+            return false;
+        }
+        Ticket updated = copy(current);
+        updated.setOutTime(ticket.getOutTime() == null ? null : new Date(ticket.getOutTime().getTime()));
+        updated.setPrice(ticket.getPrice());
+        if (!persistUpdate(updated) || !lastTickets.replace(vehicleRegNumber, current, updated))
+        {
+            return false;
+        }
+        if (updated.getOutTime() == null)
+        {
+            openTickets.replace(vehicleRegNumber, current, updated);
+        }
+        else
+        {
+            openTickets.remove(vehicleRegNumber, current);
+            recurringUsers.add(vehicleRegNumber);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isRecurringUser(String vehicleRegNumber)
+    {
+        return recurringUsers.contains(vehicleRegNumber);
+    }
+
+    /**
+     * Gives the ticket an id and makes it the open ticket of its vehicle.
+     * @return false when it could not be persisted, nothing is changed then
+     * @throws IllegalStateException when the vehicle already has an open ticket
+     */
+    private boolean open(Ticket ticket)
+    {
+        String vehicleRegNumber = ticket.getVehicleRegNumber();
+        ticket.setId(ticketIds.incrementAndGet());
+        Ticket openedTicket = openTickets.putIfAbsent(vehicleRegNumber, ticket);
+        if (openedTicket != null)
+        {
+            throw alreadyInTheParking(openedTicket);
+        }
+        if (!persistEntry(ticket))
+        {
+            openTickets.remove(vehicleRegNumber, ticket);
+            return false;
+        }
+        lastTickets.put(vehicleRegNumber, ticket);
+        return true;
+    }
+
+    private void setAvailable(int parkingNumber, boolean available)
+    {
+        ParkingType parkingType = spots.get(parkingNumber);
+        ConcurrentSkipListSet<Integer> free = freeSpots.get(parkingType);
+        if (available ? free.add(parkingNumber) : free.remove(parkingNumber))
+        {
+            if (available)
+            {
+                freeCounts.get(parkingType).incrementAndGet();
+            }
+            else
+            {
+                freeCounts.get(parkingType).decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Called once the ticket is the open ticket of its vehicle, so that the same vehicle is never persisted twice.
+     * @return false to cancel the entry
+     */
+    boolean persistEntry(Ticket ticket)
+    {
+        return true;
+    }
+
+    /**
+     * Called before the new out-time and price of the ticket are applied.
+     * @return false to refuse the update
+     */
+    boolean persistUpdate(Ticket ticket)
+    {
+        return true;
+    }
+
+    /**
+     * Called before the availability of the spot is applied.
+     * @return false to refuse the update
+     */
+    boolean persistSpot(int parkingNumber, boolean available)
+    {
+        return true;
+    }
+
+    /**
+     * Replays a ticket read back from storage: an open ticket takes its spot, a closed one leaves the spot as it is,
+     * it is freed by its own update.
+     */
+    void restoreTicket(Ticket ticket)
+    {
+        String vehicleRegNumber = ticket.getVehicleRegNumber();
+        ticketIds.accumulateAndGet(ticket.getId(), Math::max);
+        lastTickets.put(vehicleRegNumber, ticket);
+        if (ticket.getOutTime() == null)
+        {
+            restoreSpot(ticket.getParkingSpot().getId(), false);
+            openTickets.put(vehicleRegNumber, ticket);
+        }
+        else
+        {
+            openTickets.remove(vehicleRegNumber);
+            recurringUsers.add(vehicleRegNumber);
+        }
+    }
+
+    void restoreSpot(int parkingNumber, boolean available)
+    {
+        if (spots.containsKey(parkingNumber))
+        {
+            setAvailable(parkingNumber, available);
+        }
+    }
+
+    Map<String, Ticket> getLastTickets()
+    {
+        return Collections.unmodifiableMap(lastTickets);
+    }
+
+    boolean isAvailable(int parkingNumber)
+    {
+        return freeSpots.get(spots.get(parkingNumber)).contains(parkingNumber);
+    }
+
+    private static class Lease
+    {
+        private final String owner;
+        private final long expiry;
+
+        private Lease(String owner, long expiry)
+        {
+            this.owner = owner;
+            this.expiry = expiry;
+        }
+    }
+
+    private static IllegalStateException alreadyInTheParking(Ticket openedTicket)
+    {
+        return new IllegalStateException("This " + openedTicket.getParkingSpot().getParkingType()
+                                         + " " + openedTicket.getVehicleRegNumber()
+                                         + " is already in the parking at slot " + openedTicket.getParkingSpot().getId());
+    }
+
+    /**
+     * The stored tickets are never handed out, so that they only change through {@link #updateTicket}.
+     */
+    static Ticket copy(Ticket ticket)
+    {
+        if (ticket == null)
+        {
+            return null;
+        }
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setInTime(ticket.getInTime() == null ? null : new Date(ticket.getInTime().getTime()));
+        copy.setOutTime(ticket.getOutTime() == null ? null : new Date(ticket.getOutTime().getTime()));
+        copy.setPrice(ticket.getPrice());
+        return copy;
+    }
+}
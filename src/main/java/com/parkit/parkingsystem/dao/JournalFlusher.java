@@ -0,0 +1,287 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.SaveStatus;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the records of a {@link TicketJournal} to the database in batches: the exits are closed first, then the
+ * entries inserted with {@link TicketDAO#saveTickets(java.util.Collection, int)} and the last availability of every
+ * spot written with {@link ParkingSpotDAO#updateParkingSpots(java.util.Collection)}. An entry and its exit found in
+ * the same batch are inserted as one closed ticket.
+ * <p>
+ * A batch may be applied twice, after a crash or after a partial failure: entries already in the database are then
+ * skipped, exits only close tickets that are still open and spot updates are absolute.
+ */
+public class JournalFlusher implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("JournalFlusher");
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final TicketJournal journal;
+    private final TicketDAO ticketDAO;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+    // set after a failure, the next batch may have been partly applied
+    private boolean checkExisting;
+
+    public JournalFlusher(TicketJournal journal, TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO)
+    {
+        this(journal, ticketDAO, parkingSpotDAO, DEFAULT_BATCH_SIZE);
+    }
+
+    public JournalFlusher(TicketJournal journal, TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO, int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.journal = journal;
+        this.ticketDAO = ticketDAO;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.batchSize = batchSize;
+    }
+
+    public TicketJournal getJournal()
+    {
+        return journal;
+    }
+
+    /**
+     * Applies the records left by the previous run. To be called before the DAOs load their in-memory state.
+     * @return the number of records applied
+     * @throws IllegalStateException when the database refuses them, the app must not start on a stale database
+     */
+    public synchronized int recover()
+    {
+        List<JournalRecord> recovered = new ArrayList<>(journal.getRecovered());
+        int applied = 0;
+        for (int from = 0; from < recovered.size(); from += batchSize)
+        {
+            List<JournalRecord> batch = recovered.subList(from, Math.min(from + batchSize, recovered.size()));
+            if (!apply(batch, true))
+            {
+                throw new IllegalStateException("Journaled tickets could not be applied to the database");
+            }
+            applied += batch.size();
+        }
+        if (applied > 0)
+        {
+            logger.info(applied + " journaled records recovered");
+        }
+        return applied;
+    }
+
+    /**
+     * Applies the durable records not applied yet, one batch at most.
+     * @return the number of records applied
+     */
+    public synchronized int flush()
+    {
+        List<JournalRecord> batch = journal.pending(batchSize);
+        if (batch.isEmpty())
+        {
+            return 0;
+        }
+        if (!apply(batch, checkExisting))
+        {
+            checkExisting = true;
+            return 0;
+        }
+        checkExisting = false;
+        return batch.size();
+    }
+
+    /**
+     * Flushes every {@code intervalMillis} in a background thread, batch after batch until the journal is drained.
+     */
+    public synchronized void start(long intervalMillis)
+    {
+        if (scheduler != null)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                while (flush() == batchSize)
+                {
+                    // a full batch, more records are probably waiting
+                }
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Error flushing the ticket journal", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread and applies what can be applied, the rest is recovered on next start.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (scheduler != null)
+            {
+                scheduler.shutdown();
+            }
+        }
+        try
+        {
+            if (scheduler != null)
+            {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        while (flush() > 0)
+        {
+            // drain
+        }
+    }
+
+    private boolean apply(List<JournalRecord> batch, boolean checkExisting)
+    {
+        Map<String, Ticket> entries = new LinkedHashMap<>();
+        List<Ticket> exits = new ArrayList<>();
+        Map<Integer, Boolean> spots = new LinkedHashMap<>();
+        for (JournalRecord record : batch)
+        {
+            switch (record.getKind())
+            {
+                case ENTRY:
+                {
+                    entries.put(key(record), record.toTicket());
+                    spots.put(record.getParkingNumber(), false);
+                    break;
+                }
+                case EXIT:
+                {
+                    Ticket exit = record.toTicket();
+                    Ticket entry = entries.get(key(record));
+                    if (entry != null)
+                    {
+                        entry.setOutTime(exit.getOutTime());
+                        entry.setPrice(exit.getPrice());
+                    }
+                    else
+                    {
+                        exits.add(exit);
+                    }
+                    break;
+                }
+                default:
+                {
+                    spots.put(record.getParkingNumber(), record.isAvailable());
+                    break;
+                }
+            }
+        }
+
+        try
+        {
+            if (checkExisting)
+            {
+                skipExistingEntries(entries, exits);
+            }
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error checking journaled tickets against the database", ex);
+            return false;
+        }
+
+        // exits first: a vehicle that left and came back must not look parked twice to saveTickets
+        if (!ticketDAO.closeTickets(exits))
+        {
+            return false;
+        }
+        if (!entries.isEmpty())
+        {
+            List<SaveStatus> statuses = ticketDAO.saveTickets(entries.values(), entries.size());
+            if (statuses.contains(SaveStatus.FAILED))
+            {
+                return false;
+            }
+            if (statuses.contains(SaveStatus.DUPLICATE_OPEN_TICKET))
+            {
+                logger.warn("Some journaled entries were refused, their vehicle already had an open ticket in the database");
+            }
+        }
+        List<ParkingSpot> parkingSpots = new ArrayList<>(spots.size());
+        for (Map.Entry<Integer, Boolean> spot : spots.entrySet())
+        {
+            parkingSpots.add(new ParkingSpot(spot.getKey(), null, spot.getValue()));
+        }
+        if (!parkingSpotDAO.updateParkingSpots(parkingSpots))
+        {
+            return false;
+        }
+
+        try
+        {
+            journal.markApplied(batch.get(batch.size() - 1).getSequence());
+        }
+        catch (IOException ex)
+        {
+            // the database is up to date, the batch will be applied again and skipped
+            logger.error("Error writing the journal checkpoint", ex);
+            this.checkExisting = true;
+        }
+        return true;
+    }
+
+    /**
+     * Entries already in the database are not inserted again; when the batch also holds their exit it is applied
+     * as a plain exit instead.
+     */
+    private void skipExistingEntries(Map<String, Ticket> entries, List<Ticket> exits) throws SQLException, ClassNotFoundException
+    {
+        Iterator<Ticket> iterator = entries.values().iterator();
+        while (iterator.hasNext())
+        {
+            Ticket entry = iterator.next();
+            if (ticketDAO.ticketExists(entry.getVehicleRegNumber(), entry.getInTime()))
+            {
+                iterator.remove();
+                if (entry.getOutTime() != null)
+                {
+                    exits.add(entry);
+                }
+            }
+        }
+    }
+
+    private static String key(JournalRecord record)
+    {
+        return record.getVehicleRegNumber() + '\t' + record.getInTime();
+    }
+}
@@ -0,0 +1,187 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * One line of the {@link TicketJournal}: a ticket opened, a ticket closed or the new availability of a spot.
+ * <p>
+ * Tickets are identified by their vehicle and in-time, the database id is not known before the record is flushed.
+ * A line is tab separated and ends with the CRC32 of the rest of the line, so that a torn write is detected on recovery.
+ */
+class JournalRecord
+{
+    enum Kind
+    {
+        ENTRY, EXIT, SPOT
+    }
+
+    private final long sequence;
+    private final Kind kind;
+    private final String vehicleRegNumber;
+    private final ParkingType parkingType;
+    private final int parkingNumber;
+    private final long inTime;
+    private final long outTime;
+    private final double price;
+    private final boolean available;
+
+    private JournalRecord(long sequence, Kind kind, String vehicleRegNumber, ParkingType parkingType, int parkingNumber,
+                          long inTime, long outTime, double price, boolean available)
+    {
+        this.sequence = sequence;
+        this.kind = kind;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingType = parkingType;
+        this.parkingNumber = parkingNumber;
+        this.inTime = inTime;
+        this.outTime = outTime;
+        this.price = price;
+        this.available = available;
+    }
+
+    static JournalRecord entry(long sequence, Ticket ticket)
+    {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        return new JournalRecord(sequence, Kind.ENTRY, checkVehicle(ticket.getVehicleRegNumber()), parkingSpot.getParkingType(),
+                                 parkingSpot.getId(), ticket.getInTime().getTime(), 0, 0, false);
+    }
+
+    static JournalRecord exit(long sequence, Ticket ticket)
+    {
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        return new JournalRecord(sequence, Kind.EXIT, checkVehicle(ticket.getVehicleRegNumber()), parkingSpot.getParkingType(),
+                                 parkingSpot.getId(), ticket.getInTime().getTime(), ticket.getOutTime().getTime(), ticket.getPrice(), false);
+    }
+
+    static JournalRecord spot(long sequence, int parkingNumber, boolean available)
+    {
+        return new JournalRecord(sequence, Kind.SPOT, null, null, parkingNumber, 0, 0, 0, available);
+    }
+
+    long getSequence()
+    {
+        return sequence;
+    }
+
+    Kind getKind()
+    {
+        return kind;
+    }
+
+    String getVehicleRegNumber()
+    {
+        return vehicleRegNumber;
+    }
+
+    int getParkingNumber()
+    {
+        return parkingNumber;
+    }
+
+    long getInTime()
+    {
+        return inTime;
+    }
+
+    boolean isAvailable()
+    {
+        return available;
+    }
+
+    /**
+     * @return the ticket as it must be in the database once this record is applied
+     */
+    Ticket toTicket()
+    {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        if (kind == Kind.EXIT)
+        {
+            ticket.setOutTime(new Date(outTime));
+            ticket.setPrice(price);
+        }
+        return ticket;
+    }
+
+    String toLine()
+    {
+        String content;
+        switch (kind)
+        {
+            case ENTRY:
+                content = sequence + "\tE\t" + vehicleRegNumber + "\t" + parkingType + "\t" + parkingNumber + "\t" + inTime;
+                break;
+            case EXIT:
+                content = sequence + "\tX\t" + vehicleRegNumber + "\t" + parkingType + "\t" + parkingNumber + "\t" + inTime
+                          + "\t" + outTime + "\t" + price;
+                break;
+            default:
+                content = sequence + "\tS\t" + parkingNumber + "\t" + (available ? 1 : 0);
+                break;
+        }
+        return content + "\t" + Long.toHexString(checksum(content)) + "\n";
+    }
+
+    /**
+     * @return the record, or null when the line is torn or corrupted
+     */
+    static JournalRecord parse(String line)
+    {
+        int lastTab = line.lastIndexOf('\t');
+        if (lastTab < 0)
+        {
+            return null;
+        }
+        String content = line.substring(0, lastTab);
+        try
+        {
+            if (Long.parseLong(line.substring(lastTab + 1), 16) != checksum(content))
+            {
+                return null;
+            }
+            String[] fields = content.split("\t");
+            long sequence = Long.parseLong(fields[0]);
+            switch (fields[1])
+            {
+                case "E":
+                    return new JournalRecord(sequence, Kind.ENTRY, fields[2], ParkingType.valueOf(fields[3]), Integer.parseInt(fields[4]),
+                                             Long.parseLong(fields[5]), 0, 0, false);
+                case "X":
+                    return new JournalRecord(sequence, Kind.EXIT, fields[2], ParkingType.valueOf(fields[3]), Integer.parseInt(fields[4]),
+                                             Long.parseLong(fields[5]), Long.parseLong(fields[6]), Double.parseDouble(fields[7]), false);
+                case "S":
+                    return new JournalRecord(sequence, Kind.SPOT, null, null, Integer.parseInt(fields[2]), 0, 0, 0, "1".equals(fields[3]));
+                default:
+                    return null;
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+        {
+            return null;
+        }
+    }
+
+    private static long checksum(String content)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String checkVehicle(String vehicleRegNumber)
+    {
+        if (vehicleRegNumber.indexOf('\t') >= 0 || vehicleRegNumber.indexOf('\n') >= 0 || vehicleRegNumber.indexOf('\r') >= 0)
+        {
+            throw new IllegalArgumentException("Vehicle registration number cannot be journaled: " + vehicleRegNumber);
+        }
+        return vehicleRegNumber;
+    }
+}
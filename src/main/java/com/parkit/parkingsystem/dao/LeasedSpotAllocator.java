@@ -0,0 +1,224 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spot allocation of one node among several sharing the same parking: the node leases blocks of free spots and
+ * allocates from them without competing with the other nodes for the same rows.
+ * <p>
+ * A background thread renews the leases, tops the blocks up when they run low and gives back what is above two blocks.
+ * When the type gets scarce, no spot being left outside the leases, every node shrinks to a quarter of a block so
+ * that the others can lease what it gave back. A node left without lease still lets vehicles in, through the
+ * allocation of the delegate, which may take a spot leased by another node: that node then fails to allocate it and
+ * forgets it.
+ */
+public class LeasedSpotAllocator implements SpotRepository, AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("LeasedSpotAllocator");
+
+    private final String nodeId;
+    private final SpotLeaseStore leaseStore;
+    private final SpotRepository delegate;
+    private final int blockSize;
+    private final long leaseMillis;
+    private final Map<ParkingType, ConcurrentSkipListSet<Integer>> leased = new EnumMap<>(ParkingType.class);
+    private ScheduledExecutorService maintainer;
+
+    /**
+     * @param delegate answers everything but the allocation of leased spots, and allocates when there is none
+     */
+    public LeasedSpotAllocator(String nodeId, SpotLeaseStore leaseStore, SpotRepository delegate, int blockSize, long leaseMillis)
+    {
+        this.nodeId = nodeId;
+        this.leaseStore = leaseStore;
+        this.delegate = delegate;
+        this.blockSize = blockSize;
+        this.leaseMillis = leaseMillis;
+        for (ParkingType parkingType : ParkingType.values())
+        {
+            leased.put(parkingType, new ConcurrentSkipListSet<>());
+        }
+    }
+
+    /**
+     * Leases a first block of each type, then maintains the leases every {@code intervalMillis}, which must be well
+     * below the lease duration.
+     */
+    public synchronized void start(long intervalMillis)
+    {
+        maintain();
+        maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spot-lease-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintainer.scheduleWithFixedDelay(this::maintain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Renews the leases, then tops up, trims or shrinks the block of each type.
+     */
+    public void maintain()
+    {
+        for (ParkingType parkingType : ParkingType.values())
+        {
+            try
+            {
+                maintain(parkingType);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Error maintaining the " + parkingType + " spot leases of " + nodeId, e);
+            }
+        }
+    }
+
+    private void maintain(ParkingType parkingType)
+    {
+        ConcurrentSkipListSet<Integer> free = leased.get(parkingType);
+        List<Integer> held = new ArrayList<>(free);
+        if (!held.isEmpty())
+        {
+            // spots lost since the last renewal are forgotten, those allocated meanwhile are already gone
+            held.removeAll(leaseStore.renewLeases(nodeId, held, expiry()));
+            free.removeAll(held);
+        }
+
+        int keep = 2 * blockSize;
+        int leasable = leaseStore.countLeasableSpots(parkingType, new Date());
+        if (leasable == 0)
+        {
+            keep = Math.max(1, blockSize / 4);
+        }
+        if (free.size() > keep)
+        {
+            List<Integer> surplus = new ArrayList<>();
+            Integer parkingNumber;
+            while (free.size() > keep && (parkingNumber = free.pollLast()) != null)
+            {
+                surplus.add(parkingNumber);
+            }
+            leaseStore.releaseLeases(nodeId, surplus);
+        }
+        else if (free.size() < blockSize && leasable > 0)
+        {
+            lease(parkingType, blockSize - free.size());
+        }
+    }
+
+    private boolean lease(ParkingType parkingType, int count)
+    {
+        List<Integer> spots = leaseStore.acquireLeases(nodeId, parkingType, count, expiry());
+        leased.get(parkingType).addAll(spots);
+        return !spots.isEmpty();
+    }
+
+    private Date expiry()
+    {
+        return new Date(System.currentTimeMillis() + leaseMillis);
+    }
+
+    /**
+     * @return the number of free spots of the type leased by this node
+     */
+    public int getLeasedCount(ParkingType parkingType)
+    {
+        return leased.get(parkingType).size();
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType)
+    {
+        Integer parkingNumber = leased.get(parkingType).ceiling(Integer.MIN_VALUE);
+        return parkingNumber != null ? parkingNumber : delegate.getNextAvailableSlot(parkingType);
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot)
+    {
+        return delegate.updateParking(parkingSpot);
+    }
+
+    @Override
+    public Ticket allocateSpot(ParkingType parkingType, String vehicleRegNumber) throws IllegalStateException
+    {
+        ConcurrentSkipListSet<Integer> free = leased.get(parkingType);
+        boolean leasedNow = false;
+        while (true)
+        {
+            Integer parkingNumber;
+            while ((parkingNumber = free.pollFirst()) != null)
+            {
+                Ticket ticket;
+                try
+                {
+                    ticket = leaseStore.allocateLeasedSpot(nodeId, parkingNumber, parkingType, vehicleRegNumber);
+                }
+                catch (IllegalStateException e)
+                {
+                    free.add(parkingNumber);
+                    throw e;
+                }
+                if (ticket != null)
+                {
+                    return ticket;
+                }
+                // the lease expired and was taken over, or another node allocated the spot without lease
+            }
+            // one round trip for a whole block rather than competing for a single spot
+            if (leasedNow || !lease(parkingType, blockSize))
+            {
+                break;
+            }
+            leasedNow = true;
+        }
+        return delegate.allocateSpot(parkingType, vehicleRegNumber);
+    }
+
+    @Override
+    public Occupancy getOccupancy(ParkingType parkingType)
+    {
+        return delegate.getOccupancy(parkingType);
+    }
+
+    /**
+     * Stops maintaining the leases and gives them back.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (maintainer != null)
+        {
+            maintainer.shutdownNow();
+            maintainer = null;
+        }
+        for (ConcurrentSkipListSet<Integer> free : leased.values())
+        {
+            List<Integer> spots = new ArrayList<>();
+            Integer parkingNumber;
+            while ((parkingNumber = free.pollFirst()) != null)
+            {
+                spots.add(parkingNumber);
+            }
+            if (!spots.isEmpty())
+            {
+                leaseStore.releaseLeases(nodeId, spots);
+            }
+        }
+    }
+}
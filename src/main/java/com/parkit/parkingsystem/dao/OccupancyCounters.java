@@ -0,0 +1,112 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of spots, free and occupied per {@link ParkingType}, for the "spaces free" signs.
+ * <p>
+ * Reads never lock and cost the same whatever the size of the parking. Each spot keeps its last known state, so a
+ * counter only moves when a spot actually changes and writing the same availability twice is harmless. Like the
+ * {@link SpotAvailabilityIndex}, the counters are written by {@link ParkingSpotDAO} once the database has accepted
+ * the change, holding the lock of the spot.
+ */
+public class OccupancyCounters
+{
+    private static final ParkingType[] TYPES = ParkingType.values();
+    private static final int UNKNOWN = -1;
+
+    private final int[] totals = new int[TYPES.length];
+    private final LongAdder[] free = new LongAdder[TYPES.length];
+    // by parking number: the type ordinal, or UNKNOWN
+    private final int[] spotTypes;
+    // by parking number: 1 when free
+    private final AtomicIntegerArray spotAvailability;
+
+    /**
+     * @param spotTypes every spot of the parking
+     * @param availableSpots the parking numbers of the free spots
+     */
+    public OccupancyCounters(Map<Integer, ParkingType> spotTypes, BitSet availableSpots)
+    {
+        int maxParkingNumber = spotTypes.isEmpty() ? -1 : Collections.max(spotTypes.keySet());
+        this.spotTypes = new int[maxParkingNumber + 1];
+        this.spotAvailability = new AtomicIntegerArray(maxParkingNumber + 1);
+        Arrays.fill(this.spotTypes, UNKNOWN);
+        for (int type = 0; type < TYPES.length; type++)
+        {
+            free[type] = new LongAdder();
+        }
+        for (Map.Entry<Integer, ParkingType> spot : spotTypes.entrySet())
+        {
+            int parkingNumber = spot.getKey();
+            if (parkingNumber < 0)
+            {
+                throw new IllegalArgumentException("Parking number must not be negative: " + parkingNumber);
+            }
+            int type = spot.getValue().ordinal();
+            this.spotTypes[parkingNumber] = type;
+            totals[type]++;
+            if (availableSpots.get(parkingNumber))
+            {
+                spotAvailability.set(parkingNumber, 1);
+                free[type].increment();
+            }
+        }
+    }
+
+    public boolean contains(int parkingNumber)
+    {
+        return parkingNumber >= 0 && parkingNumber < spotTypes.length && spotTypes[parkingNumber] != UNKNOWN;
+    }
+
+    /**
+     * Records the new availability of a spot. Spots that were not loaded are ignored.
+     */
+    public void setAvailable(int parkingNumber, boolean available)
+    {
+        if (!contains(parkingNumber))
+        {
+            return;
+        }
+        int previous = spotAvailability.getAndSet(parkingNumber, available ? 1 : 0);
+        if (previous == 0 && available)
+        {
+            free[spotTypes[parkingNumber]].increment();
+        }
+        else if (previous == 1 && !available)
+        {
+            free[spotTypes[parkingNumber]].decrement();
+        }
+    }
+
+    public int getTotal(ParkingType parkingType)
+    {
+        return totals[parkingType.ordinal()];
+    }
+
+    public int getFree(ParkingType parkingType)
+    {
+        return (int) free[parkingType.ordinal()].sum();
+    }
+
+    public int getOccupied(ParkingType parkingType)
+    {
+        return getTotal(parkingType) - getFree(parkingType);
+    }
+
+    /**
+     * @return free and occupied counts read together, so that they add up to the total
+     */
+    public Occupancy snapshot(ParkingType parkingType)
+    {
+        return new Occupancy(parkingType, getTotal(parkingType), getFree(parkingType));
+    }
+}
@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open tickets of the parking keyed by vehicle registration number, at most one per spot so it stays small.
+ * <p>
+ * An entry is reserved with {@link #reserve(String)} before the ticket is written, which makes the
+ * "already parked" check and the registration atomic for all the gates of the process, then either
+ * {@link #open(Ticket)}ed or {@link #cancel(String)}ed. Tickets are copied in and out, callers are free to
+ * modify what they get.
+ */
+public class OpenTicketRegistry
+{
+    // placeholder of a vehicle whose entry is being written
+    private static final Ticket ENTERING = new Ticket();
+
+    private final ConcurrentHashMap<String, Ticket> openTickets = new ConcurrentHashMap<>();
+
+    /**
+     * @return the open ticket of the vehicle, or null when it has none or its entry is not written yet
+     */
+    public Ticket get(String vehicleRegNumber)
+    {
+        Ticket ticket = openTickets.get(vehicleRegNumber);
+        return ticket == null || ticket == ENTERING ? null : copy(ticket);
+    }
+
+    /**
+     * @return true when the vehicle has an open ticket or is entering
+     */
+    public boolean contains(String vehicleRegNumber)
+    {
+        return openTickets.containsKey(vehicleRegNumber);
+    }
+
+    /**
+     * @return false when the vehicle already has an open ticket or is entering through another gate
+     */
+    public boolean reserve(String vehicleRegNumber)
+    {
+        return openTickets.putIfAbsent(vehicleRegNumber, ENTERING) == null;
+    }
+
+    public void cancel(String vehicleRegNumber)
+    {
+        openTickets.remove(vehicleRegNumber, ENTERING);
+    }
+
+    public void open(Ticket ticket)
+    {
+        openTickets.put(ticket.getVehicleRegNumber(), copy(ticket));
+    }
+
+    /**
+     * Forgets the ticket once it has been closed in the database, unless the vehicle has entered again since.
+     */
+    public void close(Ticket ticket)
+    {
+        openTickets.computeIfPresent(ticket.getVehicleRegNumber(),
+                                     (vehicleRegNumber, open) -> open != ENTERING && open.getId() == ticket.getId() ? null : open);
+    }
+
+    public int size()
+    {
+        return openTickets.size();
+    }
+
+    /**
+     * @return the vehicles whose entry does not match the open tickets found in the database, entering vehicles excluded
+     */
+    Set<String> findMismatches(Map<String, Ticket> openInDataBase)
+    {
+        Set<String> mismatches = new HashSet<>();
+        for (Map.Entry<String, Ticket> entry : openInDataBase.entrySet())
+        {
+            Ticket open = openTickets.get(entry.getKey());
+            if (open == null || (open != ENTERING && open.getId() != entry.getValue().getId()))
+            {
+                mismatches.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, Ticket> entry : openTickets.entrySet())
+        {
+            if (entry.getValue() != ENTERING && !openInDataBase.containsKey(entry.getKey()))
+            {
+                mismatches.add(entry.getKey());
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Entry as stored, to be passed back to {@link #repair(String, Ticket, Ticket)}.
+     */
+    Ticket observe(String vehicleRegNumber)
+    {
+        return openTickets.get(vehicleRegNumber);
+    }
+
+    /**
+     * Replaces the entry with the database state, unless a gate changed it since it was observed.
+     * @return true when the entry has been corrected
+     */
+    boolean repair(String vehicleRegNumber, Ticket observed, Ticket inDataBase)
+    {
+        if (observed == ENTERING)
+        {
+            return false;
+        }
+        if (inDataBase == null)
+        {
+            return observed != null && openTickets.remove(vehicleRegNumber, observed);
+        }
+        if (observed != null && observed.getId() == inDataBase.getId())
+        {
+            return false;
+        }
+        return observed == null
+               ? openTickets.putIfAbsent(vehicleRegNumber, copy(inDataBase)) == null
+               : openTickets.replace(vehicleRegNumber, observed, copy(inDataBase));
+    }
+
+    private static Ticket copy(Ticket ticket)
+    {
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setPrice(ticket.getPrice());
+        copy.setInTime(ticket.getInTime());
+        copy.setOutTime(ticket.getOutTime());
+        return copy;
+    }
+}
@@ -3,23 +3,196 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-public class ParkingSpotDAO
+public class ParkingSpotDAO implements SpotRepository, SpotLeaseStore
 {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
-    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    private final DataBaseConfig dataBaseConfig;
 
+    private volatile SpotAvailabilityIndex spotIndex;
+    private volatile OpenTicketRegistry openTicketRegistry;
+    private volatile TicketJournal journal;
+    private volatile OccupancyCounters occupancyCounters;
+    // used instead of the locks of the spot index when only the occupancy counters are enabled
+    private final Object[] spotLocks = new Object[16];
+
+    public ParkingSpotDAO()
+    {
+        this(new DataBaseConfig());
+    }
+
+    /**
+     * @param dataBaseConfig the database of the facility, or the test database
+     */
+    public ParkingSpotDAO(DataBaseConfig dataBaseConfig)
+    {
+        this.dataBaseConfig = dataBaseConfig;
+        for (int i = 0; i < spotLocks.length; i++)
+        {
+            spotLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Loads the availability of every spot in memory so that {@link #getNextAvailableSlot(ParkingType)}
+     * no longer queries the database. On failure the DAO keeps using the SQL path.
+     * @return true when the index is in use
+     */
+    public boolean enableSpotIndex()
+    {
+        SpotAvailabilityIndex index = new SpotAvailabilityIndex();
+        if (!loadSpots(index::addSpot))
+        {
+            logger.error("Error loading spot index, falling back to database lookups");
+            return false;
+        }
+        spotIndex = index;
+        return true;
+    }
+
+    public void disableSpotIndex()
+    {
+        spotIndex = null;
+    }
+
+    public SpotAvailabilityIndex getSpotIndex()
+    {
+        return spotIndex;
+    }
+
+    /**
+     * Seeds {@link OccupancyCounters} from the parking table, then keeps them up to date on every availability change
+     * so that {@link #getOccupancy(ParkingType)} and {@link #countSlotByType(ParkingType)} no longer query the database.
+     * @return true when the counters are in use
+     */
+    public boolean enableOccupancyCounters()
+    {
+        Map<Integer, ParkingType> spotTypes = new HashMap<>();
+        BitSet availableSpots = new BitSet();
+        boolean loaded = loadSpots((parkingNumber, parkingType, available) ->
+        {
+            if (parkingNumber < 0)
+            {
+                throw new IllegalArgumentException("Parking number must not be negative: " + parkingNumber);
+            }
+            spotTypes.put(parkingNumber, parkingType);
+            availableSpots.set(parkingNumber, available);
+        });
+        if (!loaded)
+        {
+            logger.error("Error loading occupancy counters, falling back to database counts");
+            return false;
+        }
+        occupancyCounters = new OccupancyCounters(spotTypes, availableSpots);
+        return true;
+    }
+
+    public void disableOccupancyCounters()
+    {
+        occupancyCounters = null;
+    }
+
+    public OccupancyCounters getOccupancyCounters()
+    {
+        return occupancyCounters;
+    }
+
+    private interface SpotLoader
+    {
+        void add(int parkingNumber, ParkingType parkingType, boolean available);
+    }
+
+    private boolean loadSpots(SpotLoader loader)
+    {
+        try
+        (
+            Connection          con = dataBaseConfig.getConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.GET_ALL_PARKING_SPOTS);
+            ResultSet           rs  = ps.executeQuery()
+        )
+        {
+            while (rs.next())
+            {
+                int parkingNumber = rs.getInt(1);
+                String type = rs.getString(3);
+                try
+                {
+                    loader.add(parkingNumber, ParkingType.valueOf(type), rs.getBoolean(2));
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    logger.warn("Parking spot " + parkingNumber + " of type " + type + " is left out of the in-memory state", ex);
+                }
+            }
+            return true;
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error loading parking spots", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Registry shared with the {@link TicketDAO}: {@link #allocateSpot(ParkingType, String)} checks it instead of
+     * querying the open tickets and records the tickets it opens. Null goes back to the database check.
+     */
+    public void setOpenTicketRegistry(OpenTicketRegistry openTicketRegistry)
+    {
+        this.openTicketRegistry = openTicketRegistry;
+    }
+
+    /**
+     * Write-behind mode: spots are taken from the in-memory index and entries and availability changes are written
+     * to the journal, the {@link JournalFlusher} applies them to the database. Needs the spot index and the open
+     * ticket registry, and assumes this process is the only one writing to the parking and ticket tables.
+     * @throws IllegalStateException when the spot index or the open ticket registry is not enabled
+     */
+    public void enableWriteBehind(TicketJournal journal)
+    {
+        if (spotIndex == null || openTicketRegistry == null)
+        {
+            throw new IllegalStateException("Write-behind needs the spot index and the open ticket registry");
+        }
+        this.journal = journal;
+    }
+
+    public void disableWriteBehind()
+    {
+        journal = null;
+    }
+
+    @Override
     public int getNextAvailableSlot(ParkingType parkingType)
     {
+        SpotAvailabilityIndex index = spotIndex;
+        if (index != null)
+        {
+            return index.getNextAvailableSlot(parkingType);
+        }
+
         Connection con = null;
         int result = -1;
         try
@@ -46,7 +219,112 @@ public class ParkingSpotDAO
         return result;
     }
 
+    @Override
     public boolean updateParking(ParkingSpot parkingSpot)
+    {
+        TicketJournal ticketJournal = journal;
+        SpotAvailabilityIndex index = spotIndex;
+        if (ticketJournal != null && index != null)
+        {
+            synchronized (index.lockFor(parkingSpot.getId()))
+            {
+                try
+                {
+                    ticketJournal.appendSpot(parkingSpot.getId(), parkingSpot.isAvailable());
+                }
+                catch (IOException ex)
+                {
+                    logger.error("Error journaling parking info", ex);
+                    return false;
+                }
+                setAvailableInMemory(parkingSpot.getId(), parkingSpot.isAvailable());
+                return true;
+            }
+        }
+
+        OccupancyCounters counters = occupancyCounters;
+        if ((index == null || !index.contains(parkingSpot.getId())) && (counters == null || !counters.contains(parkingSpot.getId())))
+        {
+            return updateParkingInDataBase(parkingSpot);
+        }
+
+        // the in-memory state must see the updates of a spot in the same order as the database
+        synchronized (lockFor(parkingSpot.getId()))
+        {
+            boolean updated = updateParkingInDataBase(parkingSpot);
+            if (updated)
+            {
+                setAvailableInMemory(parkingSpot.getId(), parkingSpot.isAvailable());
+            }
+            return updated;
+        }
+    }
+
+    /**
+     * Lock to hold while a spot is written to the database and to the in-memory state.
+     */
+    private Object lockFor(int parkingNumber)
+    {
+        SpotAvailabilityIndex index = spotIndex;
+        return index != null ? index.lockFor(parkingNumber) : spotLocks[Math.floorMod(parkingNumber, spotLocks.length)];
+    }
+
+    private void setAvailableInMemory(int parkingNumber, boolean available)
+    {
+        SpotAvailabilityIndex index = spotIndex;
+        if (index != null)
+        {
+            index.setAvailable(parkingNumber, available);
+        }
+        OccupancyCounters counters = occupancyCounters;
+        if (counters != null)
+        {
+            counters.setAvailable(parkingNumber, available);
+        }
+    }
+
+    /**
+     * Writes the availability of several spots in one transaction, straight to the database. The in-memory state is
+     * left as it is: this replays changes it has already seen.
+     * @return false when nothing has been written
+     */
+    public boolean updateParkingSpots(Collection<ParkingSpot> parkingSpots)
+    {
+        if (parkingSpots.isEmpty())
+        {
+            return true;
+        }
+        Connection con = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT))
+            {
+                for (ParkingSpot parkingSpot : parkingSpots)
+                {
+                    ps.setBoolean(1, parkingSpot.isAvailable());
+                    ps.setInt(2, parkingSpot.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            con.commit();
+            return true;
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error updating parking spots", ex);
+            rollback(con);
+            return false;
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private boolean updateParkingInDataBase(ParkingSpot parkingSpot)
     {
         //update the availability fo that parking slot
         Connection con = null;
@@ -71,13 +349,285 @@ public class ParkingSpotDAO
         }
     }
 
+    /**
+     * Claims the lowest free spot of the given type and opens a ticket on it in a single transaction.
+     * Concurrent callers skip the spot rows locked by each other, so a spot is never given out twice, and the unique
+     * index on the open plates refuses a second open ticket for the vehicle, whatever process lets it in.
+     * @return the saved ticket, or null when no spot of that type is free or the database failed
+     * @throws IllegalStateException when the vehicle already has an open ticket
+     */
+    @Override
+    public Ticket allocateSpot(ParkingType parkingType, String vehicleRegNumber) throws IllegalStateException
+    {
+        OpenTicketRegistry registry = openTicketRegistry;
+        if (registry == null)
+        {
+            return allocateSpot(parkingType, vehicleRegNumber, true, null, 0);
+        }
+
+        reserve(registry, vehicleRegNumber);
+        Ticket ticket = null;
+        try
+        {
+            TicketJournal ticketJournal = journal;
+            ticket = ticketJournal != null
+                     ? allocateJournaledSpot(parkingType, vehicleRegNumber, ticketJournal)
+                     : allocateSpot(parkingType, vehicleRegNumber, false, null, 0);
+        }
+        finally
+        {
+            settle(registry, vehicleRegNumber, ticket);
+        }
+        return ticket;
+    }
+
+    /**
+     * Same transaction as {@link #allocateSpot(ParkingType, String)}, on the leased spot rather than the lowest free one:
+     * no other node competes for its row.
+     */
+    @Override
+    public Ticket allocateLeasedSpot(String owner, int parkingNumber, ParkingType parkingType, String vehicleRegNumber)
+        throws IllegalStateException
+    {
+        OpenTicketRegistry registry = openTicketRegistry;
+        if (registry == null)
+        {
+            return allocateSpot(parkingType, vehicleRegNumber, true, owner, parkingNumber);
+        }
+
+        reserve(registry, vehicleRegNumber);
+        Ticket ticket = null;
+        try
+        {
+            // the registry only knows the tickets of this node, the vehicle may be parked through another one
+            ticket = allocateSpot(parkingType, vehicleRegNumber, true, owner, parkingNumber);
+        }
+        finally
+        {
+            settle(registry, vehicleRegNumber, ticket);
+        }
+        return ticket;
+    }
+
+    private static void reserve(OpenTicketRegistry registry, String vehicleRegNumber)
+    {
+        if (!registry.reserve(vehicleRegNumber))
+        {
+            Ticket openedTicket = registry.get(vehicleRegNumber);
+            if (openedTicket == null)
+            {
+                throw new IllegalStateException("This vehicle " + vehicleRegNumber + " is already entering the parking");
+            }
+            throw new IllegalStateException("This " + openedTicket.getParkingSpot().getParkingType()
+                                                    + " "
+                                                    + vehicleRegNumber
+                                                    + " is already in the parking at slot "
+                                                    + openedTicket.getParkingSpot().getId());
+        }
+    }
+
+    private static void settle(OpenTicketRegistry registry, String vehicleRegNumber, Ticket ticket)
+    {
+        if (ticket != null)
+        {
+            registry.open(ticket);
+        }
+        else
+        {
+            registry.cancel(vehicleRegNumber);
+        }
+    }
+
+    private Ticket allocateJournaledSpot(ParkingType parkingType, String vehicleRegNumber, TicketJournal ticketJournal)
+    {
+        SpotAvailabilityIndex index = spotIndex;
+        int parkingNumber = index.claimNextAvailableSlot(parkingType);
+        if (parkingNumber <= 0)
+        {
+            return null;
+        }
+        synchronized (index.lockFor(parkingNumber))
+        {
+            setAvailableInMemory(parkingNumber, false);
+        }
+
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        // the database keeps whole seconds, the flusher finds the ticket again by vehicle and in-time
+        ticket.setInTime(new Date(System.currentTimeMillis() / 1000 * 1000));
+        try
+        {
+            ticketJournal.appendEntry(ticket);
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            logger.error("Error journaling a parking spot allocation", ex);
+            synchronized (index.lockFor(parkingNumber))
+            {
+                setAvailableInMemory(parkingNumber, true);
+            }
+            return null;
+        }
+        return ticket;
+    }
+
+    /**
+     * @param leaseOwner when not null, takes {@code leasedNumber} if it is still leased by that owner
+     */
+    private Ticket allocateSpot(ParkingType parkingType, String vehicleRegNumber, boolean checkOpenTicket,
+                                String leaseOwner, int leasedNumber)
+    {
+        Connection con = null;
+        Ticket ticket = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+
+            if (checkOpenTicket)
+            {
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.FIND_OPEN_TICKET_SPOT))
+                {
+                    ps.setString(1, vehicleRegNumber);
+                    try (ResultSet rs = ps.executeQuery())
+                    {
+                        if (rs.next())
+                        {
+                            con.rollback();
+                            throw new IllegalStateException("This " + rs.getString(2)
+                                                                    + " "
+                                                                    + vehicleRegNumber
+                                                                    + " is already in the parking at slot "
+                                                                    + rs.getInt(1));
+                        }
+                    }
+                }
+            }
+
+            int parkingNumber = leasedNumber;
+            if (leaseOwner == null)
+            {
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_NEXT_PARKING_SPOT))
+                {
+                    ps.setString(1, parkingType.toString());
+                    try (ResultSet rs = ps.executeQuery())
+                    {
+                        if (rs.next())
+                        {
+                            parkingNumber = rs.getInt(1);
+                        }
+                    }
+                }
+                if (parkingNumber <= 0)
+                {
+                    con.rollback();
+                    return null;
+                }
+
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.TAKE_PARKING_SPOT))
+                {
+                    ps.setInt(1, parkingNumber);
+                    if (ps.executeUpdate() != 1)
+                    {
+                        throw new SQLException("Parking spot " + parkingNumber + " was taken while locked");
+                    }
+                }
+            }
+            else
+            {
+                try (PreparedStatement ps = con.prepareStatement(DBConstants.TAKE_LEASED_PARKING_SPOT))
+                {
+                    ps.setInt(1, parkingNumber);
+                    ps.setString(2, leaseOwner);
+                    if (ps.executeUpdate() != 1)
+                    {
+                        // the lease was lost or the spot taken by a node allocating without lease
+                        con.rollback();
+                        return null;
+                    }
+                }
+            }
+
+            Date inTime = new Date();
+            ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS))
+            {
+                ps.setInt(1, parkingNumber);
+                ps.setString(2, vehicleRegNumber);
+                ps.setDouble(3, 0);
+                ps.setTimestamp(4, new Timestamp(inTime.getTime()));
+                ps.setTimestamp(5, null);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys())
+                {
+                    if (keys.next())
+                    {
+                        ticket.setId(keys.getInt(1));
+                    }
+                }
+            }
+
+            con.commit();
+        }
+        catch (SQLIntegrityConstraintViolationException ex)
+        {
+            // the check above does not lock: a gate of another process let the vehicle in meanwhile, the unique
+            // index on the open tickets refused the second one
+            rollback(con);
+            throw new IllegalStateException("This vehicle " + vehicleRegNumber + " is already in the parking");
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error allocating a parking spot", ex);
+            rollback(con);
+            return null;
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+
+        if (spotIndex != null || occupancyCounters != null)
+        {
+            int parkingNumber = ticket.getParkingSpot().getId();
+            synchronized (lockFor(parkingNumber))
+            {
+                setAvailableInMemory(parkingNumber, false);
+            }
+        }
+        return ticket;
+    }
+
+    private void rollback(Connection con)
+    {
+        if (con != null)
+        {
+            try
+            {
+                con.rollback();
+            }
+            catch (SQLException ex)
+            {
+                logger.error("Error rolling back spot allocation", ex);
+            }
+        }
+    }
+
     public boolean isItAnAvailableSlot(long parkingNumber)
     {
         Boolean isAvaible = null;
 
         try
         (
-            Connection          con = dataBaseConfig.getConnection();
+            Connection          con = dataBaseConfig.getReadConnection();
             PreparedStatement   ps  = con.prepareStatement(DBConstants.IS_PARKING_SPOT_AVAILABLE);
         )
         {
@@ -98,11 +648,17 @@ public class ParkingSpotDAO
 
     public int countSlotByType(ParkingType parkingType)
     {
+        OccupancyCounters counters = occupancyCounters;
+        if (counters != null)
+        {
+            return counters.getTotal(parkingType);
+        }
+
         Integer numberOfSlot = null;
 
         try
         (
-            Connection          con = dataBaseConfig.getConnection();
+            Connection          con = dataBaseConfig.getReadConnection();
             PreparedStatement   ps  = con.prepareStatement(DBConstants.COUNT_SLOT_BY_TYPE);
         )
         {
@@ -120,4 +676,185 @@ public class ParkingSpotDAO
         }
         return numberOfSlot;
     }
-}
\ No newline at end of file
+
+    /**
+     * Total, free and occupied spots of a type, from the occupancy counters when they are enabled.
+     * @return the occupancy, or null when the database could not be read
+     */
+    @Override
+    public Occupancy getOccupancy(ParkingType parkingType)
+    {
+        OccupancyCounters counters = occupancyCounters;
+        if (counters != null)
+        {
+            return counters.snapshot(parkingType);
+        }
+
+        try
+        (
+            Connection          con = dataBaseConfig.getReadConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.COUNT_FREE_SLOT_BY_TYPE)
+        )
+        {
+            ps.setString(1, parkingType.name());
+
+            try (ResultSet rs = ps.executeQuery())
+            {
+                rs.next();
+                return new Occupancy(parkingType, rs.getInt(1), rs.getInt(2));
+            }
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error getting occupancy", ex);
+            return null;
+        }
+    }
+
+    @Override
+    public List<Integer> acquireLeases(String owner, ParkingType parkingType, int count, Date expiry)
+    {
+        List<Integer> acquired = new ArrayList<>();
+        Connection con = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            List<Integer> candidates = new ArrayList<>();
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.GET_LEASABLE_PARKING_SPOTS))
+            {
+                ps.setString(1, parkingType.toString());
+                ps.setTimestamp(2, now);
+                ps.setInt(3, count);
+                try (ResultSet rs = ps.executeQuery())
+                {
+                    while (rs.next())
+                    {
+                        candidates.add(rs.getInt(1));
+                    }
+                }
+            }
+            // one update per spot: another node may have leased some of the candidates meanwhile
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.LEASE_PARKING_SPOT))
+            {
+                for (Integer parkingNumber : candidates)
+                {
+                    ps.setString(1, owner);
+                    ps.setTimestamp(2, new Timestamp(expiry.getTime()));
+                    ps.setInt(3, parkingNumber);
+                    ps.setTimestamp(4, now);
+                    if (ps.executeUpdate() == 1)
+                    {
+                        acquired.add(parkingNumber);
+                    }
+                }
+            }
+            con.commit();
+            return acquired;
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error leasing parking spots", ex);
+            rollback(con);
+            return new ArrayList<>();
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @Override
+    public List<Integer> renewLeases(String owner, Collection<Integer> parkingNumbers, Date expiry)
+    {
+        List<Integer> renewed = new ArrayList<>();
+        Connection con = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.RENEW_PARKING_SPOT_LEASE))
+            {
+                for (Integer parkingNumber : parkingNumbers)
+                {
+                    ps.setTimestamp(1, new Timestamp(expiry.getTime()));
+                    ps.setInt(2, parkingNumber);
+                    ps.setString(3, owner);
+                    if (ps.executeUpdate() == 1)
+                    {
+                        renewed.add(parkingNumber);
+                    }
+                }
+            }
+            con.commit();
+            return renewed;
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            // kept as they are, the leases are renewed on the next attempt unless they expire first
+            logger.error("Error renewing parking spot leases", ex);
+            rollback(con);
+            return new ArrayList<>(parkingNumbers);
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @Override
+    public void releaseLeases(String owner, Collection<Integer> parkingNumbers)
+    {
+        Connection con = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.RELEASE_PARKING_SPOT_LEASE))
+            {
+                for (Integer parkingNumber : parkingNumbers)
+                {
+                    ps.setInt(1, parkingNumber);
+                    ps.setString(2, owner);
+                    ps.executeUpdate();
+                }
+            }
+            con.commit();
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error releasing parking spot leases, they will expire", ex);
+            rollback(con);
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @Override
+    public int countLeasableSpots(ParkingType parkingType, Date now)
+    {
+        try
+        (
+            Connection          con = dataBaseConfig.getConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.COUNT_LEASABLE_PARKING_SPOTS)
+        )
+        {
+            ps.setString(1, parkingType.toString());
+            ps.setTimestamp(2, new Timestamp(now.getTime()));
+
+            try (ResultSet rs = ps.executeQuery())
+            {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error counting leasable parking spots", ex);
+            return -1;
+        }
+    }
+}
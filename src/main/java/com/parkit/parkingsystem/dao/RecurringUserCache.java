@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.util.BloomFilter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Membership of the vehicles that already have a closed ticket, used by {@link TicketDAO#isRecurringUser(String)}.
+ * <p>
+ * A bounded LRU of confirmed plates answers "recurring" for the vehicles seen recently. A bloom filter answers
+ * "never seen" without any query, but only when this process is the single writer of the database: the filter only
+ * sees the tickets closed through this process, a vehicle that left through another one would lose its discount.
+ * Otherwise, and for the plates the filter may contain, the count query still runs.
+ */
+public class RecurringUserCache
+{
+    private final BloomFilter seenPlates;
+    // access ordered, guarded by itself
+    private final Map<String, Boolean> confirmedPlates;
+    private final boolean singleWriter;
+
+    /**
+     * @param singleWriter true when no other process closes tickets in the database, so that a plate missing from the
+     * filter is never recurring
+     */
+    public RecurringUserCache(long expectedPlates, double falsePositiveProbability, int confirmedCapacity, boolean singleWriter)
+    {
+        this.singleWriter = singleWriter;
+        this.seenPlates = new BloomFilter(expectedPlates, falsePositiveProbability);
+        this.confirmedPlates = new LinkedHashMap<String, Boolean>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+            {
+                return size() > confirmedCapacity;
+            }
+        };
+    }
+
+    /**
+     * @return false when the vehicle never had a closed ticket, always true when other processes write
+     */
+    public boolean mightBeRecurring(String vehicleRegNumber)
+    {
+        return !singleWriter || seenPlates.mightContain(vehicleRegNumber);
+    }
+
+    public boolean isConfirmedRecurring(String vehicleRegNumber)
+    {
+        synchronized (confirmedPlates)
+        {
+            return confirmedPlates.get(vehicleRegNumber) != null;
+        }
+    }
+
+    /**
+     * Remembers a plate loaded at startup, without promoting it in the LRU.
+     */
+    public void addSeen(String vehicleRegNumber)
+    {
+        seenPlates.put(vehicleRegNumber);
+    }
+
+    /**
+     * Remembers a plate known to have a closed ticket.
+     */
+    public void addConfirmed(String vehicleRegNumber)
+    {
+        seenPlates.put(vehicleRegNumber);
+        synchronized (confirmedPlates)
+        {
+            confirmedPlates.put(vehicleRegNumber, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory copy of the AVAILABLE column of the parking table, one bitset of free spot numbers per
+ * {@link ParkingType}. The lowest set bit is the spot {@code GET_NEXT_PARKING_SPOT} would return.
+ * <p>
+ * The index is write-through: {@link ParkingSpotDAO} flips a bit only once the matching update has been
+ * accepted by the database, while holding {@link #lockFor(int)} so that the database and the index see the
+ * updates of a given spot in the same order.
+ */
+public class SpotAvailabilityIndex
+{
+    private static final int LOCK_STRIPES = 16;
+
+    private final Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+    private final Map<Integer, ParkingType> spotTypes = new HashMap<>();
+    private final Object[] spotLocks = new Object[LOCK_STRIPES];
+
+    public SpotAvailabilityIndex()
+    {
+        for (ParkingType parkingType : ParkingType.values())
+        {
+            freeSpots.put(parkingType, new BitSet());
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            spotLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Registers a spot while the index is being loaded, before it is published to other threads.
+     */
+    public void addSpot(int parkingNumber, ParkingType parkingType, boolean available)
+    {
+        if (parkingNumber < 0)
+        {
+            throw new IllegalArgumentException("Parking number must not be negative: " + parkingNumber);
+        }
+        spotTypes.put(parkingNumber, parkingType);
+        freeSpots.get(parkingType).set(parkingNumber, available);
+    }
+
+    /**
+     * @return the lowest free spot number for this type, or 0 when the type is full (like the SQL query)
+     */
+    public int getNextAvailableSlot(ParkingType parkingType)
+    {
+        BitSet free = freeSpots.get(parkingType);
+        synchronized (free)
+        {
+            int parkingNumber = free.nextSetBit(0);
+            return parkingNumber < 0 ? 0 : parkingNumber;
+        }
+    }
+
+    /**
+     * Takes the lowest free spot of this type, for the write-behind mode where the index is the reference.
+     * @return the spot number, or 0 when the type is full
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType)
+    {
+        BitSet free = freeSpots.get(parkingType);
+        synchronized (free)
+        {
+            int parkingNumber = free.nextSetBit(0);
+            if (parkingNumber < 0)
+            {
+                return 0;
+            }
+            free.clear(parkingNumber);
+            return parkingNumber;
+        }
+    }
+
+    public boolean isAvailable(int parkingNumber)
+    {
+        ParkingType parkingType = spotTypes.get(parkingNumber);
+        if (parkingType == null)
+        {
+            return false;
+        }
+        BitSet free = freeSpots.get(parkingType);
+        synchronized (free)
+        {
+            return free.get(parkingNumber);
+        }
+    }
+
+    public int countAvailable(ParkingType parkingType)
+    {
+        BitSet free = freeSpots.get(parkingType);
+        synchronized (free)
+        {
+            return free.cardinality();
+        }
+    }
+
+    public boolean contains(int parkingNumber)
+    {
+        return spotTypes.containsKey(parkingNumber);
+    }
+
+    /**
+     * Records the new availability of a spot. Spots that were not loaded are ignored.
+     */
+    public void setAvailable(int parkingNumber, boolean available)
+    {
+        ParkingType parkingType = spotTypes.get(parkingNumber);
+        if (parkingType == null)
+        {
+            return;
+        }
+        BitSet free = freeSpots.get(parkingType);
+        synchronized (free)
+        {
+            free.set(parkingNumber, available);
+        }
+    }
+
+    /**
+     * Lock to hold while a spot is written to the database and to the index.
+     */
+    public Object lockFor(int parkingNumber)
+    {
+        return spotLocks[Math.floorMod(parkingNumber, LOCK_STRIPES)];
+    }
+}
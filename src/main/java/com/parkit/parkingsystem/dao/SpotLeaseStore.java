@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Leases on free spots, so that the nodes sharing a parking each allocate from their own block of spots, see
+ * {@link LeasedSpotAllocator}.
+ * <p>
+ * A lease only reserves a free spot: the spot is still free for the store and a node that allocates without lease
+ * may take it, in which case the owner of the lease fails to allocate it. A spot leaves its lease when it is
+ * allocated; freeing it at the exit makes it unleased.
+ */
+public interface SpotLeaseStore
+{
+    /**
+     * Leases free spots of the type that no lease holds or whose lease has expired, lowest first.
+     * @return the spots now leased by the owner until {@code expiry}, up to {@code count}, empty on error
+     */
+    List<Integer> acquireLeases(String owner, ParkingType parkingType, int count, Date expiry);
+
+    /**
+     * @return the spots still leased by the owner and free, their lease extended to {@code expiry}
+     */
+    List<Integer> renewLeases(String owner, Collection<Integer> parkingNumbers, Date expiry);
+
+    void releaseLeases(String owner, Collection<Integer> parkingNumbers);
+
+    /**
+     * @return the free spots of the type that no lease holds at {@code now}, or -1 on error
+     */
+    int countLeasableSpots(ParkingType parkingType, Date now);
+
+    /**
+     * Takes a spot leased by the owner and opens a ticket on it, atomically.
+     * @return the saved ticket, or null when the spot is no longer leased by the owner, was taken meanwhile or the
+     * store failed
+     * @throws IllegalStateException when the vehicle already has an open ticket
+     */
+    Ticket allocateLeasedSpot(String owner, int parkingNumber, ParkingType parkingType, String vehicleRegNumber)
+        throws IllegalStateException;
+}
@@ -0,0 +1,36 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Parking spots as {@code ParkingService} needs them, see {@link TicketRepository}.
+ */
+public interface SpotRepository
+{
+    /**
+     * @return the lowest free spot of the type, 0 or less when there is none
+     */
+    int getNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * Records the availability of the spot.
+     * @return false when it could not be written
+     */
+    boolean updateParking(ParkingSpot parkingSpot);
+
+    /**
+     * Claims the lowest free spot of the type and opens a ticket on it, atomically: a spot is never given out twice
+     * and a vehicle never gets two open tickets.
+     * @return the saved ticket, or null when no spot of that type is free or the store failed
+     * @throws IllegalStateException when the vehicle already has an open ticket
+     */
+    Ticket allocateSpot(ParkingType parkingType, String vehicleRegNumber) throws IllegalStateException;
+
+    /**
+     * @return the occupancy, or null when it could not be read
+     */
+    Occupancy getOccupancy(ParkingType parkingType);
+}
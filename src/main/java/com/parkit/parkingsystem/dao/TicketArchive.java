@@ -0,0 +1,571 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Closed tickets moved out of the ticket table, in a memory-mapped file of fixed-width records with a sorted plate
+ * index next to it, so that the history of a vehicle is found by binary search instead of a scan.
+ * <p>
+ * A record is 88 bytes: id, parking number, plate hash, in-time and out-time in epoch millis, price in cents, parking
+ * type and the plate itself, up to 40 UTF-8 bytes. The index holds one (plate hash, record number) pair per record,
+ * sorted, and is rewritten at each append. A lookup finds the candidates by hash, then keeps the records whose plate
+ * is the one looked up: two plates with the same hash never see each other's tickets.
+ * <p>
+ * Lookups never lock: they read the mapping published by the last append. Appends come from a single archiver.
+ */
+public class TicketArchive implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("TicketArchive");
+
+    static final String ARCHIVE_FILE = "tickets.archive";
+    static final String INDEX_FILE = "tickets.archive.idx";
+
+    private static final int MAGIC = 0x504B5441; // PKTA
+    private static final int VERSION = 2;
+    // magic, version, record count, first record whose deletion from the database is not confirmed
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+    private static final int PENDING_OFFSET = 16;
+
+    static final int RECORD_SIZE = 88;
+    private static final int ID = 0;
+    private static final int PARKING_NUMBER = 4;
+    private static final int PLATE_HASH = 8;
+    private static final int IN_TIME = 16;
+    private static final int OUT_TIME = 24;
+    private static final int PRICE_CENTS = 32;
+    private static final int TYPE = 40;
+    private static final int PLATE_LENGTH = 44;
+    private static final int PLATE = 48;
+    static final int MAX_PLATE_BYTES = RECORD_SIZE - PLATE;
+
+    private static final int INDEX_ENTRY_SIZE = 12;
+
+    private static final ParkingType[] TYPES = ParkingType.values();
+
+    private final Path indexFile;
+    private final FileChannel channel;
+    private long pendingDeletion;
+    private volatile Mapping mapping;
+
+    /**
+     * What readers see: records and index mapped up to the same count.
+     */
+    private static final class Mapping
+    {
+        final ByteBuffer records;
+        final ByteBuffer index;
+        final int count;
+
+        Mapping(ByteBuffer records, ByteBuffer index, int count)
+        {
+            this.records = records;
+            this.index = index;
+            this.count = count;
+        }
+    }
+
+    private TicketArchive(Path indexFile, FileChannel channel, long pendingDeletion, Mapping mapping)
+    {
+        this.indexFile = indexFile;
+        this.channel = channel;
+        this.pendingDeletion = pendingDeletion;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Opens the archive of the directory, creating it if needed. Records written after the last committed count are
+     * dropped and an index that does not match the records is rebuilt.
+     */
+    public static TicketArchive open(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        Path archiveFile = directory.resolve(ARCHIVE_FILE);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            long count;
+            long pendingDeletion;
+            if (channel.size() < HEADER_SIZE)
+            {
+                count = 0;
+                pendingDeletion = 0;
+                writeHeader(channel, 0, 0);
+            }
+            else
+            {
+                ByteBuffer header = readHeader(channel, archiveFile);
+                count = header.getLong();
+                pendingDeletion = header.getLong();
+            }
+            long committedLength = HEADER_SIZE + count * RECORD_SIZE;
+            if (channel.size() < committedLength)
+            {
+                throw new IOException(archiveFile + " is truncated: " + count + " records expected");
+            }
+            if (channel.size() > committedLength)
+            {
+                logger.warn("Dropping records appended to " + archiveFile + " by an archiving that did not complete");
+                channel.truncate(committedLength);
+                channel.force(true);
+            }
+
+            ByteBuffer records = mapRecords(channel, (int) count);
+            if (!Files.exists(indexFile) || Files.size(indexFile) != count * INDEX_ENTRY_SIZE)
+            {
+                logger.warn("Rebuilding the plate index of " + archiveFile);
+                writeIndex(indexFile, null, records, 0, (int) count);
+            }
+            return new TicketArchive(indexFile, channel, pendingDeletion, new Mapping(records, mapIndex(indexFile), (int) count));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the archive of the directory for the tickets committed when it is opened, without changing its files: the
+     * archive of a running parking can be read by another process, a report for instance. It cannot be appended to.
+     * @throws IOException when there is no archive, or when its index is being rewritten by an append, to retry
+     */
+    public static TicketArchive openReadOnly(Path directory) throws IOException
+    {
+        Path archiveFile = directory.resolve(ARCHIVE_FILE);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer header = readHeader(channel, archiveFile);
+            long count = header.getLong();
+            long pendingDeletion = header.getLong();
+            if (channel.size() < HEADER_SIZE + count * RECORD_SIZE)
+            {
+                throw new IOException(archiveFile + " is truncated: " + count + " records expected");
+            }
+            if (!Files.exists(indexFile) || Files.size(indexFile) != count * INDEX_ENTRY_SIZE)
+            {
+                throw new IOException("The plate index of " + archiveFile + " does not match its records");
+            }
+            return new TicketArchive(indexFile, channel, pendingDeletion,
+                                     new Mapping(mapRecords(channel, (int) count), mapIndex(indexFile), (int) count));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size()
+    {
+        return mapping.count;
+    }
+
+    /**
+     * @return true when the vehicle has at least one archived ticket
+     */
+    public boolean contains(String vehicleRegNumber)
+    {
+        Mapping current = mapping;
+        long hash = plateHash(vehicleRegNumber);
+        byte[] plate = plateBytes(vehicleRegNumber);
+        for (int entry = lowerBound(current, hash); entry < current.count && current.index.getLong(entry * INDEX_ENTRY_SIZE) == hash; entry++)
+        {
+            if (hasPlate(current.records, current.index.getInt(entry * INDEX_ENTRY_SIZE + 8), plate))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int countTickets(String vehicleRegNumber)
+    {
+        Mapping current = mapping;
+        long hash = plateHash(vehicleRegNumber);
+        byte[] plate = plateBytes(vehicleRegNumber);
+        int count = 0;
+        for (int entry = lowerBound(current, hash); entry < current.count && current.index.getLong(entry * INDEX_ENTRY_SIZE) == hash; entry++)
+        {
+            if (hasPlate(current.records, current.index.getInt(entry * INDEX_ENTRY_SIZE + 8), plate))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the archived tickets of the vehicle, oldest first
+     */
+    public List<Ticket> findTickets(String vehicleRegNumber)
+    {
+        Mapping current = mapping;
+        long hash = plateHash(vehicleRegNumber);
+        byte[] plate = plateBytes(vehicleRegNumber);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int entry = lowerBound(current, hash); entry < current.count && current.index.getLong(entry * INDEX_ENTRY_SIZE) == hash; entry++)
+        {
+            int record = current.index.getInt(entry * INDEX_ENTRY_SIZE + 8);
+            if (hasPlate(current.records, record, plate))
+            {
+                tickets.add(readTicket(current.records, record));
+            }
+        }
+        tickets.sort(Comparator.comparing(Ticket::getInTime));
+        return tickets;
+    }
+
+    /**
+     * @return the most recent archived ticket of the vehicle, or null
+     */
+    public Ticket findLastTicket(String vehicleRegNumber)
+    {
+        List<Ticket> tickets = findTickets(vehicleRegNumber);
+        return tickets.isEmpty() ? null : tickets.get(tickets.size() - 1);
+    }
+
+    /**
+     * Streams the archived tickets closed in [{@code from}, {@code to}). Records are in archiving order, not in
+     * out-time order, so every record of the mapping published by the last append is read; none is loaded in memory.
+     * The same ticket instance is passed for every record, the consumer must copy what it keeps.
+     * @return the ids of the tickets passed that may still be in the database, as their deletion is not confirmed
+     */
+    public Set<Integer> forEachClosedTicket(Date from, Date to, Consumer<Ticket> consumer)
+    {
+        Mapping current;
+        long deleted;
+        synchronized (this)
+        {
+            current = mapping;
+            deleted = pendingDeletion;
+        }
+        Set<Integer> notDeleted = new HashSet<>();
+        Ticket ticket = new Ticket();
+        ParkingSpot parkingSpot = new ParkingSpot(0, null, false);
+        ticket.setParkingSpot(parkingSpot);
+        long fromMillis = from.getTime();
+        long toMillis = to.getTime();
+        for (int record = 0; record < current.count; record++)
+        {
+            int offset = record * RECORD_SIZE;
+            long outTime = current.records.getLong(offset + OUT_TIME);
+            if (outTime < fromMillis || outTime >= toMillis)
+            {
+                continue;
+            }
+            parkingSpot.setId(current.records.getInt(offset + PARKING_NUMBER));
+            parkingSpot.setParkingType(TYPES[current.records.getInt(offset + TYPE)]);
+            ticket.setId(current.records.getInt(offset + ID));
+            ticket.setVehicleRegNumber(readPlate(current.records, record));
+            ticket.setInTime(new Date(current.records.getLong(offset + IN_TIME)));
+            ticket.setOutTime(new Date(outTime));
+            ticket.setPrice(current.records.getLong(offset + PRICE_CENTS) / 100.0);
+            if (record >= deleted)
+            {
+                notDeleted.add(ticket.getId());
+            }
+            consumer.accept(ticket);
+        }
+        return notDeleted;
+    }
+
+    /**
+     * Appends closed tickets. They are visible to lookups when this returns, and marked as still to be deleted from
+     * the database until {@link #markDeleted()}.
+     * @throws IllegalStateException when the previous append has not been deleted from the database yet
+     * @throws IllegalArgumentException when a ticket is open or its plate is longer than {@link #MAX_PLATE_BYTES}
+     */
+    synchronized void append(List<Ticket> tickets) throws IOException
+    {
+        Mapping current = mapping;
+        if (pendingDeletion < current.count)
+        {
+            throw new IllegalStateException("Archived tickets are still to be deleted from the database");
+        }
+        if (tickets.isEmpty())
+        {
+            return;
+        }
+        if ((long) current.count + tickets.size() > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+        {
+            throw new IOException("Ticket archive is full");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(tickets.size() * RECORD_SIZE);
+        for (Ticket ticket : tickets)
+        {
+            if (ticket.getOutTime() == null)
+            {
+                throw new IllegalArgumentException("Only closed tickets are archived, ticket " + ticket.getId() + " is open");
+            }
+            byte[] plate = plateBytes(ticket.getVehicleRegNumber());
+            if (plate.length > MAX_PLATE_BYTES)
+            {
+                throw new IllegalArgumentException("Plate of ticket " + ticket.getId() + " is longer than " + MAX_PLATE_BYTES + " bytes");
+            }
+            buffer.putInt(ticket.getId());
+            buffer.putInt(ticket.getParkingSpot().getId());
+            buffer.putLong(plateHash(ticket.getVehicleRegNumber()));
+            buffer.putLong(ticket.getInTime().getTime());
+            buffer.putLong(ticket.getOutTime().getTime());
+            buffer.putLong(Math.round(ticket.getPrice() * 100));
+            buffer.putInt(ticket.getParkingSpot().getParkingType().ordinal());
+            buffer.putInt(plate.length);
+            buffer.put(plate);
+            buffer.position(buffer.position() + MAX_PLATE_BYTES - plate.length);
+        }
+        buffer.flip();
+        long position = HEADER_SIZE + (long) current.count * RECORD_SIZE;
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+
+        int count = current.count + tickets.size();
+        ByteBuffer records = mapRecords(channel, count);
+        writeIndex(indexFile, current.index, records, current.count, count);
+        // the records only count once the index covering them is in place
+        writeHeader(channel, count, current.count);
+        pendingDeletion = current.count;
+        mapping = new Mapping(records, mapIndex(indexFile), count);
+    }
+
+    /**
+     * @return the ids of the archived tickets whose deletion from the database is not confirmed
+     */
+    synchronized List<Integer> getPendingDeletion()
+    {
+        Mapping current = mapping;
+        List<Integer> ids = new ArrayList<>();
+        for (long record = pendingDeletion; record < current.count; record++)
+        {
+            ids.add(current.records.getInt((int) record * RECORD_SIZE + ID));
+        }
+        return ids;
+    }
+
+    synchronized void markDeleted() throws IOException
+    {
+        int count = mapping.count;
+        writeHeader(channel, count, count);
+        pendingDeletion = count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes of the plate.
+     */
+    static long plateHash(String vehicleRegNumber)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : plateBytes(vehicleRegNumber))
+        {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the first index entry whose hash is not lower than {@code hash}
+     */
+    private static int lowerBound(Mapping mapping, long hash)
+    {
+        int low = 0;
+        int high = mapping.count;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (mapping.index.getLong(middle * INDEX_ENTRY_SIZE) < hash)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static byte[] plateBytes(String vehicleRegNumber)
+    {
+        return vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true when the record is a ticket of that plate, and not of another plate with the same hash
+     */
+    private static boolean hasPlate(ByteBuffer records, int record, byte[] plate)
+    {
+        int offset = record * RECORD_SIZE;
+        if (records.getInt(offset + PLATE_LENGTH) != plate.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < plate.length; i++)
+        {
+            if (records.get(offset + PLATE + i) != plate[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readPlate(ByteBuffer records, int record)
+    {
+        int offset = record * RECORD_SIZE;
+        byte[] plate = new byte[records.getInt(offset + PLATE_LENGTH)];
+        for (int i = 0; i < plate.length; i++)
+        {
+            plate[i] = records.get(offset + PLATE + i);
+        }
+        return new String(plate, StandardCharsets.UTF_8);
+    }
+
+    private static Ticket readTicket(ByteBuffer records, int record)
+    {
+        int offset = record * RECORD_SIZE;
+        Ticket ticket = new Ticket();
+        ticket.setId(records.getInt(offset + ID));
+        ticket.setParkingSpot(new ParkingSpot(records.getInt(offset + PARKING_NUMBER), TYPES[records.getInt(offset + TYPE)], false));
+        ticket.setVehicleRegNumber(readPlate(records, record));
+        ticket.setInTime(new Date(records.getLong(offset + IN_TIME)));
+        ticket.setOutTime(new Date(records.getLong(offset + OUT_TIME)));
+        ticket.setPrice(records.getLong(offset + PRICE_CENTS) / 100.0);
+        return ticket;
+    }
+
+    /**
+     * @return the header positioned after the magic and the version, on the record count
+     */
+    private static ByteBuffer readHeader(FileChannel channel, Path archiveFile) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+        {
+            // read the whole header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+        {
+            throw new IOException(archiveFile + " is not a ticket archive");
+        }
+        int version = header.getInt();
+        if (version != VERSION)
+        {
+            throw new IOException(archiveFile + " is a version " + version + " ticket archive, version " + VERSION + " is expected");
+        }
+        return header;
+    }
+
+    private static void writeHeader(FileChannel channel, long count, long pendingDeletion) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(pendingDeletion).putLong(0);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining())
+        {
+            position += channel.write(header, position);
+        }
+        channel.force(false);
+    }
+
+    private static ByteBuffer mapRecords(FileChannel channel, int count) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * RECORD_SIZE);
+    }
+
+    private static ByteBuffer mapIndex(Path indexFile) throws IOException
+    {
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ))
+        {
+            MappedByteBuffer mapped = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size());
+            mapped.load();
+            return mapped;
+        }
+    }
+
+    /**
+     * Merges the sorted index of the records before {@code from} with the entries of the records from {@code from}
+     * to {@code to}, and replaces the index file with the result.
+     */
+    private static void writeIndex(Path indexFile, ByteBuffer oldIndex, ByteBuffer records, int from, int to) throws IOException
+    {
+        // sort the new entries as (hash, record) pairs
+        int added = to - from;
+        long[] hashes = new long[added];
+        Integer[] order = new Integer[added];
+        for (int i = 0; i < added; i++)
+        {
+            hashes[i] = records.getLong((from + i) * RECORD_SIZE + PLATE_HASH);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> hashes[a] != hashes[b] ? Long.compare(hashes[a], hashes[b]) : Integer.compare(a, b));
+
+        Path temporary = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+        {
+            int old = 0;
+            int oldCount = oldIndex == null ? 0 : from;
+            for (Integer i : order)
+            {
+                // equal hashes: older records first, they have the lower record numbers
+                while (old < oldCount && oldIndex.getLong(old * INDEX_ENTRY_SIZE) <= hashes[i])
+                {
+                    out.writeLong(oldIndex.getLong(old * INDEX_ENTRY_SIZE));
+                    out.writeInt(oldIndex.getInt(old * INDEX_ENTRY_SIZE + 8));
+                    old++;
+                }
+                out.writeLong(hashes[i]);
+                out.writeInt(from + i);
+            }
+            for (; old < oldCount; old++)
+            {
+                out.writeLong(oldIndex.getLong(old * INDEX_ENTRY_SIZE));
+                out.writeInt(oldIndex.getInt(old * INDEX_ENTRY_SIZE + 8));
+            }
+        }
+        try (FileChannel written = FileChannel.open(temporary, StandardOpenOption.WRITE))
+        {
+            written.force(true);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the tickets closed for more than a given number of days from the ticket table to a {@link TicketArchive},
+ * batch by batch: a batch is appended to the archive first, then deleted from the database. A batch archived but
+ * not deleted, after a crash or a database error, is deleted before the next one is archived.
+ */
+public class TicketArchiver implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final TicketArchive archive;
+    private final TicketDAO ticketDAO;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+
+    public TicketArchiver(TicketArchive archive, TicketDAO ticketDAO)
+    {
+        this(archive, ticketDAO, DEFAULT_BATCH_SIZE);
+    }
+
+    public TicketArchiver(TicketArchive archive, TicketDAO ticketDAO, int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.archive = archive;
+        this.ticketDAO = ticketDAO;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archives every ticket closed more than {@code days} days ago.
+     * @return the number of tickets archived
+     */
+    public synchronized int archiveOlderThan(int days) throws IOException, SQLException, ClassNotFoundException
+    {
+        return archiveClosedBefore(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)));
+    }
+
+    public synchronized int archiveClosedBefore(Date outTimeBefore) throws IOException, SQLException, ClassNotFoundException
+    {
+        deletePending();
+        int archived = 0;
+        List<Ticket> batch;
+        do
+        {
+            batch = ticketDAO.getClosedTicketsBefore(outTimeBefore, batchSize);
+            archive.append(batch);
+            deletePending();
+            archived += batch.size();
+        }
+        while (batch.size() == batchSize);
+        if (archived > 0)
+        {
+            logger.info(archived + " tickets closed before " + outTimeBefore + " archived");
+        }
+        return archived;
+    }
+
+    /**
+     * Archives the tickets closed more than {@code days} days ago now, then every {@code intervalMillis} in a
+     * background thread.
+     */
+    public synchronized void start(int days, long intervalMillis)
+    {
+        if (scheduler != null)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                archiveOlderThan(days);
+            }
+            catch (IOException | SQLException | ClassNotFoundException | RuntimeException e)
+            {
+                logger.error("Error archiving tickets", e);
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    private void deletePending() throws IOException, SQLException, ClassNotFoundException
+    {
+        List<Integer> ids = archive.getPendingDeletion();
+        if (!ids.isEmpty())
+        {
+            ticketDAO.deleteTickets(ids);
+            archive.markDeleted();
+        }
+    }
+}
@@ -3,18 +3,215 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SaveStatus;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
-public class TicketDAO
+public class TicketDAO implements TicketRepository
 {
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
-    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 1000;
+    public static final int REPORT_FETCH_SIZE = 1000;
+
+    private final DataBaseConfig dataBaseConfig;
+
+    private volatile RecurringUserCache recurringUserCache;
+    private volatile OpenTicketRegistry openTicketRegistry;
+    private volatile TicketJournal journal;
+    private volatile TicketArchive ticketArchive;
+
+    public TicketDAO()
+    {
+        this(new DataBaseConfig());
+    }
+
+    /**
+     * @param dataBaseConfig the database of the facility, or the test database
+     */
+    public TicketDAO(DataBaseConfig dataBaseConfig)
+    {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * Warms a {@link RecurringUserCache} with every vehicle that has a closed ticket, so that
+     * {@link #isRecurringUser(String)} only queries the database when the answer is unknown.
+     * @param singleWriter true when no other process closes tickets in the database: only then are the vehicles never
+     * seen answered without a query
+     * @return true when the cache is in use
+     */
+    public boolean enableRecurringUserCache(long expectedPlates, double falsePositiveProbability, int confirmedCapacity,
+                                            boolean singleWriter)
+    {
+        RecurringUserCache cache = new RecurringUserCache(expectedPlates, falsePositiveProbability, confirmedCapacity, singleWriter);
+
+        try
+        (
+            Connection          con = dataBaseConfig.getConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.GET_RECURRING_USERS);
+            ResultSet           rs  = ps.executeQuery()
+        )
+        {
+            while (rs.next())
+            {
+                cache.addSeen(rs.getString(1));
+            }
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error warming recurring user cache, falling back to database lookups", ex);
+            return false;
+        }
+        recurringUserCache = cache;
+        return true;
+    }
+
+    public void disableRecurringUserCache()
+    {
+        recurringUserCache = null;
+    }
+
+    /**
+     * Fills the registry with the open tickets of the database, then answers {@link #getOpenTicket(String)} and
+     * {@link #hasAlreadyAnOpenTicket(String)} from it and keeps it up to date on every save and update.
+     * @return true when the registry is in use
+     */
+    public boolean enableOpenTicketRegistry(OpenTicketRegistry registry)
+    {
+        Map<String, Ticket> openTickets = loadOpenTickets();
+        if (openTickets == null)
+        {
+            logger.error("Open ticket registry could not be loaded, falling back to database lookups");
+            return false;
+        }
+        for (Ticket ticket : openTickets.values())
+        {
+            registry.open(ticket);
+        }
+        openTicketRegistry = registry;
+        return true;
+    }
+
+    public void disableOpenTicketRegistry()
+    {
+        openTicketRegistry = null;
+    }
+
+    public OpenTicketRegistry getOpenTicketRegistry()
+    {
+        return openTicketRegistry;
+    }
+
+    /**
+     * Write-behind mode: {@link #updateTicket(Ticket)} writes the exit to the journal and returns once it is durable,
+     * the {@link JournalFlusher} applies it to the database later.
+     * @throws IllegalStateException when the open ticket registry is not enabled
+     */
+    public void enableWriteBehind(TicketJournal journal)
+    {
+        if (openTicketRegistry == null)
+        {
+            throw new IllegalStateException("Write-behind needs the open ticket registry");
+        }
+        this.journal = journal;
+    }
+
+    public void disableWriteBehind()
+    {
+        journal = null;
+    }
+
+    /**
+     * Answers {@link #getTicket(String)} and {@link #isRecurringUser(String)} from the archive too, for the vehicles
+     * whose tickets have been moved there by a {@link TicketArchiver}.
+     */
+    public void enableTicketArchive(TicketArchive ticketArchive)
+    {
+        this.ticketArchive = ticketArchive;
+    }
+
+    public void disableTicketArchive()
+    {
+        ticketArchive = null;
+    }
+
+    public TicketArchive getTicketArchive()
+    {
+        return ticketArchive;
+    }
+
+    /**
+     * Compares the registry with the open tickets of the database and corrects the entries that differ, e.g. after
+     * another process wrote to the ticket table. Each difference is read again from the database before it is
+     * corrected, so that a vehicle entering or leaving during the check is not mistaken for one. Nothing is checked in
+     * write-behind mode, where the registry is expected to be ahead of the database.
+     * @return the number of corrected entries
+     */
+    public int checkOpenTicketRegistry()
+    {
+        OpenTicketRegistry registry = openTicketRegistry;
+        Map<String, Ticket> openTickets;
+        if (registry == null || journal != null || (openTickets = loadOpenTickets()) == null)
+        {
+            return 0;
+        }
+
+        int repaired = 0;
+        for (String vehicleRegNumber : registry.findMismatches(openTickets))
+        {
+            Ticket observed = registry.observe(vehicleRegNumber);
+            Ticket inDataBase = findTicket(DBConstants.GET_OPEN_TICKET, vehicleRegNumber, false);
+            if (registry.repair(vehicleRegNumber, observed, inDataBase))
+            {
+                logger.warn("Open ticket registry was out of date for vehicle " + vehicleRegNumber + ", corrected from the database");
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+
+    /**
+     * @return the open tickets keyed by vehicle, or null when the database could not be read
+     */
+    private Map<String, Ticket> loadOpenTickets()
+    {
+        Map<String, Ticket> openTickets = new HashMap<>();
+        try
+        (
+            Connection          con = dataBaseConfig.getConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.GET_ALL_OPEN_TICKETS);
+            ResultSet           rs  = ps.executeQuery()
+        )
+        {
+            while (rs.next())
+            {
+                Ticket ticket = readTicket(rs, rs.getString(7));
+                openTickets.put(ticket.getVehicleRegNumber(), ticket);
+            }
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error loading open tickets", ex);
+            return null;
+        }
+        return openTickets;
+    }
 
     private boolean saveTicket(Ticket ticket)
     {
@@ -22,15 +219,20 @@ public class TicketDAO
         try
         {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
-            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-            //ps.setInt(1,ticket.getId());
-            ps.setInt(1, ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
-            ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
-            return ps.execute();
+            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            bindTicket(ps, ticket);
+            if (ps.executeUpdate() != 1)
+            {
+                return false;
+            }
+            try (ResultSet keys = ps.getGeneratedKeys())
+            {
+                if (keys.next())
+                {
+                    ticket.setId(keys.getInt(1));
+                }
+            }
+            return true;
         }
         catch (Exception ex)
         {
@@ -43,6 +245,17 @@ public class TicketDAO
         return false;
     }
 
+    private void bindTicket(PreparedStatement ps, Ticket ticket) throws SQLException
+    {
+        //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+        //ps.setInt(1,ticket.getId());
+        ps.setInt(1, ticket.getParkingSpot().getId());
+        ps.setString(2, ticket.getVehicleRegNumber());
+        ps.setDouble(3, ticket.getPrice());
+        ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+        ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
+    }
+
 
     /**
      * Check wether there is not already an open ticket with the same vehicle number
@@ -50,8 +263,16 @@ public class TicketDAO
      * @param newTicket
      * @throws IllegalStateException
      */
+    @Override
     public void saveNewTicket(Ticket newTicket) throws IllegalStateException
     {
+        OpenTicketRegistry registry = openTicketRegistry;
+        if (registry != null)
+        {
+            saveNewTicket(newTicket, registry);
+            return;
+        }
+
         Ticket openedTicket;
 
         // on s'assure que le véhicule n'a pas déjà un newTicket en cours.
@@ -59,47 +280,310 @@ public class TicketDAO
         {
             newTicket.getParkingSpot().setAvailable(true);
 
-            throw new IllegalStateException("This " + openedTicket.getParkingSpot().getParkingType()
-                                                    + " "
-                                                    + openedTicket.getVehicleRegNumber()
-                                                    + " is already in the parking at slot "
-                                                    + openedTicket.getParkingSpot().getId()
-            );
+            throw alreadyInTheParking(openedTicket);
         }
         // puisque le véhicule n'as pas de newTicket en cours on peut effectivement le sauvegarder dans la base de donnée
         saveTicket(newTicket);
     }
 
+    private void saveNewTicket(Ticket newTicket, OpenTicketRegistry registry)
+    {
+        String vehicleRegNumber = newTicket.getVehicleRegNumber();
+        if (!registry.reserve(vehicleRegNumber))
+        {
+            newTicket.getParkingSpot().setAvailable(true);
+            Ticket openedTicket = registry.get(vehicleRegNumber);
+            if (openedTicket == null)
+            {
+                throw new IllegalStateException("This vehicle " + vehicleRegNumber + " is already entering the parking");
+            }
+            throw alreadyInTheParking(openedTicket);
+        }
+
+        boolean saved = false;
+        try
+        {
+            saved = saveTicket(newTicket);
+        }
+        finally
+        {
+            if (saved && newTicket.getOutTime() == null)
+            {
+                registry.open(newTicket);
+            }
+            else
+            {
+                registry.cancel(vehicleRegNumber);
+            }
+        }
+    }
+
+    private static IllegalStateException alreadyInTheParking(Ticket openedTicket)
+    {
+        return new IllegalStateException("This " + openedTicket.getParkingSpot().getParkingType()
+                                                 + " "
+                                                 + openedTicket.getVehicleRegNumber()
+                                                 + " is already in the parking at slot "
+                                                 + openedTicket.getParkingSpot().getId()
+        );
+    }
+
 
 
+    public List<SaveStatus> saveTickets(Collection<Ticket> tickets)
+    {
+        return saveTickets(tickets, DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    /**
+     * Bulk insert, e.g. to replay the log of a gate that was offline.
+     * <p>
+     * Tickets are sent as JDBC batches of {@code chunkSize} rows, each chunk committed on its own: a failing chunk
+     * is rolled back without undoing the chunks saved before it. Like {@link #saveNewTicket(Ticket)}, an open ticket
+     * is refused when its vehicle already has an open ticket, in the database or earlier in the collection, or is
+     * being let in by a gate of this process.
+     * @return the status of every ticket, in iteration order
+     */
+    public List<SaveStatus> saveTickets(Collection<Ticket> tickets, int chunkSize)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+
+        List<SaveStatus> statuses = new ArrayList<>(tickets.size());
+        Set<String> openPlates = new HashSet<>();
+        List<Ticket> chunk = new ArrayList<>(Math.min(chunkSize, tickets.size()));
+        Connection con = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS))
+            {
+                for (Ticket ticket : tickets)
+                {
+                    chunk.add(ticket);
+                    if (chunk.size() == chunkSize)
+                    {
+                        saveChunk(con, ps, chunk, openPlates, statuses);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty())
+                {
+                    saveChunk(con, ps, chunk, openPlates, statuses);
+                }
+            }
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error saving tickets", ex);
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+
+        while (statuses.size() < tickets.size())
+        {
+            statuses.add(SaveStatus.FAILED);
+        }
+        return statuses;
+    }
+
+    private void saveChunk(Connection con, PreparedStatement ps, List<Ticket> chunk, Set<String> openPlates, List<SaveStatus> statuses)
+    {
+        int firstStatus = statuses.size();
+        List<Ticket> batched = new ArrayList<>(chunk.size());
+        List<String> platesOpenedByChunk = new ArrayList<>();
+        // in write-behind mode the registry is ahead of the database, the entries flushed are already in it
+        OpenTicketRegistry registry = journal == null ? openTicketRegistry : null;
+        boolean committed = false;
+        try
+        {
+            Set<String> openInDataBase = findOpenTicketPlates(con, chunk);
+            for (Ticket ticket : chunk)
+            {
+                if (ticket.getOutTime() == null)
+                {
+                    String vehicleRegNumber = ticket.getVehicleRegNumber();
+                    if (openInDataBase.contains(vehicleRegNumber) || !openPlates.add(vehicleRegNumber))
+                    {
+                        statuses.add(SaveStatus.DUPLICATE_OPEN_TICKET);
+                        continue;
+                    }
+                    // like saveNewTicket, so that a gate letting the same vehicle in meanwhile is refused, or wins
+                    if (registry != null && !registry.reserve(vehicleRegNumber))
+                    {
+                        openPlates.remove(vehicleRegNumber);
+                        statuses.add(SaveStatus.DUPLICATE_OPEN_TICKET);
+                        continue;
+                    }
+                    platesOpenedByChunk.add(vehicleRegNumber);
+                }
+                bindTicket(ps, ticket);
+                ps.addBatch();
+                batched.add(ticket);
+                statuses.add(SaveStatus.SAVED);
+            }
+
+            if (!batched.isEmpty())
+            {
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys())
+                {
+                    for (Ticket ticket : batched)
+                    {
+                        if (keys.next())
+                        {
+                            ticket.setId(keys.getInt(1));
+                        }
+                    }
+                }
+            }
+            con.commit();
+            committed = true;
+
+            RecurringUserCache cache = recurringUserCache;
+            for (Ticket ticket : batched)
+            {
+                if (ticket.getOutTime() != null)
+                {
+                    if (cache != null)
+                    {
+                        cache.addConfirmed(ticket.getVehicleRegNumber());
+                    }
+                }
+                else if (registry != null)
+                {
+                    registry.open(ticket);
+                }
+            }
+        }
+        catch (SQLException ex)
+        {
+            logger.error("Error saving a chunk of " + chunk.size() + " tickets, the chunk is rolled back", ex);
+            try
+            {
+                ps.clearBatch();
+                con.rollback();
+            }
+            catch (SQLException rollbackEx)
+            {
+                logger.error("Error rolling back a chunk of tickets", rollbackEx);
+            }
+            openPlates.removeAll(platesOpenedByChunk);
+            for (int i = firstStatus; i < statuses.size(); i++)
+            {
+                if (statuses.get(i) == SaveStatus.SAVED)
+                {
+                    statuses.set(i, SaveStatus.FAILED);
+                }
+            }
+            while (statuses.size() < firstStatus + chunk.size())
+            {
+                statuses.add(SaveStatus.FAILED);
+            }
+        }
+        finally
+        {
+            if (registry != null && !committed)
+            {
+                platesOpenedByChunk.forEach(registry::cancel);
+            }
+        }
+    }
+
+    /**
+     * One query for the whole chunk instead of one HAS_AN_OPEN_TICKET per ticket.
+     */
+    private Set<String> findOpenTicketPlates(Connection con, List<Ticket> chunk) throws SQLException
+    {
+        Set<String> plates = new HashSet<>();
+        for (Ticket ticket : chunk)
+        {
+            if (ticket.getOutTime() == null)
+            {
+                plates.add(ticket.getVehicleRegNumber());
+            }
+        }
+        Set<String> openPlates = new HashSet<>();
+        if (plates.isEmpty())
+        {
+            return openPlates;
+        }
+
+        String query = DBConstants.FIND_OPEN_TICKET_PLATES + "(" + String.join(",", Collections.nCopies(plates.size(), "?")) + ")";
+        try (PreparedStatement ps = con.prepareStatement(query))
+        {
+            int index = 1;
+            for (String plate : plates)
+            {
+                ps.setString(index++, plate);
+            }
+            try (ResultSet rs = ps.executeQuery())
+            {
+                while (rs.next())
+                {
+                    openPlates.add(rs.getString(1));
+                }
+            }
+        }
+        return openPlates;
+    }
+
+    /**
+     * @return the most recent ticket of the vehicle, open or not, possibly from a read replica
+     */
+    @Override
     public Ticket getTicket(String vehicleRegNumber)
+    {
+        Ticket ticket = findTicket(DBConstants.GET_TICKET, vehicleRegNumber, true);
+        TicketArchive archive = ticketArchive;
+        if (ticket == null && archive != null)
+        {
+            ticket = archive.findLastTicket(vehicleRegNumber);
+        }
+        return ticket;
+    }
+
+    /**
+     * Exit lookup: a single row read through the (VEHICLE_REG_NUMBER, OUT_TIME) index, whatever the history of the vehicle.
+     * @return the ticket of the vehicle currently in the parking, or null
+     */
+    @Override
+    public Ticket getOpenTicket(String vehicleRegNumber)
+    {
+        OpenTicketRegistry registry = openTicketRegistry;
+        if (registry != null)
+        {
+            return registry.get(vehicleRegNumber);
+        }
+        return findTicket(DBConstants.GET_OPEN_TICKET, vehicleRegNumber, false);
+    }
+
+    private Ticket findTicket(String query, String vehicleRegNumber, boolean fromReplica)
     {
         Connection con = null;
         Ticket ticket = null;
         try
         {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            con = fromReplica ? dataBaseConfig.getReadConnection() : dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(query);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1, vehicleRegNumber);
             ResultSet rs = ps.executeQuery();
             if (rs.next())
             {
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
+                ticket = readTicket(rs, vehicleRegNumber);
             }
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
         }
         catch (Exception ex)
         {
-            logger.error("Error fetching next available slot", ex);
+            logger.error("Error fetching ticket", ex);
         }
         finally
         {
@@ -108,8 +592,39 @@ public class TicketDAO
         return ticket;
     }
 
+    private Ticket readTicket(ResultSet rs, String vehicleRegNumber) throws SQLException
+    {
+        //PARKING_NUMBER, ID, PRICE, IN_TIME, OUT_TIME, TYPE
+        Ticket ticket = new Ticket();
+        ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setId(rs.getInt(2));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(rs.getDouble(3));
+        ticket.setInTime(rs.getTimestamp(4));
+        ticket.setOutTime(rs.getTimestamp(5));
+        return ticket;
+    }
+
+    @Override
     public boolean updateTicket(Ticket ticket)
     {
+        TicketJournal ticketJournal = journal;
+        if (ticketJournal != null)
+        {
+            try
+            {
+                ticketJournal.appendExit(ticket);
+            }
+            catch (IOException | IllegalArgumentException ex)
+            {
+                logger.error("Error journaling ticket info", ex);
+                return false;
+            }
+            ticketClosed(ticket);
+            return true;
+        }
+
         Connection con = null;
         try
         {
@@ -118,7 +633,12 @@ public class TicketDAO
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3, ticket.getId());
-            ps.execute();
+            if (ps.executeUpdate() == 0)
+            {
+                // already closed, by another gate letting the same vehicle out
+                return false;
+            }
+            ticketClosed(ticket);
             return true;
         }
         catch (Exception ex)
@@ -132,13 +652,225 @@ public class TicketDAO
         return false;
     }
 
+    private void ticketClosed(Ticket ticket)
+    {
+        RecurringUserCache cache = recurringUserCache;
+        if (cache != null)
+        {
+            cache.addConfirmed(ticket.getVehicleRegNumber());
+        }
+        OpenTicketRegistry registry = openTicketRegistry;
+        if (registry != null)
+        {
+            registry.close(ticket);
+        }
+    }
+
+    /**
+     * Closes tickets found by vehicle and in-time, in one transaction. Tickets already closed are left as they are,
+     * so the same exits can be applied twice.
+     * @return false when nothing has been written
+     */
+    public boolean closeTickets(Collection<Ticket> tickets)
+    {
+        if (tickets.isEmpty())
+        {
+            return true;
+        }
+        Connection con = null;
+        try
+        {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_TICKET))
+            {
+                for (Ticket ticket : tickets)
+                {
+                    ps.setDouble(1, ticket.getPrice());
+                    ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                    ps.setString(3, ticket.getVehicleRegNumber());
+                    ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            con.commit();
+            return true;
+        }
+        catch (SQLException | ClassNotFoundException ex)
+        {
+            logger.error("Error closing tickets", ex);
+            if (con != null)
+            {
+                try
+                {
+                    con.rollback();
+                }
+                catch (SQLException rollbackEx)
+                {
+                    logger.error("Error rolling back closed tickets", rollbackEx);
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @return up to {@code limit} tickets closed before {@code outTimeBefore}, by id
+     */
+    public List<Ticket> getClosedTicketsBefore(Date outTimeBefore, int limit) throws SQLException, ClassNotFoundException
+    {
+        List<Ticket> tickets = new ArrayList<>();
+        try
+        (
+            Connection          con = dataBaseConfig.getConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS_BEFORE)
+        )
+        {
+            ps.setTimestamp(1, new Timestamp(outTimeBefore.getTime()));
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery())
+            {
+                while (rs.next())
+                {
+                    tickets.add(readTicket(rs, rs.getString(7)));
+                }
+            }
+        }
+        return tickets;
+    }
+
+    /**
+     * Streams the tickets closed in [{@code from}, {@code to}) through a forward-only cursor that holds at most
+     * {@link #REPORT_FETCH_SIZE} rows, whatever the size of the table. The same ticket instance is passed for every
+     * row, the consumer must copy what it keeps. Reads from a replica when there is one fresh enough.
+     * <p>
+     * With a {@link TicketArchive}, the archived tickets of the range are streamed first, and the rows of the ones
+     * whose deletion from the database is not confirmed yet are skipped, so that no ticket is passed twice. A batch
+     * both archived and deleted between the two reads, a few milliseconds, is missed.
+     */
+    public void forEachClosedTicket(Date from, Date to, Consumer<Ticket> consumer) throws SQLException, ClassNotFoundException
+    {
+        TicketArchive archive = ticketArchive;
+        Set<Integer> archived = archive == null ? Collections.emptySet() : archive.forEachClosedTicket(from, to, consumer);
+        try
+        (
+            Connection          con = dataBaseConfig.getReadConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.GET_TICKETS_CLOSED_BETWEEN, ResultSet.TYPE_FORWARD_ONLY,
+                                                           ResultSet.CONCUR_READ_ONLY)
+        )
+        {
+            ps.setFetchSize(REPORT_FETCH_SIZE);
+            ps.setTimestamp(1, new Timestamp(from.getTime()));
+            ps.setTimestamp(2, new Timestamp(to.getTime()));
+            try (ResultSet rs = ps.executeQuery())
+            {
+                Ticket ticket = new Ticket();
+                ParkingSpot parkingSpot = new ParkingSpot(0, null, true);
+                ticket.setParkingSpot(parkingSpot);
+                while (rs.next())
+                {
+                    //PARKING_NUMBER, ID, PRICE, IN_TIME, OUT_TIME, TYPE, VEHICLE_REG_NUMBER
+                    if (archived.contains(rs.getInt(2)))
+                    {
+                        continue;
+                    }
+                    parkingSpot.setId(rs.getInt(1));
+                    parkingSpot.setParkingType(ParkingType.valueOf(rs.getString(6)));
+                    ticket.setId(rs.getInt(2));
+                    ticket.setPrice(rs.getDouble(3));
+                    ticket.setInTime(rs.getTimestamp(4));
+                    ticket.setOutTime(rs.getTimestamp(5));
+                    ticket.setVehicleRegNumber(rs.getString(7));
+                    consumer.accept(ticket);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes tickets by id in one transaction. Ids already deleted are ignored.
+     */
+    public void deleteTickets(Collection<Integer> ids) throws SQLException, ClassNotFoundException
+    {
+        if (ids.isEmpty())
+        {
+            return;
+        }
+        try (Connection con = dataBaseConfig.getConnection())
+        {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.DELETE_TICKET))
+            {
+                for (Integer id : ids)
+                {
+                    ps.setInt(1, id);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                con.commit();
+            }
+            catch (SQLException ex)
+            {
+                con.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @return true when the vehicle has a ticket with exactly this in-time
+     */
+    public boolean ticketExists(String vehicleRegNumber, Date inTime) throws SQLException, ClassNotFoundException
+    {
+        try
+        (
+            Connection          con = dataBaseConfig.getConnection();
+            PreparedStatement   ps  = con.prepareStatement(DBConstants.TICKET_EXISTS)
+        )
+        {
+            ps.setString(1, vehicleRegNumber);
+            ps.setTimestamp(2, new Timestamp(inTime.getTime()));
+            try (ResultSet rs = ps.executeQuery())
+            {
+                rs.next();
+                return rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    @Override
     public boolean isRecurringUser(String vehicleRegNumber)
     {
+        // archived tickets are all closed, and the cache has not seen the plates archived before it was warmed
+        TicketArchive archive = ticketArchive;
+        if (archive != null && archive.contains(vehicleRegNumber))
+        {
+            return true;
+        }
+
+        RecurringUserCache cache = recurringUserCache;
+        if (cache != null)
+        {
+            if (!cache.mightBeRecurring(vehicleRegNumber))
+            {
+                return false;
+            }
+            if (cache.isConfirmedRecurring(vehicleRegNumber))
+            {
+                return true;
+            }
+        }
+
         boolean isRecurringUser = false;
 
         try
         (
-            Connection          con = dataBaseConfig.getConnection();
+            Connection          con = dataBaseConfig.getReadConnection();
             PreparedStatement   ps  = con.prepareStatement(DBConstants.IS_RECURRING_USER)
         )
         {
@@ -149,6 +881,10 @@ public class TicketDAO
                 rs.next();
                 isRecurringUser = rs.getInt(1) > 0;
             }
+            if (isRecurringUser && cache != null)
+            {
+                cache.addConfirmed(vehicleRegNumber);
+            }
         }
         catch (SQLException | ClassNotFoundException ex)
         {
@@ -159,6 +895,12 @@ public class TicketDAO
 
     public Ticket hasAlreadyAnOpenTicket(String vehicleRegNumber)
     {
+        OpenTicketRegistry registry = openTicketRegistry;
+        if (registry != null)
+        {
+            return registry.get(vehicleRegNumber);
+        }
+
         Ticket ticket = null;
 
         try
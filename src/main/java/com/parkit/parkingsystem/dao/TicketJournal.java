@@ -0,0 +1,297 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongFunction;
+
+/**
+ * Append-only local journal of the entries and exits, for the write-behind mode of the DAOs.
+ * <p>
+ * A gate returns once its record is on disk. Records are written as they come and fsynced in groups: the gate that
+ * forces the file makes durable every record written before it, so the gates waiting behind it return without
+ * forcing again. The {@link JournalFlusher} then applies the durable records to the database and moves the
+ * checkpoint; the journal is truncated whenever it has been entirely applied.
+ */
+public class TicketJournal implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("TicketJournal");
+
+    static final String JOURNAL_FILE = "tickets.journal";
+    static final String CHECKPOINT_FILE = "tickets.checkpoint";
+
+    private final Path checkpointFile;
+    private final FileChannel channel;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final ConcurrentLinkedQueue<JournalRecord> unflushed = new ConcurrentLinkedQueue<>();
+    private final List<JournalRecord> recovered;
+
+    private long appended;
+    private volatile long written;
+    private volatile long durable;
+    private volatile long checkpoint;
+    private boolean closed;
+
+    private TicketJournal(Path directory, FileChannel channel, long checkpoint, List<JournalRecord> recovered)
+    {
+        this.checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        this.channel = channel;
+        this.checkpoint = checkpoint;
+        this.recovered = recovered;
+        long last = checkpoint;
+        for (JournalRecord record : recovered)
+        {
+            last = Math.max(last, record.getSequence());
+        }
+        this.appended = last;
+        this.written = last;
+        this.durable = last;
+    }
+
+    /**
+     * Opens the journal of the directory, creating it if needed. Records written after the last checkpoint are kept
+     * for {@link #getRecovered()}; a torn record at the end of the file, which was never acknowledged, is dropped.
+     */
+    public static TicketJournal open(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        long checkpoint = readCheckpoint(directory.resolve(CHECKPOINT_FILE));
+        Path journalFile = directory.resolve(JOURNAL_FILE);
+
+        List<JournalRecord> recovered = new ArrayList<>();
+        long validLength = 0;
+        if (Files.exists(journalFile))
+        {
+            try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    JournalRecord record = JournalRecord.parse(line);
+                    if (record == null)
+                    {
+                        logger.warn("Journal " + journalFile + " ends with a torn record, it is dropped");
+                        break;
+                    }
+                    validLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    if (record.getSequence() > checkpoint)
+                    {
+                        recovered.add(record);
+                    }
+                }
+            }
+        }
+
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > validLength)
+        {
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+        channel.position(validLength);
+        if (!recovered.isEmpty())
+        {
+            logger.info(recovered.size() + " journaled records were not applied to the database before the last stop");
+        }
+        return new TicketJournal(directory, channel, checkpoint, recovered);
+    }
+
+    /**
+     * Records of the previous run that still have to be applied, in journal order.
+     */
+    List<JournalRecord> getRecovered()
+    {
+        return recovered;
+    }
+
+    public void appendEntry(Ticket ticket) throws IOException
+    {
+        append(sequence -> JournalRecord.entry(sequence, ticket));
+    }
+
+    public void appendExit(Ticket ticket) throws IOException
+    {
+        append(sequence -> JournalRecord.exit(sequence, ticket));
+    }
+
+    public void appendSpot(int parkingNumber, boolean available) throws IOException
+    {
+        append(sequence -> JournalRecord.spot(sequence, parkingNumber, available));
+    }
+
+    private void append(LongFunction<JournalRecord> recordFactory) throws IOException
+    {
+        long sequence;
+        synchronized (writeLock)
+        {
+            if (closed)
+            {
+                throw new IOException("Ticket journal is closed");
+            }
+            sequence = appended + 1;
+            JournalRecord record = recordFactory.apply(sequence);
+            ByteBuffer buffer = ByteBuffer.wrap(record.toLine().getBytes(StandardCharsets.UTF_8));
+            try
+            {
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            }
+            catch (IOException e)
+            {
+                // the end of the file is unknown now, the records after the last durable one are never applied
+                closed = true;
+                throw e;
+            }
+            appended = sequence;
+            unflushed.add(record);
+            written = sequence;
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Group commit: one force covers every record written before it.
+     */
+    private void awaitDurable(long sequence) throws IOException
+    {
+        synchronized (syncLock)
+        {
+            if (durable >= sequence)
+            {
+                return;
+            }
+            long target = written;
+            try
+            {
+                channel.force(false);
+            }
+            catch (IOException e)
+            {
+                synchronized (writeLock)
+                {
+                    closed = true;
+                }
+                throw e;
+            }
+            durable = target;
+        }
+    }
+
+    /**
+     * @return up to {@code max} durable records not applied to the database yet, oldest first
+     */
+    List<JournalRecord> pending(int max)
+    {
+        List<JournalRecord> records = new ArrayList<>();
+        long durableSequence = durable;
+        Iterator<JournalRecord> iterator = unflushed.iterator();
+        while (records.size() < max && iterator.hasNext())
+        {
+            JournalRecord record = iterator.next();
+            if (record.getSequence() > durableSequence)
+            {
+                break;
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Called by the flusher once the given records, and every record before them, are in the database.
+     */
+    void markApplied(long sequence) throws IOException
+    {
+        while (!unflushed.isEmpty() && unflushed.peek().getSequence() <= sequence)
+        {
+            unflushed.poll();
+        }
+        recovered.removeIf(record -> record.getSequence() <= sequence);
+        writeCheckpoint(sequence);
+
+        synchronized (writeLock)
+        {
+            if (appended == sequence && !closed)
+            {
+                // everything has been applied, start again from an empty file
+                channel.truncate(0);
+                channel.position(0);
+            }
+        }
+    }
+
+    long getCheckpoint()
+    {
+        return checkpoint;
+    }
+
+    int getUnflushedCount()
+    {
+        return unflushed.size();
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException
+    {
+        Path temporary = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            out.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(StandardCharsets.UTF_8)));
+            out.force(true);
+        }
+        Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = sequence;
+    }
+
+    private static long readCheckpoint(Path file) throws IOException
+    {
+        if (!Files.exists(file))
+        {
+            return 0;
+        }
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        try
+        {
+            return content.isEmpty() ? 0 : Long.parseLong(content);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Journal checkpoint " + file + " is corrupted: " + content, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (writeLock)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+        }
+        synchronized (syncLock)
+        {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
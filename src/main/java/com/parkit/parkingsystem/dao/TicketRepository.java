@@ -0,0 +1,38 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Tickets as {@code ParkingService} needs them, whatever they are stored in: {@link TicketDAO} for the database,
+ * {@link InMemoryParkingStore} and {@link FileParkingStore} without one.
+ * <p>
+ * Tickets handed out are copies: changing one has no effect until it is given back to {@link #updateTicket}.
+ */
+public interface TicketRepository
+{
+    /**
+     * @throws IllegalStateException when the vehicle already has an open ticket
+     */
+    void saveNewTicket(Ticket ticket) throws IllegalStateException;
+
+    /**
+     * @return the most recent ticket of the vehicle, open or not, or null
+     */
+    Ticket getTicket(String vehicleRegNumber);
+
+    /**
+     * @return the ticket of the vehicle while it is in the parking, or null
+     */
+    Ticket getOpenTicket(String vehicleRegNumber);
+
+    /**
+     * Records the out-time and price of the ticket.
+     * @return false when the ticket could not be written or was already closed
+     */
+    boolean updateTicket(Ticket ticket);
+
+    /**
+     * @return true when the vehicle has already left the parking at least once
+     */
+    boolean isRecurringUser(String vehicleRegNumber);
+}
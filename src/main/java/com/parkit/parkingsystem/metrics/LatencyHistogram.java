@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations in fixed buckets, from 100 µs to 10 s, in the Prometheus histogram layout.
+ * <p>
+ * Recording never locks nor allocates, so it can be called on every query from every gate.
+ */
+public class LatencyHistogram
+{
+    /**
+     * Upper bounds of the buckets, in seconds; a last bucket takes everything above.
+     */
+    static final double[] BOUNDS_SECONDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+                                             0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+    static
+    {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++)
+        {
+            BOUNDS_NANOS[i] = Math.round(BOUNDS_SECONDS[i] * 1e9);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_SECONDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < buckets.length; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos)
+    {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket])
+        {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount()
+    {
+        long count = 0;
+        for (LongAdder bucket : buckets)
+        {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double getSumSeconds()
+    {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /**
+     * @return for each bound of {@link #BOUNDS_SECONDS} then for +Inf, the number of durations up to it
+     */
+    long[] cumulativeCounts()
+    {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++)
+        {
+            count += buckets[i].sum();
+            counts[i] = count;
+        }
+        return counts;
+    }
+}
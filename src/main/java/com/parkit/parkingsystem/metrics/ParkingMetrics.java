@@ -0,0 +1,245 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failure counters of the parking, written in the Prometheus text format by {@link #writePrometheus}.
+ * <p>
+ * The process-wide instance, {@link #getDefault()}, is fed by {@code ParkingService} for the entries and exits and by
+ * the connection pool for every query, each query being named after its {@link DBConstants} constant.
+ */
+public class ParkingMetrics
+{
+    /**
+     * Name of the statements whose SQL is not one of the {@link DBConstants}.
+     */
+    public static final String OTHER_QUERY = "OTHER";
+
+    private static final Map<String, String> QUERY_NAMES = queryNames();
+    private static final ParkingMetrics DEFAULT = new ParkingMetrics();
+
+    private final LatencyHistogram entryLatency = new LatencyHistogram();
+    private final LatencyHistogram exitLatency = new LatencyHistogram();
+    private final LongAdder parkingFull = new LongAdder();
+    private final LongAdder alreadyParked = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private final ConcurrentMap<String, QueryMetrics> queries = new ConcurrentHashMap<>();
+
+    public static ParkingMetrics getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public void recordEntry(long nanos)
+    {
+        entryLatency.record(nanos);
+    }
+
+    public void recordExit(long nanos)
+    {
+        exitLatency.record(nanos);
+    }
+
+    /**
+     * A vehicle was refused because no spot of its type was free.
+     */
+    public void parkingFull()
+    {
+        parkingFull.increment();
+    }
+
+    /**
+     * A vehicle was refused because it already had an open ticket.
+     */
+    public void alreadyParked()
+    {
+        alreadyParked.increment();
+    }
+
+    /**
+     * No connection to the database could be obtained.
+     */
+    public void connectionError()
+    {
+        connectionErrors.increment();
+    }
+
+    /**
+     * @return the metrics of the query, to keep for as long as its statement is open
+     */
+    public QueryMetrics query(String sql)
+    {
+        return queries.computeIfAbsent(queryName(sql), QueryMetrics::new);
+    }
+
+    public LatencyHistogram getEntryLatency()
+    {
+        return entryLatency;
+    }
+
+    public LatencyHistogram getExitLatency()
+    {
+        return exitLatency;
+    }
+
+    public long getParkingFullCount()
+    {
+        return parkingFull.sum();
+    }
+
+    public long getAlreadyParkedCount()
+    {
+        return alreadyParked.sum();
+    }
+
+    public long getConnectionErrorCount()
+    {
+        return connectionErrors.sum();
+    }
+
+    /**
+     * @return the name of the {@link DBConstants} constant the SQL is, or starts with, otherwise {@link #OTHER_QUERY}
+     */
+    public static String queryName(String sql)
+    {
+        String name = QUERY_NAMES.get(sql);
+        if (name != null)
+        {
+            return name;
+        }
+        // queries completed at runtime, like the IN lists
+        for (Map.Entry<String, String> query : QUERY_NAMES.entrySet())
+        {
+            if (sql.startsWith(query.getKey()))
+            {
+                return query.getValue();
+            }
+        }
+        return OTHER_QUERY;
+    }
+
+    public void writePrometheus(Writer out) throws IOException
+    {
+        writeHistogram(out, "parkit_entry_seconds", "Time to let a vehicle in", null, null, entryLatency, true);
+        writeHistogram(out, "parkit_exit_seconds", "Time to let a vehicle out, priced and with its spot freed", null, null,
+                       exitLatency, true);
+
+        out.write("# HELP parkit_entries_rejected_total Vehicles refused at the entrance\n");
+        out.write("# TYPE parkit_entries_rejected_total counter\n");
+        out.write("parkit_entries_rejected_total{reason=\"parking_full\"} " + parkingFull.sum() + "\n");
+        out.write("parkit_entries_rejected_total{reason=\"already_parked\"} " + alreadyParked.sum() + "\n");
+
+        Map<String, QueryMetrics> sorted = new TreeMap<>(queries);
+        boolean first = true;
+        for (QueryMetrics query : sorted.values())
+        {
+            writeHistogram(out, "parkit_query_seconds", "Execution time of the database queries", "query", query.getName(),
+                           query.getLatency(), first);
+            first = false;
+        }
+
+        out.write("# HELP parkit_db_errors_total Database calls that failed, by query, or to get a connection\n");
+        out.write("# TYPE parkit_db_errors_total counter\n");
+        out.write("parkit_db_errors_total{query=\"connection\"} " + connectionErrors.sum() + "\n");
+        for (QueryMetrics query : sorted.values())
+        {
+            out.write("parkit_db_errors_total{query=\"" + query.getName() + "\"} " + query.getErrorCount() + "\n");
+        }
+        out.flush();
+    }
+
+    private static void writeHistogram(Writer out, String name, String help, String label, String value,
+                                       LatencyHistogram histogram, boolean header) throws IOException
+    {
+        if (header)
+        {
+            out.write("# HELP " + name + " " + help + "\n");
+            out.write("# TYPE " + name + " histogram\n");
+        }
+        String labels = label == null ? "" : label + "=\"" + value + "\",";
+        long[] counts = histogram.cumulativeCounts();
+        for (int i = 0; i < counts.length; i++)
+        {
+            String bound = i < LatencyHistogram.BOUNDS_SECONDS.length
+                           ? BigDecimal.valueOf(LatencyHistogram.BOUNDS_SECONDS[i]).stripTrailingZeros().toPlainString()
+                           : "+Inf";
+            out.write(name + "_bucket{" + labels + "le=\"" + bound + "\"} " + counts[i] + "\n");
+        }
+        String suffix = label == null ? "" : "{" + label + "=\"" + value + "\"}";
+        // the sum is read after the buckets, it may include a few durations the count does not
+        out.write(name + "_sum" + suffix + " " + histogram.getSumSeconds() + "\n");
+        out.write(name + "_count" + suffix + " " + counts[counts.length - 1] + "\n");
+    }
+
+    private static Map<String, String> queryNames()
+    {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (Field field : DBConstants.class.getFields())
+        {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class)
+            {
+                try
+                {
+                    names.putIfAbsent((String) field.get(null), field.getName());
+                }
+                catch (IllegalAccessException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Latency and failures of one of the {@link DBConstants} queries.
+     */
+    public static class QueryMetrics
+    {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        QueryMetrics(String name)
+        {
+            this.name = name;
+        }
+
+        public void record(long nanos)
+        {
+            latency.record(nanos);
+        }
+
+        public void error()
+        {
+            errors.increment();
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public LatencyHistogram getLatency()
+        {
+            return latency;
+        }
+
+        public long getErrorCount()
+        {
+            return errors.sum();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.parkit.parkingsystem.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@code GET /metrics} for Prometheus: the {@link ParkingMetrics} in the text exposition format.
+ */
+public class PrometheusHandler implements HttpHandler
+{
+    private final ParkingMetrics metrics;
+
+    public PrometheusHandler(ParkingMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!"GET".equals(exchange.getRequestMethod()))
+            {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream(16 * 1024);
+            Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+            metrics.writePrometheus(writer);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.size());
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                body.writeTo(out);
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+public class Occupancy
+{
+    private final ParkingType parkingType;
+    private final int total;
+    private final int free;
+
+    public Occupancy(ParkingType parkingType, int total, int free)
+    {
+        this.parkingType = parkingType;
+        this.total = total;
+        this.free = free;
+    }
+
+    public ParkingType getParkingType()
+    {
+        return parkingType;
+    }
+
+    public int getTotal()
+    {
+        return total;
+    }
+
+    public int getFree()
+    {
+        return free;
+    }
+
+    public int getOccupied()
+    {
+        return total - free;
+    }
+
+    @Override
+    public String toString()
+    {
+        return parkingType + ": " + free + " free of " + total;
+    }
+}
@@ -0,0 +1,63 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Outcome of {@link ParkingService#enter(com.parkit.parkingsystem.constants.ParkingType, String)}.
+ */
+public class EntryResult
+{
+    public enum Status
+    {
+        ENTERED, ALREADY_PARKED, PARKING_FULL, ERROR
+    }
+
+    private final Status status;
+    private final Ticket ticket;
+    private final boolean recurringUser;
+    private final String message;
+
+    private EntryResult(Status status, Ticket ticket, boolean recurringUser, String message)
+    {
+        this.status = status;
+        this.ticket = ticket;
+        this.recurringUser = recurringUser;
+        this.message = message;
+    }
+
+    public static EntryResult entered(Ticket ticket, boolean recurringUser)
+    {
+        return new EntryResult(Status.ENTERED, ticket, recurringUser, null);
+    }
+
+    public static EntryResult refused(Status status, String message)
+    {
+        return new EntryResult(status, null, false, message);
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return the ticket opened for the vehicle, null unless {@link Status#ENTERED}
+     */
+    public Ticket getTicket()
+    {
+        return ticket;
+    }
+
+    public boolean isRecurringUser()
+    {
+        return recurringUser;
+    }
+
+    /**
+     * @return why the vehicle was not let in, null when it was
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+}
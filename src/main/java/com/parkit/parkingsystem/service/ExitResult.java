@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Outcome of {@link ParkingService#exit(String)}.
+ */
+public class ExitResult
+{
+    public enum Status
+    {
+        EXITED, NOT_PARKED, ERROR
+    }
+
+    private final Status status;
+    private final Ticket ticket;
+    private final boolean recurringUser;
+    private final boolean spotFreed;
+    private final String message;
+
+    private ExitResult(Status status, Ticket ticket, boolean recurringUser, boolean spotFreed, String message)
+    {
+        this.status = status;
+        this.ticket = ticket;
+        this.recurringUser = recurringUser;
+        this.spotFreed = spotFreed;
+        this.message = message;
+    }
+
+    public static ExitResult exited(Ticket ticket, boolean recurringUser, boolean spotFreed)
+    {
+        return new ExitResult(Status.EXITED, ticket, recurringUser, spotFreed,
+                              spotFreed ? null : "Unable to free parking spot " + ticket.getParkingSpot().getId());
+    }
+
+    public static ExitResult refused(Status status, String message)
+    {
+        return new ExitResult(status, null, false, false, message);
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return the closed ticket with its out-time and price, null unless {@link Status#EXITED}
+     */
+    public Ticket getTicket()
+    {
+        return ticket;
+    }
+
+    /**
+     * @return true when the price includes the recurring user discount
+     */
+    public boolean isRecurringUser()
+    {
+        return recurringUser;
+    }
+
+    /**
+     * @return false when the ticket is closed but its spot is still marked as taken, which then needs to be freed by hand
+     */
+    public boolean isSpotFreed()
+    {
+        return spotFreed;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+}
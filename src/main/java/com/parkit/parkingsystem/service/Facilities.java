@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem.service;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The facilities served by the process, by id, in the order they were configured.
+ */
+public class Facilities
+{
+    private final Map<String, Facility> facilities = new LinkedHashMap<>();
+
+    public Facilities(Collection<Facility> facilities)
+    {
+        for (Facility facility : facilities)
+        {
+            if (this.facilities.putIfAbsent(facility.getId(), facility) != null)
+            {
+                throw new IllegalArgumentException("Facility " + facility.getId() + " is configured twice");
+            }
+        }
+        if (this.facilities.isEmpty())
+        {
+            throw new IllegalArgumentException("No facility is configured");
+        }
+    }
+
+    /**
+     * A process serving a single lot.
+     */
+    public static Facilities single(ParkingService parkingService)
+    {
+        return new Facilities(Collections.singletonList(new Facility(Facility.DEFAULT_ID, parkingService, null)));
+    }
+
+    /**
+     * @throws IllegalArgumentException when no facility has this id
+     */
+    public Facility get(String id) throws IllegalArgumentException
+    {
+        Facility facility = facilities.get(id);
+        if (facility == null)
+        {
+            throw new IllegalArgumentException("Unknown facility " + id);
+        }
+        return facility;
+    }
+
+    /**
+     * @return the first facility configured, the one the console and the TCP gates serve
+     */
+    public Facility getDefault()
+    {
+        return facilities.values().iterator().next();
+    }
+
+    public Collection<Facility> getAll()
+    {
+        return Collections.unmodifiableCollection(facilities.values());
+    }
+
+    public int size()
+    {
+        return facilities.size();
+    }
+
+    /**
+     * Builds the report of every facility stored in a database, all at the same time, each on its own shard.
+     * @param to first day after the report
+     * @param partitions date partitions of the report of each facility, see {@link ReportService}
+     * @return the reports by facility id
+     */
+    public Map<String, RevenueReport> revenueReports(LocalDate from, LocalDate to, int partitions) throws SQLException, ClassNotFoundException
+    {
+        List<Facility> reported = new ArrayList<>();
+        for (Facility facility : facilities.values())
+        {
+            if (facility.getReportService() != null)
+            {
+                reported.add(facility);
+            }
+        }
+        Map<String, RevenueReport> reports = new LinkedHashMap<>();
+        if (reported.isEmpty())
+        {
+            return reports;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(reported.size(), r ->
+        {
+            Thread thread = new Thread(r, "facility-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            Map<String, Future<RevenueReport>> parts = new LinkedHashMap<>();
+            for (Facility facility : reported)
+            {
+                parts.put(facility.getId(), executor.submit(() -> facility.getReportService().revenueReport(from, to, partitions)));
+            }
+            for (Map.Entry<String, Future<RevenueReport>> part : parts.entrySet())
+            {
+                reports.put(part.getKey(), part.getValue().get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while building the reports", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException)
+            {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof ClassNotFoundException)
+            {
+                throw (ClassNotFoundException) cause;
+            }
+            throw new IllegalStateException("Error building the reports", cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return reports;
+    }
+}
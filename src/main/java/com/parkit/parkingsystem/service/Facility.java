@@ -0,0 +1,42 @@
+package com.parkit.parkingsystem.service;
+
+/**
+ * One parking lot of the operator, with its own shard of the database and its own in-memory state, so that a busy
+ * lot never waits on the connections or the locks of a quiet one.
+ */
+public class Facility
+{
+    /**
+     * Id of the only facility of a process started without {@code -Dparkit.facilities}.
+     */
+    public static final String DEFAULT_ID = "default";
+
+    private final String id;
+    private final ParkingService parkingService;
+    private final ReportService reportService;
+
+    /**
+     * @param reportService null when the facility is not stored in a database
+     */
+    public Facility(String id, ParkingService parkingService, ReportService reportService)
+    {
+        this.id = id;
+        this.parkingService = parkingService;
+        this.reportService = reportService;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public ParkingService getParkingService()
+    {
+        return parkingService;
+    }
+
+    public ReportService getReportService()
+    {
+        return reportService;
+    }
+}
@@ -0,0 +1,402 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FileParkingStore;
+import com.parkit.parkingsystem.dao.InMemoryParkingStore;
+import com.parkit.parkingsystem.dao.JournalFlusher;
+import com.parkit.parkingsystem.dao.LeasedSpotAllocator;
+import com.parkit.parkingsystem.dao.OpenTicketRegistry;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketArchive;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import com.parkit.parkingsystem.metrics.PrometheusHandler;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the facilities served by the process from the {@code parkit.*} system properties: their store, the
+ * in-memory state, journal, archive and leases of the ones in a database, their tariff, and the metrics endpoint.
+ * The console, the TCP gates and the HTTP API only serve what it builds.
+ * <p>
+ * {@code -Dparkit.facilities=north,south} serves several lots from this process, each with its own shard, see
+ * {@link DataBaseConfig#forFacility(String)}, its own caches and its own sub-directory of the journal, archive and
+ * store directories. Without it the process serves a single lot on the default database.
+ */
+public class FacilityBootstrap implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("FacilityBootstrap");
+
+    private HttpServer metricsServer;
+
+    /**
+     * With {@code -Dparkit.async.threads}, the reads and writes of an exit run on that many JDBC threads, see
+     * {@link ParkingService#exitAsync(String)}.
+     */
+    public Facilities createFacilities(InputReaderUtil inputReaderUtil)
+    {
+        List<Facility> facilities = new ArrayList<>();
+        for (String facilityId : facilityIds())
+        {
+            facilities.add(createFacility(facilityId, dataBaseConfig(facilityId), inputReaderUtil));
+        }
+        Integer asyncThreads = Integer.getInteger("parkit.async.threads");
+        if (asyncThreads != null)
+        {
+            // each facility its own JDBC threads, like its own connection pool
+            for (Facility facility : facilities)
+            {
+                facility.getParkingService().enableAsyncExits(asyncThreads, Integer.getInteger("parkit.async.queue", 256));
+            }
+            logger.info("Exits run on " + asyncThreads + " JDBC threads per facility");
+        }
+        startMetricsEndpoint();
+        return new Facilities(facilities);
+    }
+
+    /**
+     * The facilities of {@link #createFacilities(InputReaderUtil)} for a revenue report only: nothing is recovered,
+     * cached or archived, and the archive of a running parking is read as it is, see {@link TicketArchive#openReadOnly}.
+     */
+    public Facilities createReportFacilities() throws IOException
+    {
+        List<Facility> facilities = new ArrayList<>();
+        for (String facilityId : facilityIds())
+        {
+            DataBaseConfig dataBaseConfig = dataBaseConfig(facilityId);
+            TicketDAO ticketDAO = dataBaseConfig == null ? new TicketDAO() : new TicketDAO(dataBaseConfig);
+            String archiveDir = System.getProperty("parkit.archive.dir");
+            if (archiveDir != null)
+            {
+                archiveDir = facilityDir(archiveDir, dataBaseConfig, facilityId);
+                try
+                {
+                    ticketDAO.enableTicketArchive(TicketArchive.openReadOnly(Paths.get(archiveDir)));
+                }
+                catch (NoSuchFileException e)
+                {
+                    logger.info("No ticket archived in " + archiveDir + " yet");
+                }
+            }
+            facilities.add(new Facility(facilityId, null, new ReportService(ticketDAO, reportZone())));
+        }
+        return new Facilities(facilities);
+    }
+
+    /**
+     * The tickets and spots are in the database unless {@code -Dparkit.store=memory} keeps them in memory only, or
+     * {@code -Dparkit.store=file} in {@code parkit.store.dir}; the lot then has {@code parkit.store.carSpots} car spots
+     * and {@code parkit.store.bikeSpots} bike spots.
+     * @param dataBaseConfig shard of the facility, null for the default database of a single lot
+     */
+    public Facility createFacility(String facilityId, DataBaseConfig dataBaseConfig, InputReaderUtil inputReaderUtil)
+    {
+        String store = System.getProperty("parkit.store", "jdbc");
+        if ("jdbc".equals(store))
+        {
+            return createJdbcFacility(facilityId, dataBaseConfig, inputReaderUtil);
+        }
+        Map<Integer, ParkingType> spots = InMemoryParkingStore.layout(Integer.getInteger("parkit.store.carSpots", 3),
+                                                                      Integer.getInteger("parkit.store.bikeSpots", 2));
+        InMemoryParkingStore parkingStore;
+        if ("memory".equals(store))
+        {
+            parkingStore = new InMemoryParkingStore(spots);
+        }
+        else if ("file".equals(store))
+        {
+            String storeDir = facilityDir(System.getProperty("parkit.store.dir", "data"), dataBaseConfig, facilityId);
+            try
+            {
+                FileParkingStore fileStore = FileParkingStore.open(Paths.get(storeDir), spots);
+                Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                {
+                    try
+                    {
+                        fileStore.close();
+                    }
+                    catch (IOException e)
+                    {
+                        logger.error("Error while closing the parking store", e);
+                    }
+                }, "parking-store-close"));
+                parkingStore = fileStore;
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Unable to open the parking store in " + storeDir, e);
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown parking store: " + store);
+        }
+        logger.info("Tickets and spots of facility " + facilityId + " are stored in " + store);
+        return new Facility(facilityId,
+                            new ParkingService(inputReaderUtil, parkingStore, parkingStore, new FareCalculatorService(createFareEngine())),
+                            null);
+    }
+
+    private Facility createJdbcFacility(String facilityId, DataBaseConfig dataBaseConfig, InputReaderUtil inputReaderUtil)
+    {
+        ParkingSpotDAO parkingSpotDAO = dataBaseConfig == null ? new ParkingSpotDAO() : new ParkingSpotDAO(dataBaseConfig);
+        TicketDAO ticketDAO = dataBaseConfig == null ? new TicketDAO() : new TicketDAO(dataBaseConfig);
+        // the journal of the previous run goes to the database before anything is loaded from it
+        JournalFlusher journalFlusher = recoverJournal(ticketDAO, parkingSpotDAO, dataBaseConfig, facilityId);
+        String leaseNode = System.getProperty("parkit.lease.node");
+        if (leaseNode != null && journalFlusher != null)
+        {
+            throw new IllegalStateException("Write-behind allocates from the spot index, it cannot be used with spot leases");
+        }
+        // the in-memory state only sees the entries and exits of this process, the other nodes would make it wrong
+        boolean inMemoryState = leaseNode == null;
+        if (!inMemoryState)
+        {
+            logger.info("Node " + leaseNode + " shares the database, the in-memory state of facility " + facilityId + " is disabled");
+        }
+
+        if (inMemoryState && Boolean.parseBoolean(System.getProperty("parkit.spotIndex.enabled", "true")))
+        {
+            parkingSpotDAO.enableSpotIndex();
+        }
+        if (inMemoryState && Boolean.parseBoolean(System.getProperty("parkit.occupancyCounters.enabled", "true")))
+        {
+            parkingSpotDAO.enableOccupancyCounters();
+        }
+        if (inMemoryState && Boolean.parseBoolean(System.getProperty("parkit.recurringUserCache.enabled", "true")))
+        {
+            // write-behind already requires the app to be the only one writing to the database
+            boolean singleWriter = journalFlusher != null || Boolean.getBoolean("parkit.recurringUserCache.singleWriter");
+            ticketDAO.enableRecurringUserCache(Long.getLong("parkit.recurringUserCache.expectedPlates", 1_000_000L), 0.01,
+                                               Integer.getInteger("parkit.recurringUserCache.confirmedCapacity", 10_000), singleWriter);
+        }
+        enableTicketArchive(ticketDAO, dataBaseConfig, facilityId);
+        if (inMemoryState && Boolean.parseBoolean(System.getProperty("parkit.openTicketRegistry.enabled", "true")))
+        {
+            OpenTicketRegistry registry = new OpenTicketRegistry();
+            if (ticketDAO.enableOpenTicketRegistry(registry))
+            {
+                parkingSpotDAO.setOpenTicketRegistry(registry);
+                if (journalFlusher == null)
+                {
+                    scheduleOpenTicketRegistryCheck(ticketDAO, Long.getLong("parkit.openTicketRegistry.checkIntervalMillis", 60_000L));
+                }
+            }
+        }
+        if (journalFlusher != null)
+        {
+            ticketDAO.enableWriteBehind(journalFlusher.getJournal());
+            parkingSpotDAO.enableWriteBehind(journalFlusher.getJournal());
+            journalFlusher.start(Long.getLong("parkit.journal.flushIntervalMillis", 200L));
+            // what cannot be applied on the way out is recovered on next start
+            Runtime.getRuntime().addShutdownHook(new Thread(journalFlusher::close, "journal-drain"));
+            logger.info("Write-behind enabled, entries and exits of facility " + facilityId + " are journaled");
+        }
+        SpotRepository spotRepository = parkingSpotDAO;
+        if (leaseNode != null)
+        {
+            spotRepository = startSpotLeases(leaseNode, parkingSpotDAO);
+        }
+        return new Facility(facilityId,
+                            new ParkingService(inputReaderUtil, spotRepository, ticketDAO, new FareCalculatorService(createFareEngine())),
+                            new ReportService(ticketDAO, reportZone()));
+    }
+
+    /**
+     * @return the ids of {@code -Dparkit.facilities}, or the default facility alone
+     */
+    private static List<String> facilityIds()
+    {
+        List<String> ids = new ArrayList<>();
+        String facilityIds = System.getProperty("parkit.facilities");
+        if (facilityIds == null)
+        {
+            ids.add(Facility.DEFAULT_ID);
+            return ids;
+        }
+        for (String facilityId : facilityIds.split(","))
+        {
+            facilityId = facilityId.trim();
+            if (!facilityId.isEmpty())
+            {
+                ids.add(facilityId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the shard of the facility, or null for the single lot on the default database
+     */
+    private static DataBaseConfig dataBaseConfig(String facilityId)
+    {
+        return System.getProperty("parkit.facilities") == null ? null : DataBaseConfig.forFacility(facilityId);
+    }
+
+    /**
+     * @return the sub-directory of the facility, or the directory itself for the single lot on the default database
+     */
+    private static String facilityDir(String dir, DataBaseConfig dataBaseConfig, String facilityId)
+    {
+        return dataBaseConfig == null ? dir : Paths.get(dir, facilityId).toString();
+    }
+
+    /**
+     * With {@code -Dparkit.lease.node=<unique id>} this node allocates from blocks of {@code parkit.lease.blockSize} spots
+     * leased for {@code parkit.lease.millis}, so that the nodes sharing the database do not compete for the same rows.
+     */
+    private static LeasedSpotAllocator startSpotLeases(String nodeId, ParkingSpotDAO parkingSpotDAO)
+    {
+        long leaseMillis = Long.getLong("parkit.lease.millis", 30_000L);
+        LeasedSpotAllocator allocator = new LeasedSpotAllocator(nodeId, parkingSpotDAO, parkingSpotDAO,
+                                                                Integer.getInteger("parkit.lease.blockSize", 8), leaseMillis);
+        allocator.start(leaseMillis / 3);
+        // leases not given back expire, other nodes wait for them until then
+        Runtime.getRuntime().addShutdownHook(new Thread(allocator::close, "spot-lease-release"));
+        logger.info("Node " + nodeId + " allocates from leased spots");
+        return allocator;
+    }
+
+    /**
+     * @return the flusher of the journal when write-behind is enabled with {@code -Dparkit.journal.dir}, or null
+     */
+    private static JournalFlusher recoverJournal(TicketDAO ticketDAO, ParkingSpotDAO parkingSpotDAO, DataBaseConfig dataBaseConfig,
+                                                 String facilityId)
+    {
+        String journalDir = System.getProperty("parkit.journal.dir");
+        if (journalDir == null)
+        {
+            return null;
+        }
+        journalDir = facilityDir(journalDir, dataBaseConfig, facilityId);
+        TicketJournal journal;
+        try
+        {
+            journal = TicketJournal.open(Paths.get(journalDir));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to open the ticket journal in " + journalDir, e);
+        }
+        JournalFlusher journalFlusher = new JournalFlusher(journal, ticketDAO, parkingSpotDAO);
+        journalFlusher.recover();
+        return journalFlusher;
+    }
+
+    /**
+     * With {@code -Dparkit.archive.dir}, tickets closed for more than {@code parkit.archive.afterDays} days are moved
+     * to a {@link TicketArchive} in that directory once a day.
+     */
+    private static void enableTicketArchive(TicketDAO ticketDAO, DataBaseConfig dataBaseConfig, String facilityId)
+    {
+        String archiveDir = System.getProperty("parkit.archive.dir");
+        if (archiveDir == null)
+        {
+            return;
+        }
+        archiveDir = facilityDir(archiveDir, dataBaseConfig, facilityId);
+        TicketArchive archive;
+        try
+        {
+            archive = TicketArchive.open(Paths.get(archiveDir));
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to open the ticket archive in " + archiveDir + ", tickets are not archived", e);
+            return;
+        }
+        ticketDAO.enableTicketArchive(archive);
+        new TicketArchiver(archive, ticketDAO).start(Integer.getInteger("parkit.archive.afterDays", 365),
+                                                     Long.getLong("parkit.archive.intervalMillis", TimeUnit.DAYS.toMillis(1)));
+    }
+
+    private static void scheduleOpenTicketRegistryCheck(TicketDAO ticketDAO, long intervalMillis)
+    {
+        if (intervalMillis <= 0)
+        {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "open-ticket-registry-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(ticketDAO::checkOpenTicketRegistry, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the zone of the days of the reports, {@code -Dparkit.report.zone} or the system zone
+     */
+    public static ZoneId reportZone()
+    {
+        return ZoneId.of(System.getProperty("parkit.report.zone", ZoneId.systemDefault().getId()));
+    }
+
+    private static FareEngine createFareEngine()
+    {
+        FareEngine fareEngine = new FareEngine();
+        String tariffFile = System.getProperty("parkit.tariff.file");
+        if (tariffFile != null)
+        {
+            // the reloader thread is a daemon, it lives as long as the app
+            new TariffReloader(Paths.get(tariffFile), fareEngine).start(Long.getLong("parkit.tariff.reloadIntervalMillis", 10_000L));
+        }
+        return fareEngine;
+    }
+
+    /**
+     * {@code -Dparkit.metrics.port=9404} serves the metrics for Prometheus on {@code /metrics} of that port;
+     * the HTTP gate API also serves them on its own port.
+     */
+    private synchronized void startMetricsEndpoint()
+    {
+        Integer port = Integer.getInteger("parkit.metrics.port");
+        if (port == null || metricsServer != null)
+        {
+            return;
+        }
+        try
+        {
+            metricsServer = HttpServer.create(new InetSocketAddress(port), 0);
+            metricsServer.createContext("/metrics", new PrometheusHandler(ParkingMetrics.getDefault()));
+            metricsServer.start();
+            logger.info("Metrics served on port " + port);
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to serve the metrics on port " + port, e);
+        }
+    }
+
+    /**
+     * Stops the metrics endpoint, whose dispatcher thread would keep the JVM alive.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (metricsServer != null)
+        {
+            metricsServer.stop(0);
+            metricsServer = null;
+        }
+    }
+}
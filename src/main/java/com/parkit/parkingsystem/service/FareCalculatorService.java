@@ -1,12 +1,24 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.model.Ticket;
 
-import java.time.Duration;
-
+/**
+ * Fills in the price of a {@link Ticket}, the computation itself is done in cents by {@link FareEngine}.
+ */
 public class FareCalculatorService
 {
+    private final FareEngine fareEngine;
+
+    public FareCalculatorService()
+    {
+        this(new FareEngine());
+    }
+
+    public FareCalculatorService(FareEngine fareEngine)
+    {
+        this.fareEngine = fareEngine;
+    }
+
     public void calculateFare(Ticket ticket)
     {
         calculateFare(ticket,  false);
@@ -19,42 +31,15 @@ public class FareCalculatorService
             throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
         }
 
+        long priceCents = fareEngine.priceCents(ticket.getParkingSpot().getParkingType(),
+                                                ticket.getInTime().getTime(),
+                                                ticket.getOutTime().getTime(),
+                                                isRecurrentUser);
+        ticket.setPrice(priceCents / 100.0);
+    }
 
-        //TODO: Some tests are failing here. Need to check if this logic is correct
-
-
-        Duration parkDuration = Duration.between(ticket.getInTime().toInstant(), ticket.getOutTime().toInstant());
-
-
-        double parkDurationInHours = parkDuration.toHours() + ((double)(parkDuration.minusHours(parkDuration.toHours()).toMinutes())/60);
-
-        if(parkDurationInHours > 0.5)
-        {
-            switch (ticket.getParkingSpot().getParkingType())
-            {
-                case CAR:
-                {
-                    ticket.setPrice(parkDurationInHours * Fare.CAR_RATE_PER_HOUR);
-                    break;
-                }
-                case BIKE:
-                {
-                    ticket.setPrice(parkDurationInHours * Fare.BIKE_RATE_PER_HOUR);
-                    break;
-                }
-                default:
-                    throw new IllegalArgumentException("Unkown Parking Type");
-            }
-
-            if(isRecurrentUser)
-            {
-                System.out.println("As a recurring user you have just received a discount of 5%.");
-                ticket.setPrice(ticket.getPrice()*0.95);
-            }
-        }
-        else
-        {
-            ticket.setPrice(0);
-        }
+    public long getRecurringDiscountPercent()
+    {
+        return fareEngine.getTariff().getRecurringDiscountPercent();
     }
-}
\ No newline at end of file
+}
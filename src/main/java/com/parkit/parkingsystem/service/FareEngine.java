@@ -0,0 +1,51 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * Computes the price of a stay in cents from epoch millis, with the {@link Tariff} currently in force.
+ * <p>
+ * The tariff can be replaced at any time with {@link #setTariff(Tariff)}: exits being priced keep the tariff they
+ * started with and the next ones pick up the new one, nobody waits for the swap. Pricing with a flat tariff, the
+ * default, allocates nothing.
+ */
+public class FareEngine
+{
+    public static final long FREE_MINUTES = 30;
+    public static final long RECURRING_USER_DISCOUNT_PERCENT = 5;
+
+    private volatile Tariff tariff;
+
+    public FareEngine()
+    {
+        this(Tariff.standard());
+    }
+
+    public FareEngine(Tariff tariff)
+    {
+        setTariff(tariff);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the vehicle left before it came in
+     * @throws NullPointerException when the parking type is null
+     */
+    public long priceCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis, boolean isRecurrentUser)
+    {
+        return tariff.priceCents(parkingType, inTimeMillis, outTimeMillis, isRecurrentUser);
+    }
+
+    public Tariff getTariff()
+    {
+        return tariff;
+    }
+
+    public void setTariff(Tariff tariff)
+    {
+        if (tariff == null)
+        {
+            throw new IllegalArgumentException("Tariff must not be null");
+        }
+        this.tariff = tariff;
+    }
+}
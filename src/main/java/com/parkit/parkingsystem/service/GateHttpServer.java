@@ -0,0 +1,430 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import com.parkit.parkingsystem.metrics.PrometheusHandler;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.Ticket;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/JSON front of the {@link ParkingService} for the barrier hardware, on the JDK HTTP server.
+ * <p>
+ * <pre>
+ * POST /entry?type=CAR&amp;plate=AB-123-CD   201 entered, 409 already parked or parking full
+ * POST /exit?plate=AB-123-CD               200 exited with the price, 404 not in the parking
+ * GET  /tickets/AB-123-CD                  200 last ticket of the vehicle, 404 none
+ * GET  /occupancy[?type=CAR]               200 total, free and occupied spots per type
+ * GET  /metrics                            200 latencies and failure counters, for Prometheus
+ * </pre>
+ * Parameters are read from the query string or from a form-encoded body. A gate names itself with the
+ * {@code X-Gate-Id} header, which is put in the logging context like the console gates and keys its read-your-writes
+ * session on the read replicas. Without it the remote address is logged instead, which changes with every connection:
+ * the reads of such a request all go to the primary.
+ * <p>
+ * A server of several {@link Facilities} needs the facility of every request but {@code /metrics}, in the
+ * {@code facility} parameter or the {@code X-Facility-Id} header, 400 otherwise. Each facility may only use part of
+ * the pool: a request beyond its share gets a 503 with {@code Retry-After} at once, so that a busy lot never holds
+ * all the threads while the requests of a quiet one wait behind it.
+ * <p>
+ * Connections are accepted and parsed by the single dispatcher thread of the server; requests run on a bounded
+ * pool. When the pool and its queue are both full, the dispatcher runs the request itself and stops accepting
+ * until it is done, which pushes the excess back to the clients instead of queueing it without limit.
+ */
+public class GateHttpServer implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("GateHttpServer");
+
+    static
+    {
+        // without it, every answer on a kept-alive connection waits for the delayed ACK of the client (~40 ms);
+        // read once by the JDK server, so it has to be set before the first one is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+        {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Facilities facilities;
+    private final Map<String, Semaphore> bulkheads = new HashMap<>();
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+
+    public GateHttpServer(ParkingService parkingService, InetSocketAddress address, int threads, int queueCapacity) throws IOException
+    {
+        this(Facilities.single(parkingService), address, threads, queueCapacity, threads);
+    }
+
+    /**
+     * @param facilityThreads most requests of one facility served at the same time
+     */
+    public GateHttpServer(Facilities facilities, InetSocketAddress address, int threads, int queueCapacity, int facilityThreads) throws IOException
+    {
+        this.facilities = facilities;
+        for (Facility facility : facilities.getAll())
+        {
+            bulkheads.put(facility.getId(), new Semaphore(Math.max(1, facilityThreads)));
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r ->
+        {
+            Thread thread = new Thread(r, "gate-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/entry", handler("POST", this::entry));
+        server.createContext("/exit", handler("POST", this::exit));
+        server.createContext("/tickets/", handler("GET", this::ticket));
+        server.createContext("/occupancy", handler("GET", this::occupancy));
+        server.createContext("/metrics", new PrometheusHandler(ParkingMetrics.getDefault()));
+    }
+
+    public void start()
+    {
+        server.start();
+    }
+
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, lets the running ones finish for up to a second, then stops the pool.
+     */
+    @Override
+    public void close()
+    {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private interface Endpoint
+    {
+        Response handle(HttpExchange exchange, ParkingService parkingService, Map<String, String> parameters);
+    }
+
+    private static final class Response
+    {
+        final int status;
+        final String body;
+
+        Response(int status, String body)
+        {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private HttpHandler handler(String method, Endpoint endpoint)
+    {
+        return exchange ->
+        {
+            String gateId = exchange.getRequestHeaders().getFirst("X-Gate-Id");
+            if (gateId != null)
+            {
+                ThreadContext.put("gate", gateId);
+            }
+            else
+            {
+                ThreadContext.put("gate", exchange.getRemoteAddress().toString());
+                ThreadContext.put(DataBaseConfig.NO_SESSION, "true");
+            }
+            try
+            {
+                Response response;
+                if (!method.equals(exchange.getRequestMethod()))
+                {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    response = error(405, "Method " + exchange.getRequestMethod() + " is not allowed");
+                }
+                else
+                {
+                    try
+                    {
+                        response = serve(exchange, endpoint, readParameters(exchange));
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        response = error(400, e.getMessage());
+                    }
+                    catch (RuntimeException e)
+                    {
+                        logger.error("Error serving " + exchange.getRequestURI(), e);
+                        response = error(500, "Internal error");
+                    }
+                }
+                send(exchange, response);
+            }
+            finally
+            {
+                ThreadContext.remove("gate");
+                ThreadContext.remove(DataBaseConfig.NO_SESSION);
+                exchange.close();
+            }
+        };
+    }
+
+    private Response serve(HttpExchange exchange, Endpoint endpoint, Map<String, String> parameters)
+    {
+        Facility facility = facility(exchange, parameters);
+        Semaphore bulkhead = bulkheads.get(facility.getId());
+        if (!bulkhead.tryAcquire())
+        {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            return error(503, "Facility " + facility.getId() + " is busy");
+        }
+        ThreadContext.put("facility", facility.getId());
+        try
+        {
+            return endpoint.handle(exchange, facility.getParkingService(), parameters);
+        }
+        finally
+        {
+            ThreadContext.remove("facility");
+            bulkhead.release();
+        }
+    }
+
+    private Facility facility(HttpExchange exchange, Map<String, String> parameters)
+    {
+        String facilityId = parameters.get("facility");
+        if (facilityId == null)
+        {
+            facilityId = exchange.getRequestHeaders().getFirst("X-Facility-Id");
+        }
+        if (facilityId == null || facilityId.trim().isEmpty())
+        {
+            if (facilities.size() > 1)
+            {
+                throw new IllegalArgumentException("Missing parameter facility");
+            }
+            return facilities.getDefault();
+        }
+        return facilities.get(facilityId.trim());
+    }
+
+    private Response entry(HttpExchange exchange, ParkingService parkingService, Map<String, String> parameters)
+    {
+        ParkingType parkingType = parkingType(required(parameters, "type"));
+        EntryResult result = parkingService.enter(parkingType, required(parameters, "plate"));
+        switch (result.getStatus())
+        {
+            case ENTERED:
+                return new Response(201, "{\"status\":\"ENTERED\",\"recurringUser\":" + result.isRecurringUser()
+                                         + ",\"ticket\":" + json(result.getTicket()) + "}");
+            case ALREADY_PARKED:
+            case PARKING_FULL:
+                return new Response(409, status(result.getStatus().name(), result.getMessage()));
+            default:
+                return new Response(500, status(result.getStatus().name(), result.getMessage()));
+        }
+    }
+
+    private Response exit(HttpExchange exchange, ParkingService parkingService, Map<String, String> parameters)
+    {
+        ExitResult result = parkingService.exitAsync(required(parameters, "plate")).join();
+        switch (result.getStatus())
+        {
+            case EXITED:
+                return new Response(200, "{\"status\":\"EXITED\",\"recurringUser\":" + result.isRecurringUser()
+                                         + ",\"spotFreed\":" + result.isSpotFreed()
+                                         + ",\"ticket\":" + json(result.getTicket()) + "}");
+            case NOT_PARKED:
+                return new Response(404, status(result.getStatus().name(), result.getMessage()));
+            default:
+                return new Response(500, status(result.getStatus().name(), result.getMessage()));
+        }
+    }
+
+    private Response ticket(HttpExchange exchange, ParkingService parkingService, Map<String, String> parameters)
+    {
+        String path = exchange.getRequestURI().getPath();
+        String vehicleRegNumber = path.substring("/tickets/".length());
+        if (vehicleRegNumber.isEmpty())
+        {
+            throw new IllegalArgumentException("Missing vehicle registration number");
+        }
+        Ticket ticket = parkingService.getTicket(vehicleRegNumber);
+        if (ticket == null)
+        {
+            return error(404, "No ticket for vehicle " + vehicleRegNumber);
+        }
+        return new Response(200, json(ticket));
+    }
+
+    private Response occupancy(HttpExchange exchange, ParkingService parkingService, Map<String, String> parameters)
+    {
+        String type = parameters.get("type");
+        if (type != null)
+        {
+            Occupancy occupancy = parkingService.getOccupancy(parkingType(type));
+            return occupancy == null ? error(500, "Occupancy is not available") : new Response(200, json(occupancy));
+        }
+        StringBuilder body = new StringBuilder("[");
+        for (ParkingType parkingType : ParkingType.values())
+        {
+            Occupancy occupancy = parkingService.getOccupancy(parkingType);
+            if (occupancy == null)
+            {
+                return error(500, "Occupancy is not available");
+            }
+            if (body.length() > 1)
+            {
+                body.append(',');
+            }
+            body.append(json(occupancy));
+        }
+        return new Response(200, body.append(']').toString());
+    }
+
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IllegalArgumentException
+    {
+        Map<String, String> parameters = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), parameters);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded"))
+        {
+            try (InputStream in = exchange.getRequestBody())
+            {
+                parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8), parameters);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalArgumentException("Unreadable request body", e);
+            }
+        }
+        return parameters;
+    }
+
+    private static void parseForm(String form, Map<String, String> parameters)
+    {
+        if (form == null || form.isEmpty())
+        {
+            return;
+        }
+        for (String pair : form.split("&"))
+        {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+            {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                               URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static String required(Map<String, String> parameters, String name)
+    {
+        String value = parameters.get(name);
+        if (value == null || value.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value.trim();
+    }
+
+    private static ParkingType parkingType(String type)
+    {
+        try
+        {
+            return ParkingType.valueOf(type.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown parking type " + type);
+        }
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException
+    {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    private static Response error(int status, String message)
+    {
+        return new Response(status, "{\"error\":" + quote(message) + "}");
+    }
+
+    private static String status(String status, String message)
+    {
+        return "{\"status\":\"" + status + "\",\"message\":" + quote(message) + "}";
+    }
+
+    static String json(Ticket ticket)
+    {
+        return "{\"id\":" + ticket.getId()
+               + ",\"vehicleRegNumber\":" + quote(ticket.getVehicleRegNumber())
+               + ",\"parkingNumber\":" + ticket.getParkingSpot().getId()
+               + ",\"type\":\"" + ticket.getParkingSpot().getParkingType() + "\""
+               + ",\"inTime\":" + (ticket.getInTime() == null ? "null" : quote(ticket.getInTime().toInstant().toString()))
+               + ",\"outTime\":" + (ticket.getOutTime() == null ? "null" : quote(ticket.getOutTime().toInstant().toString()))
+               + ",\"price\":" + ticket.getPrice() + "}";
+    }
+
+    static String json(Occupancy occupancy)
+    {
+        return "{\"type\":\"" + occupancy.getParkingType() + "\",\"total\":" + occupancy.getTotal() + ",\"free\":"
+               + occupancy.getFree() + ",\"occupied\":" + occupancy.getOccupied() + "}";
+    }
+
+    private static String quote(String value)
+    {
+        if (value == null)
+        {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.io.PrintStream;
+
+/**
+ * Menu loop of one gate: reads the choices of the gate from its own input and answers on its own output.
+ * Several sessions can run at the same time against one shared {@link ParkingService}.
+ */
+public class GateSession implements Runnable
+{
+    private static final Logger logger = LogManager.getLogger("GateSession");
+
+    private final String gateId;
+    private final ParkingService parkingService;
+    private final InputReaderUtil inputReaderUtil;
+    private final PrintStream out;
+
+    public GateSession(String gateId, ParkingService parkingService, InputReaderUtil inputReaderUtil, PrintStream out)
+    {
+        this.gateId = gateId;
+        this.parkingService = parkingService;
+        this.inputReaderUtil = inputReaderUtil;
+        this.out = out;
+    }
+
+    public String getGateId()
+    {
+        return gateId;
+    }
+
+    @Override
+    public void run()
+    {
+        ThreadContext.put("gate", gateId);
+        logger.info("Gate " + gateId + " opened");
+        try
+        {
+            boolean continueSession = true;
+            while (continueSession)
+            {
+                loadMenu();
+                if (!inputReaderUtil.hasMoreInput())
+                {
+                    break;
+                }
+                int option = inputReaderUtil.readSelection();
+                switch (option)
+                {
+                    case 1:
+                    {
+                        parkingService.processIncomingVehicle(inputReaderUtil, out);
+                        break;
+                    }
+                    case 2:
+                    {
+                        parkingService.processExitingVehicle(inputReaderUtil, out);
+                        break;
+                    }
+                    case 3:
+                    {
+                        out.println("Exiting from the system!");
+                        continueSession = false;
+                        break;
+                    }
+                    default:
+                        out.println("Unsupported option. Please enter a number corresponding to the provided menu");
+                }
+                out.flush();
+            }
+        }
+        finally
+        {
+            logger.info("Gate " + gateId + " closed");
+            ThreadContext.remove("gate");
+        }
+    }
+
+    private void loadMenu()
+    {
+        out.println("Please select an option. Simply enter the number to choose an action");
+        out.println("1 New Vehicle Entering - Allocate Parking Space");
+        out.println("2 Vehicle Exiting - Generate Ticket Price");
+        out.println("3 Shutdown System");
+        out.flush();
+    }
+}
@@ -0,0 +1,67 @@
+package com.parkit.parkingsystem.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs up to {@code maxGates} {@link GateSession}s at the same time, one thread per open gate.
+ * Sessions are long running, so a session beyond the limit is rejected rather than queued behind another gate.
+ */
+public class GateSessionExecutor
+{
+    private static final Logger logger = LogManager.getLogger("GateSessionExecutor");
+
+    private final ThreadPoolExecutor executor;
+
+    public GateSessionExecutor(int maxGates)
+    {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, maxGates,
+                                               60, TimeUnit.SECONDS,
+                                               new SynchronousQueue<>(),
+                                               runnable -> new Thread(runnable, "gate-" + threadNumber.incrementAndGet()));
+    }
+
+    /**
+     * @throws RejectedExecutionException when every gate slot is busy or the executor is shut down
+     */
+    public Future<?> open(GateSession session)
+    {
+        Future<?> future = executor.submit(() ->
+        {
+            try
+            {
+                session.run();
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Gate " + session.getGateId() + " stopped unexpectedly", e);
+                throw e;
+            }
+        });
+        logger.info("Gate " + session.getGateId() + " started, " + getOpenGates() + " gate(s) open");
+        return future;
+    }
+
+    public int getOpenGates()
+    {
+        return executor.getActiveCount();
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -1,11 +1,23 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
@@ -14,39 +26,109 @@ public class InteractiveShell {
         logger.info("App initialized!!!");
         System.out.println("Welcome to Parking System!");
 
-        boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-
-        while(continueApp){
-            loadMenu();
-            int option = inputReaderUtil.readSelection();
-            switch(option){
-                case 1: {
-                    parkingService.processIncomingVehicle();
-                    break;
-                }
-                case 2: {
-                    parkingService.processExitingVehicle();
-                    break;
-                }
-                case 3: {
-                    System.out.println("Exiting from the system!");
-                    continueApp = false;
-                    break;
+        try(FacilityBootstrap bootstrap = new FacilityBootstrap()){
+            ParkingService parkingService = bootstrap.createFacilities(inputReaderUtil).getDefault().getParkingService();
+            new GateSession("console", parkingService, inputReaderUtil, System.out).run();
+        }
+    }
+
+    /**
+     * Serves every gate of the facility from this process: each TCP connection on {@code port} is one gate,
+     * running its own menu loop concurrently with the others. With several facilities, the first one is served.
+     */
+    public static void listenForGates(int port, int maxGates) throws IOException {
+        logger.info("App initialized, listening for gates on port " + port);
+
+        ParkingService parkingService = new FacilityBootstrap().createFacilities(new InputReaderUtil()).getDefault().getParkingService();
+        GateSessionExecutor gates = new GateSessionExecutor(maxGates);
+
+        try(ServerSocket serverSocket = new ServerSocket(port)){
+            while(!serverSocket.isClosed()){
+                Socket socket = serverSocket.accept();
+                String gateId = socket.getRemoteSocketAddress().toString();
+                PrintStream out = new PrintStream(socket.getOutputStream(), false, StandardCharsets.UTF_8.name());
+                out.println("Welcome to Parking System!");
+                InputReaderUtil input = new InputReaderUtil(socket.getInputStream(), out);
+                try{
+                    gates.open(new GateSession(gateId, parkingService, input, out){
+                        @Override
+                        public void run(){
+                            try{
+                                super.run();
+                            }finally{
+                                closeQuietly(socket);
+                            }
+                        }
+                    });
+                }catch(RejectedExecutionException e){
+                    logger.warn("Refusing gate " + gateId + ", " + maxGates + " gates are already open");
+                    out.println("Too many gates are open, please retry later");
+                    out.flush();
+                    closeQuietly(socket);
                 }
-                default: System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
             }
+        }finally{
+            gates.shutdown();
         }
     }
 
-    private static void loadMenu(){
-        System.out.println("Please select an option. Simply enter the number to choose an action");
-        System.out.println("1 New Vehicle Entering - Allocate Parking Space");
-        System.out.println("2 Vehicle Exiting - Generate Ticket Price");
-        System.out.println("3 Shutdown System");
+    /**
+     * Serves the gates over HTTP/JSON until the process is stopped. Each facility serves at most
+     * {@code parkit.http.facilityThreads} requests at a time, half the pool by default when there are several.
+     */
+    public static void serveHttp(int port) throws IOException, InterruptedException {
+        Facilities facilities = new FacilityBootstrap().createFacilities(new InputReaderUtil());
+        int threads = Integer.getInteger("parkit.http.threads", 32);
+        GateHttpServer server = new GateHttpServer(facilities, new InetSocketAddress(port), threads,
+                                                   Integer.getInteger("parkit.http.queue", 256),
+                                                   Integer.getInteger("parkit.http.facilityThreads",
+                                                                      facilities.size() > 1 ? Math.max(1, threads / 2) : threads));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "gate-http-stop"));
+        server.start();
+        logger.info("App initialized, gate API listening on port " + server.getPort());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * {@code report <from> <to> [csv|json] [partitions]}: writes the revenue report of the days from {@code from}
+     * included to {@code to} excluded on the standard output, in the zone of {@code -Dparkit.report.zone}. With
+     * {@code -Dparkit.facilities}, the facilities are reported in parallel, each on its shard, and the report is their sum.
+     */
+    public static void printReport(String[] args) throws IOException{
+        if(args.length < 3){
+            System.err.println("Usage: report <from> <to> [csv|json] [partitions]");
+            return;
+        }
+        String format = args.length > 3 ? args[3] : "csv";
+        int partitions = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        LocalDate from = LocalDate.parse(args[1]);
+        LocalDate to = LocalDate.parse(args[2]);
+        RevenueReport report = new RevenueReport(from, to, FacilityBootstrap.reportZone());
+        try{
+            Facilities facilities = new FacilityBootstrap().createReportFacilities();
+            for(Map.Entry<String, RevenueReport> facilityReport : facilities.revenueReports(from, to, partitions).entrySet()){
+                logger.info("Revenue report of facility " + facilityReport.getKey() + " built");
+                report.merge(facilityReport.getValue());
+            }
+        }catch(SQLException | ClassNotFoundException | IOException e){
+            logger.error("Error building the revenue report", e);
+            return;
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        if("json".equals(format)){
+            report.writeJson(out);
+        }else{
+            report.writeCsv(out);
+        }
+    }
+
+    private static void closeQuietly(Socket socket){
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.error("Error while closing gate connection", e);
+        }
     }
 
 }
@@ -1,92 +1,299 @@
 package com.parkit.parkingsystem.service;
 
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.AsyncParkingRepository;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import com.parkit.parkingsystem.model.Occupancy;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.PrintStream;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Entry and exit flows of the parking.
+ * <p>
+ * {@link #enter(ParkingType, String)} and {@link #exit(String)} take their arguments and return a result, without
+ * reading or printing anything; the {@code process...} methods are the console flows on top of them, given the
+ * input and output of the gate they serve. The service holds no per-gate state, so a single instance can be
+ * shared by all the {@link GateSession}s and HTTP requests of the process.
+ */
 public class ParkingService
 {
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static final FareCalculatorService fareCalculatorService = new FareCalculatorService();
-
     private final InputReaderUtil inputReaderUtil;
-    private final ParkingSpotDAO parkingSpotDAO;
-    private final TicketDAO ticketDAO;
+    private final SpotRepository spotRepository;
+    private final TicketRepository ticketRepository;
+    private final FareCalculatorService fareCalculatorService;
+    private final ParkingMetrics metrics = ParkingMetrics.getDefault();
+    private volatile AsyncParkingRepository asyncRepository;
+
+    public ParkingService(InputReaderUtil inputReaderUtil, SpotRepository spotRepository, TicketRepository ticketRepository)
+    {
+        this(inputReaderUtil, spotRepository, ticketRepository, new FareCalculatorService());
+    }
 
-    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO)
+    public ParkingService(InputReaderUtil inputReaderUtil, SpotRepository spotRepository, TicketRepository ticketRepository,
+                          FareCalculatorService fareCalculatorService)
     {
         this.inputReaderUtil = inputReaderUtil;
-        this.parkingSpotDAO = parkingSpotDAO;
-        this.ticketDAO = ticketDAO;
+        this.spotRepository = spotRepository;
+        this.ticketRepository = ticketRepository;
+        this.fareCalculatorService = fareCalculatorService;
     }
 
-    public void processIncomingVehicle()
+    /**
+     * Runs the calls of {@link #exitAsync(String)} on {@code threads} JDBC threads, with {@code queueCapacity} calls
+     * waiting at most, instead of one after another on the thread of the gate.
+     */
+    public void enableAsyncExits(int threads, int queueCapacity)
+    {
+        AsyncParkingRepository previous = asyncRepository;
+        asyncRepository = new AsyncParkingRepository(ticketRepository, spotRepository, threads, queueCapacity);
+        if (previous != null)
+        {
+            previous.close();
+        }
+    }
+
+    public void disableAsyncExits()
+    {
+        AsyncParkingRepository previous = asyncRepository;
+        asyncRepository = null;
+        if (previous != null)
+        {
+            previous.close();
+        }
+    }
+
+    /**
+     * Lets a vehicle in without any console: the lowest free spot of the type is taken and a ticket opened on it.
+     */
+    public EntryResult enter(ParkingType parkingType, String vehicleRegNumber)
     {
-        Ticket ticket;
+        long start = System.nanoTime();
         try
         {
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if (parkingSpot != null && parkingSpot.getId() > 0)
+            boolean recurringUser = ticketRepository.isRecurringUser(vehicleRegNumber);
+            Ticket ticket = spotRepository.allocateSpot(parkingType, vehicleRegNumber);
+            if (ticket == null)
             {
-                String vehicleRegNumber = getVehicleRegNumber();
-
-                if(ticketDAO.isRecurringUser(vehicleRegNumber))
-                {
-                    System.out.println("Welcome back! As a recurring user of our parking lot, you'll benefit from a 5% discount.");
-                }
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark its availability as false
-
-                Date inTime = new Date();
-                ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveNewTicket(ticket);
-                System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+                metrics.parkingFull();
+                return EntryResult.refused(EntryResult.Status.PARKING_FULL, "No " + parkingType + " parking spot is available");
             }
+            return EntryResult.entered(ticket, recurringUser);
         }
         catch (IllegalStateException e)
         {
-            System.out.println(e.getMessage());
+            metrics.alreadyParked();
+            return EntryResult.refused(EntryResult.Status.ALREADY_PARKED, e.getMessage());
         }
-        catch (Exception e)
+        catch (RuntimeException e)
         {
             logger.error("Unable to process incoming vehicle", e);
+            return EntryResult.refused(EntryResult.Status.ERROR, "Unable to process incoming vehicle");
+        }
+        finally
+        {
+            metrics.recordEntry(System.nanoTime() - start);
         }
     }
 
+    /**
+     * Lets a vehicle out without any console: its ticket is priced and closed and its spot freed.
+     */
+    public ExitResult exit(String vehicleRegNumber)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            Ticket ticket = ticketRepository.getOpenTicket(vehicleRegNumber);
+            if (ticket == null)
+            {
+                return ExitResult.refused(ExitResult.Status.NOT_PARKED,
+                                          "No vehicle with registration number " + vehicleRegNumber + " is in the parking");
+            }
+            ticket.setOutTime(new Date());
+            boolean recurringUser = ticketRepository.isRecurringUser(vehicleRegNumber);
+            fareCalculatorService.calculateFare(ticket, recurringUser);
 
+            if (!ticketRepository.updateTicket(ticket))
+            {
+                return notUpdated(vehicleRegNumber, ticketRepository.getOpenTicket(vehicleRegNumber));
+            }
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            return exited(ticket, recurringUser, spotRepository.updateParking(parkingSpot));
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Unable to process exiting vehicle", e);
+            return ExitResult.refused(ExitResult.Status.ERROR, "Unable to process exiting vehicle");
+        }
+        finally
+        {
+            metrics.recordExit(System.nanoTime() - start);
+        }
+    }
 
+    /**
+     * {@link #exit(String)} as a graph of futures: the open ticket and the recurring user check are read at the same
+     * time, then the ticket is closed and only then the spot freed. Without {@link #enableAsyncExits(int, int)}, the
+     * synchronous exit on the calling thread. The future never fails, errors are an {@link ExitResult.Status#ERROR}.
+     */
+    public CompletableFuture<ExitResult> exitAsync(String vehicleRegNumber)
+    {
+        AsyncParkingRepository async = asyncRepository;
+        if (async == null)
+        {
+            return CompletableFuture.completedFuture(exit(vehicleRegNumber));
+        }
+        long start = System.nanoTime();
+        // the writes are submitted from JDBC threads, they would run without the gate and its read-your-writes session
+        Map<String, String> context = AsyncParkingRepository.captureContext();
+        CompletableFuture<Ticket> openTicket = async.getOpenTicket(context, vehicleRegNumber);
+        CompletableFuture<Boolean> recurringUser = async.isRecurringUser(context, vehicleRegNumber);
+        return openTicket.thenCombine(recurringUser, (ticket, recurring) ->
+        {
+            if (ticket != null)
+            {
+                ticket.setOutTime(new Date());
+                fareCalculatorService.calculateFare(ticket, recurring);
+            }
+            return ticket;
+        }).thenCompose(ticket ->
+        {
+            if (ticket == null)
+            {
+                return CompletableFuture.completedFuture(ExitResult.refused(ExitResult.Status.NOT_PARKED,
+                        "No vehicle with registration number " + vehicleRegNumber + " is in the parking"));
+            }
+            return async.updateTicket(context, ticket).thenCompose(updated ->
+            {
+                if (!updated)
+                {
+                    return async.getOpenTicket(context, vehicleRegNumber).thenApply(open -> notUpdated(vehicleRegNumber, open));
+                }
+                ParkingSpot parkingSpot = ticket.getParkingSpot();
+                parkingSpot.setAvailable(true);
+                return async.updateParking(context, parkingSpot).thenApply(freed -> exited(ticket, recurringUser.join(), freed));
+            });
+        }).exceptionally(e ->
+        {
+            logger.error("Unable to process exiting vehicle", e);
+            return ExitResult.refused(ExitResult.Status.ERROR, "Unable to process exiting vehicle");
+        }).whenComplete((result, e) -> metrics.recordExit(System.nanoTime() - start));
+    }
+
+    /**
+     * The ticket could not be closed: when it is no longer open, another gate let the vehicle out meanwhile.
+     */
+    private static ExitResult notUpdated(String vehicleRegNumber, Ticket openTicket)
+    {
+        if (openTicket == null)
+        {
+            return ExitResult.refused(ExitResult.Status.NOT_PARKED,
+                                      "No vehicle with registration number " + vehicleRegNumber + " is in the parking");
+        }
+        return ExitResult.refused(ExitResult.Status.ERROR, "Unable to update ticket information. Error occurred");
+    }
+
+    private static ExitResult exited(Ticket ticket, boolean recurringUser, boolean spotFreed)
+    {
+        if (!spotFreed)
+        {
+            // the vehicle has paid and left, only the spot stays taken until it is freed by hand
+            logger.error("Ticket of vehicle {} closed but parking spot {} could not be freed",
+                         ticket.getVehicleRegNumber(), ticket.getParkingSpot().getId());
+        }
+        return ExitResult.exited(ticket, recurringUser, spotFreed);
+    }
+
+    /**
+     * @return the most recent ticket of the vehicle, open or not, or null
+     */
+    public Ticket getTicket(String vehicleRegNumber)
+    {
+        return ticketRepository.getTicket(vehicleRegNumber);
+    }
+
+    /**
+     * @return the occupancy of the type, or null when it could not be read
+     */
+    public Occupancy getOccupancy(ParkingType parkingType)
+    {
+        return spotRepository.getOccupancy(parkingType);
+    }
+
+    public void processIncomingVehicle()
+    {
+        processIncomingVehicle(inputReaderUtil, System.out);
+    }
+
+    public void processIncomingVehicle(InputReaderUtil input, PrintStream out)
+    {
+        try
+        {
+            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable(input, out);
+            if (parkingSpot != null && parkingSpot.getId() > 0)
+            {
+                String vehicleRegNumber = getVehicleRegNumber(input, out);
+                // the spot is claimed when the ticket is saved, another gate may have taken the spot seen above
+                EntryResult result = enter(parkingSpot.getParkingType(), vehicleRegNumber);
+                switch (result.getStatus())
+                {
+                    case ENTERED:
+                        Ticket ticket = result.getTicket();
+                        if (result.isRecurringUser())
+                        {
+                            out.println("Welcome back! As a recurring user of our parking lot, you'll benefit from a "
+                                        + fareCalculatorService.getRecurringDiscountPercent() + "% discount.");
+                        }
+                        out.println("Generated Ticket and saved in DB");
+                        out.println("Please park your vehicle in spot number:" + ticket.getParkingSpot().getId());
+                        out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + ticket.getInTime());
+                        break;
+                    case PARKING_FULL:
+                        out.println("Sorry, no " + parkingSpot.getParkingType() + " parking spot is available anymore");
+                        break;
+                    default:
+                        out.println(result.getMessage());
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("Unable to process incoming vehicle", e);
+        }
+    }
 
-    private String getVehicleRegNumber() throws Exception
+    private String getVehicleRegNumber(InputReaderUtil input, PrintStream out) throws Exception
     {
-        System.out.println("Please type the vehicle registration number and press enter key");
-        return inputReaderUtil.readVehicleRegistrationNumber();
+        out.println("Please type the vehicle registration number and press enter key");
+        return input.readVehicleRegistrationNumber();
     }
 
     public ParkingSpot getNextParkingNumberIfAvailable()
+    {
+        return getNextParkingNumberIfAvailable(inputReaderUtil, System.out);
+    }
+
+    public ParkingSpot getNextParkingNumberIfAvailable(InputReaderUtil input, PrintStream out)
     {
         int parkingNumber;
         ParkingSpot parkingSpot = null;
         try
         {
-            ParkingType parkingType = getVehicleType();
-            parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+            ParkingType parkingType = getVehicleType(input, out);
+            parkingNumber = spotRepository.getNextAvailableSlot(parkingType);
             if (parkingNumber > 0)
             {
                 parkingSpot = new ParkingSpot(parkingNumber, parkingType, true);
@@ -107,13 +314,13 @@ public class ParkingService
         return parkingSpot;
     }
 
-    private ParkingType getVehicleType()
+    private ParkingType getVehicleType(InputReaderUtil input, PrintStream out)
     {
-        System.out.println("Please select vehicle type from menu");
-        System.out.println("1 CAR");
-        System.out.println("2 BIKE");
-        int input = inputReaderUtil.readSelection();
-        switch (input)
+        out.println("Please select vehicle type from menu");
+        out.println("1 CAR");
+        out.println("2 BIKE");
+        int selection = input.readSelection();
+        switch (selection)
         {
             case 1:
             {
@@ -125,7 +332,7 @@ public class ParkingService
             }
             default:
             {
-                System.out.println("Incorrect input provided");
+                out.println("Incorrect input provided");
                 throw new IllegalArgumentException("Entered input is invalid");
             }
         }
@@ -133,27 +340,31 @@ public class ParkingService
 
 
     public void processExitingVehicle()
+    {
+        processExitingVehicle(inputReaderUtil, System.out);
+    }
+
+    public void processExitingVehicle(InputReaderUtil input, PrintStream out)
     {
         try
         {
-            String vehicleRegNumber = getVehicleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
-
-            fareCalculatorService.calculateFare(ticket, ticketDAO.isRecurringUser(vehicleRegNumber));
-
-            if (ticketDAO.updateTicket(ticket))
+            ExitResult result = exitAsync(getVehicleRegNumber(input, out)).join();
+            if (result.getStatus() != ExitResult.Status.EXITED)
             {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
+                out.println(result.getMessage());
+                return;
             }
-            else
+            Ticket ticket = result.getTicket();
+            if (result.isRecurringUser() && ticket.getPrice() > 0)
+            {
+                out.println("As a recurring user you have just received a discount of "
+                            + fareCalculatorService.getRecurringDiscountPercent() + "%.");
+            }
+            out.println("Please pay the parking fare:" + ticket.getPrice());
+            out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + ticket.getOutTime());
+            if (!result.isSpotFreed())
             {
-                System.out.println("Unable to update ticket information. Error occurred");
+                out.println(result.getMessage() + ". Please inform the parking staff");
             }
         }
         catch (Exception e)
@@ -161,4 +372,4 @@ public class ParkingService
             logger.error("Unable to process exiting vehicle", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,228 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Revenue and occupancy of a date range per parking type, day and hour of exit, aggregated ticket by ticket.
+ * <p>
+ * Memory depends on the number of days only, not on the number of tickets: each (day, type, hour) bucket holds the
+ * number of tickets, the revenue in cents and the minutes parked. Reports of adjacent ranges are combined with
+ * {@link #merge(RevenueReport)}.
+ */
+public class RevenueReport
+{
+    private static final ParkingType[] TYPES = ParkingType.values();
+    private static final int HOURS = 24;
+
+    private final LocalDate from;
+    private final int days;
+    private final ZoneId zone;
+    private final long[] tickets;
+    private final long[] revenueCents;
+    private final long[] parkedMinutes;
+    private long ignored;
+
+    /**
+     * @param to first day after the range
+     */
+    public RevenueReport(LocalDate from, LocalDate to, ZoneId zone)
+    {
+        if (!from.isBefore(to))
+        {
+            throw new IllegalArgumentException("Report range is empty: " + from + " to " + to);
+        }
+        this.from = from;
+        this.days = Math.toIntExact(to.toEpochDay() - from.toEpochDay());
+        this.zone = zone;
+        int buckets = days * TYPES.length * HOURS;
+        this.tickets = new long[buckets];
+        this.revenueCents = new long[buckets];
+        this.parkedMinutes = new long[buckets];
+    }
+
+    public LocalDate getFrom()
+    {
+        return from;
+    }
+
+    public LocalDate getTo()
+    {
+        return from.plusDays(days);
+    }
+
+    public ZoneId getZone()
+    {
+        return zone;
+    }
+
+    /**
+     * Adds a closed ticket to the bucket of its exit. Tickets leaving outside the range are counted as ignored.
+     */
+    public void add(Ticket ticket)
+    {
+        ZonedDateTime out = Instant.ofEpochMilli(ticket.getOutTime().getTime()).atZone(zone);
+        long day = out.toLocalDate().toEpochDay() - from.toEpochDay();
+        if (day < 0 || day >= days)
+        {
+            ignored++;
+            return;
+        }
+        int bucket = bucket((int) day, ticket.getParkingSpot().getParkingType(), out.getHour());
+        tickets[bucket]++;
+        revenueCents[bucket] += Math.round(ticket.getPrice() * 100);
+        parkedMinutes[bucket] += (ticket.getOutTime().getTime() - ticket.getInTime().getTime()) / 60_000;
+    }
+
+    /**
+     * Adds the buckets of a report whose range is inside this one.
+     */
+    public void merge(RevenueReport other)
+    {
+        long offset = other.from.toEpochDay() - from.toEpochDay();
+        if (!zone.equals(other.zone) || offset < 0 || offset + other.days > days)
+        {
+            throw new IllegalArgumentException("Report " + other.from + " to " + other.getTo() + " cannot be merged into "
+                                               + from + " to " + getTo());
+        }
+        int shift = (int) offset * TYPES.length * HOURS;
+        for (int i = 0; i < other.tickets.length; i++)
+        {
+            tickets[shift + i] += other.tickets[i];
+            revenueCents[shift + i] += other.revenueCents[i];
+            parkedMinutes[shift + i] += other.parkedMinutes[i];
+        }
+        ignored += other.ignored;
+    }
+
+    public long getTicketCount(LocalDate day, ParkingType parkingType, int hour)
+    {
+        return tickets[bucket(day, parkingType, hour)];
+    }
+
+    public long getRevenueCents(LocalDate day, ParkingType parkingType, int hour)
+    {
+        return revenueCents[bucket(day, parkingType, hour)];
+    }
+
+    public long getParkedMinutes(LocalDate day, ParkingType parkingType, int hour)
+    {
+        return parkedMinutes[bucket(day, parkingType, hour)];
+    }
+
+    public long getTotalRevenueCents(ParkingType parkingType)
+    {
+        long total = 0;
+        for (int day = 0; day < days; day++)
+        {
+            for (int hour = 0; hour < HOURS; hour++)
+            {
+                total += revenueCents[bucket(day, parkingType, hour)];
+            }
+        }
+        return total;
+    }
+
+    public long getTotalTicketCount()
+    {
+        long total = 0;
+        for (long count : tickets)
+        {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of tickets given to {@link #add(Ticket)} that left outside the range
+     */
+    public long getIgnoredCount()
+    {
+        return ignored;
+    }
+
+    /**
+     * Writes one line per non-empty bucket, ordered by day, hour and type.
+     */
+    public void writeCsv(Writer out) throws IOException
+    {
+        out.write("date,hour,type,tickets,revenue,parked_minutes\n");
+        for (int day = 0; day < days; day++)
+        {
+            String date = from.plusDays(day).toString();
+            for (int hour = 0; hour < HOURS; hour++)
+            {
+                for (ParkingType parkingType : TYPES)
+                {
+                    int bucket = bucket(day, parkingType, hour);
+                    if (tickets[bucket] == 0)
+                    {
+                        continue;
+                    }
+                    out.write(date + ',' + hour + ',' + parkingType + ',' + tickets[bucket] + ','
+                              + formatCents(revenueCents[bucket]) + ',' + parkedMinutes[bucket] + '\n');
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes a JSON array with one object per non-empty bucket, in the order of {@link #writeCsv(Writer)}.
+     */
+    public void writeJson(Writer out) throws IOException
+    {
+        out.write('[');
+        boolean first = true;
+        for (int day = 0; day < days; day++)
+        {
+            String date = from.plusDays(day).toString();
+            for (int hour = 0; hour < HOURS; hour++)
+            {
+                for (ParkingType parkingType : TYPES)
+                {
+                    int bucket = bucket(day, parkingType, hour);
+                    if (tickets[bucket] == 0)
+                    {
+                        continue;
+                    }
+                    out.write(first ? "\n" : ",\n");
+                    first = false;
+                    out.write("{\"date\":\"" + date + "\",\"hour\":" + hour + ",\"type\":\"" + parkingType
+                              + "\",\"tickets\":" + tickets[bucket] + ",\"revenue\":" + formatCents(revenueCents[bucket])
+                              + ",\"parkedMinutes\":" + parkedMinutes[bucket] + '}');
+                }
+            }
+        }
+        out.write(first ? "]\n" : "\n]\n");
+        out.flush();
+    }
+
+    private int bucket(LocalDate day, ParkingType parkingType, int hour)
+    {
+        long index = day.toEpochDay() - from.toEpochDay();
+        if (index < 0 || index >= days || hour < 0 || hour >= HOURS)
+        {
+            throw new IllegalArgumentException(day + " " + hour + "h is outside the report");
+        }
+        return bucket((int) index, parkingType, hour);
+    }
+
+    private static int bucket(int day, ParkingType parkingType, int hour)
+    {
+        return (day * TYPES.length + parkingType.ordinal()) * HOURS + hour;
+    }
+
+    private static String formatCents(long cents)
+    {
+        long abs = Math.abs(cents);
+        return (cents < 0 ? "-" : "") + abs / 100 + '.' + (abs % 100 < 10 ? "0" : "") + abs % 100;
+    }
+}
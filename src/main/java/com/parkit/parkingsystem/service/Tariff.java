@@ -0,0 +1,424 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of pricing rules, compiled once into one table per {@link ParkingType}.
+ * <p>
+ * A table holds the prefix sums of the hourly rate of every minute of the week, so the cost of a stay is the
+ * difference of two entries, plus one lookup per calendar day when a daily cap applies. Nothing is parsed or
+ * allocated while pricing, except the zone offset lookup of zones that observe daylight saving time.
+ * <p>
+ * Tariff file format:
+ * <pre>
+ * zone=Europe/Paris
+ * freeMinutes=30
+ * recurringDiscountPercent=5
+ * CAR.ratePerHour=1.50
+ * CAR.dailyCap=20.00
+ * CAR.rule.1=MON-FRI 08:00-19:00 2.50
+ * CAR.rule.2=SAT,SUN 00:00-24:00 1.00
+ * BIKE.ratePerHour=1.00
+ * BIKE.rule.1=MON-SUN 22:00-06:00 0.50
+ * </pre>
+ * Rules override the base rate on the listed days and are applied in increasing order of their number, so a
+ * later rule wins where two overlap. A range ending before it starts runs past midnight.
+ */
+public class Tariff
+{
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    // 1970-01-01 was a Thursday, shifting by three days puts minute 0 on a Monday at midnight
+    private static final long EPOCH_TO_MONDAY_MINUTES = 3L * MINUTES_PER_DAY;
+    private static final long MILLIS_PER_MINUTE = 60_000;
+    // costs are summed in (cents per hour) x minutes, then divided by 60 minutes and 100 percent
+    private static final long DIVISOR = 60 * 100;
+
+    private final ZoneId zone;
+    private final boolean fixedOffset;
+    private final long fixedOffsetMillis;
+    private final long freeMinutes;
+    private final long recurringDiscountPercent;
+    private final RateTable[] tables;
+
+    private Tariff(ZoneId zone, long freeMinutes, long recurringDiscountPercent, RateTable[] tables)
+    {
+        this.zone = zone;
+        this.fixedOffset = zone.getRules().isFixedOffset();
+        this.fixedOffsetMillis = fixedOffset ? zone.getRules().getOffset(Instant.EPOCH).getTotalSeconds() * 1000L : 0;
+        this.freeMinutes = freeMinutes;
+        this.recurringDiscountPercent = recurringDiscountPercent;
+        this.tables = tables;
+    }
+
+    /**
+     * The historical pricing: the flat hourly rates of {@link Fare}, 30 free minutes and 5% off for recurring users.
+     */
+    public static Tariff standard()
+    {
+        return fromProperties(new Properties());
+    }
+
+    public static Tariff load(Path file) throws IOException
+    {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * @throws IllegalArgumentException when a value cannot be parsed
+     */
+    public static Tariff fromProperties(Properties properties)
+    {
+        ZoneId zone;
+        try
+        {
+            zone = ZoneId.of(properties.getProperty("zone", "UTC").trim());
+        }
+        catch (DateTimeException e)
+        {
+            throw new IllegalArgumentException("Unknown tariff zone: " + properties.getProperty("zone"), e);
+        }
+        long freeMinutes = parseLong(properties, "freeMinutes", FareEngine.FREE_MINUTES);
+        long recurringDiscountPercent = parseLong(properties, "recurringDiscountPercent", FareEngine.RECURRING_USER_DISCOUNT_PERCENT);
+        if (freeMinutes < 0 || recurringDiscountPercent < 0 || recurringDiscountPercent > 100)
+        {
+            throw new IllegalArgumentException("Free minutes and recurring discount must be within range");
+        }
+
+        RateTable[] tables = new RateTable[ParkingType.values().length];
+        for (ParkingType parkingType : ParkingType.values())
+        {
+            tables[parkingType.ordinal()] = compile(parkingType, properties);
+        }
+        return new Tariff(zone, freeMinutes, recurringDiscountPercent, tables);
+    }
+
+    public ZoneId getZone()
+    {
+        return zone;
+    }
+
+    public long getFreeMinutes()
+    {
+        return freeMinutes;
+    }
+
+    public long getRecurringDiscountPercent()
+    {
+        return recurringDiscountPercent;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the vehicle left before it came in
+     * @throws NullPointerException when the parking type is null
+     */
+    public long priceCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis, boolean isRecurrentUser)
+    {
+        RateTable table = tables[parkingType.ordinal()];
+        if (outTimeMillis < inTimeMillis)
+        {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTimeMillis);
+        }
+
+        long minutes = (outTimeMillis - inTimeMillis) / MILLIS_PER_MINUTE;
+        if (minutes <= freeMinutes)
+        {
+            return 0;
+        }
+
+        long units;
+        if (table.flatRate >= 0)
+        {
+            units = minutes * table.flatRate;
+        }
+        else
+        {
+            // the whole stay is priced with the offset in force at entry
+            long start = Math.floorDiv(inTimeMillis + offsetMillis(inTimeMillis), MILLIS_PER_MINUTE) + EPOCH_TO_MONDAY_MINUTES;
+            units = table.cost(start, start + minutes);
+        }
+
+        long percent = isRecurrentUser ? 100 - recurringDiscountPercent : 100;
+        return (units * percent + DIVISOR / 2) / DIVISOR;
+    }
+
+    private long offsetMillis(long epochMillis)
+    {
+        if (fixedOffset)
+        {
+            return fixedOffsetMillis;
+        }
+        ZoneOffset offset = zone.getRules().getOffset(Instant.ofEpochMilli(epochMillis));
+        return offset.getTotalSeconds() * 1000L;
+    }
+
+    private static RateTable compile(ParkingType parkingType, Properties properties)
+    {
+        String prefix = parkingType.name() + ".";
+        long baseRate = parseCents(properties, prefix + "ratePerHour", defaultRate(parkingType));
+        long dailyCap = parseCents(properties, prefix + "dailyCap", -1);
+
+        long[] minuteRates = new long[MINUTES_PER_WEEK];
+        Arrays.fill(minuteRates, baseRate);
+
+        TreeMap<Integer, String> rules = new TreeMap<>();
+        for (String name : properties.stringPropertyNames())
+        {
+            if (name.startsWith(prefix + "rule."))
+            {
+                String number = name.substring(prefix.length() + "rule.".length());
+                try
+                {
+                    rules.put(Integer.parseInt(number), properties.getProperty(name));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Tariff rule must be numbered: " + name, e);
+                }
+            }
+        }
+        for (String rule : rules.values())
+        {
+            applyRule(rule, minuteRates);
+        }
+        return new RateTable(minuteRates, dailyCap);
+    }
+
+    /**
+     * Applies a rule of the form {@code DAYS HH:mm-HH:mm RATE} where DAYS is a day, a range or a comma separated list.
+     */
+    private static void applyRule(String rule, long[] minuteRates)
+    {
+        String[] parts = rule.trim().split("\\s+");
+        if (parts.length != 3)
+        {
+            throw new IllegalArgumentException("Tariff rule must be 'DAYS HH:mm-HH:mm RATE': " + rule);
+        }
+        boolean[] days = parseDays(parts[0], rule);
+        String[] hours = parts[1].split("-");
+        if (hours.length != 2)
+        {
+            throw new IllegalArgumentException("Tariff rule hours must be 'HH:mm-HH:mm': " + rule);
+        }
+        int from = parseMinuteOfDay(hours[0], rule);
+        int to = parseMinuteOfDay(hours[1], rule);
+        int length = to > from ? to - from : MINUTES_PER_DAY - from + to;
+        long rate = toCents(parts[2], rule);
+
+        for (int day = 0; day < 7; day++)
+        {
+            if (!days[day])
+            {
+                continue;
+            }
+            int start = day * MINUTES_PER_DAY + from;
+            for (int minute = start; minute < start + length; minute++)
+            {
+                minuteRates[minute % MINUTES_PER_WEEK] = rate;
+            }
+        }
+    }
+
+    private static boolean[] parseDays(String value, String rule)
+    {
+        boolean[] days = new boolean[7];
+        for (String item : value.split(","))
+        {
+            String[] range = item.split("-");
+            try
+            {
+                int first = DayOfWeek.valueOf(dayName(range[0])).ordinal();
+                int last = range.length > 1 ? DayOfWeek.valueOf(dayName(range[1])).ordinal() : first;
+                for (int day = first; ; day = (day + 1) % 7)
+                {
+                    days[day] = true;
+                    if (day == last)
+                    {
+                        break;
+                    }
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Unknown day in tariff rule: " + rule, e);
+            }
+        }
+        return days;
+    }
+
+    private static String dayName(String abbreviation)
+    {
+        String upper = abbreviation.trim().toUpperCase();
+        for (DayOfWeek day : DayOfWeek.values())
+        {
+            if (day.name().startsWith(upper) && upper.length() >= 3)
+            {
+                return day.name();
+            }
+        }
+        return upper;
+    }
+
+    private static int parseMinuteOfDay(String value, String rule)
+    {
+        String[] fields = value.split(":");
+        try
+        {
+            int hour = Integer.parseInt(fields[0]);
+            int minute = fields.length > 1 ? Integer.parseInt(fields[1]) : 0;
+            int minuteOfDay = hour * 60 + minute;
+            if (fields.length > 2 || minute < 0 || minute > 59 || minuteOfDay < 0 || minuteOfDay > MINUTES_PER_DAY)
+            {
+                throw new IllegalArgumentException("Invalid time in tariff rule: " + rule);
+            }
+            return minuteOfDay % MINUTES_PER_DAY;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid time in tariff rule: " + rule, e);
+        }
+    }
+
+    private static long defaultRate(ParkingType parkingType)
+    {
+        switch (parkingType)
+        {
+            case CAR:
+                return Math.round(Fare.CAR_RATE_PER_HOUR * 100);
+            case BIKE:
+                return Math.round(Fare.BIKE_RATE_PER_HOUR * 100);
+            default:
+                throw new IllegalArgumentException("Unkown Parking Type");
+        }
+    }
+
+    private static long parseLong(Properties properties, String name, long defaultValue)
+    {
+        String value = properties.getProperty(name);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid tariff value " + name + "=" + value, e);
+        }
+    }
+
+    private static long parseCents(Properties properties, String name, long defaultValue)
+    {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : toCents(value, name + "=" + value);
+    }
+
+    private static long toCents(String amount, String context)
+    {
+        try
+        {
+            long cents = new BigDecimal(amount.trim()).setScale(2, RoundingMode.UNNECESSARY).movePointRight(2).longValueExact();
+            if (cents < 0)
+            {
+                throw new IllegalArgumentException("Tariff amounts must not be negative: " + context);
+            }
+            return cents;
+        }
+        catch (ArithmeticException | NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Tariff amounts must be in whole cents: " + context, e);
+        }
+    }
+
+    /**
+     * Compiled rates of one parking type, costs are in (cents per hour) x minutes.
+     */
+    private static final class RateTable
+    {
+        private final long flatRate;
+        private final long[] weekPrefix = new long[MINUTES_PER_WEEK + 1];
+        private final long dailyCapUnits;
+        private final long[] cappedDay = new long[7];
+        private final long cappedWeek;
+
+        private RateTable(long[] minuteRates, long dailyCapCents)
+        {
+            boolean flat = true;
+            for (int minute = 0; minute < MINUTES_PER_WEEK; minute++)
+            {
+                weekPrefix[minute + 1] = weekPrefix[minute] + minuteRates[minute];
+                flat &= minuteRates[minute] == minuteRates[0];
+            }
+            this.dailyCapUnits = dailyCapCents < 0 ? Long.MAX_VALUE : dailyCapCents * 60;
+            this.flatRate = flat && dailyCapCents < 0 ? minuteRates[0] : -1;
+
+            long week = 0;
+            for (int day = 0; day < 7; day++)
+            {
+                long dayCost = weekPrefix[(day + 1) * MINUTES_PER_DAY] - weekPrefix[day * MINUTES_PER_DAY];
+                cappedDay[day] = Math.min(dayCost, dailyCapUnits);
+                week += cappedDay[day];
+            }
+            this.cappedWeek = week;
+        }
+
+        /**
+         * Cost of the minutes [start, end) counted from a Monday at midnight, local time.
+         */
+        private long cost(long start, long end)
+        {
+            if (dailyCapUnits == Long.MAX_VALUE)
+            {
+                return cumulative(end) - cumulative(start);
+            }
+
+            long firstDay = Math.floorDiv(start, MINUTES_PER_DAY);
+            long lastDay = Math.floorDiv(end - 1, MINUTES_PER_DAY);
+            if (firstDay == lastDay)
+            {
+                return Math.min(dailyCapUnits, cumulative(end) - cumulative(start));
+            }
+
+            long total = Math.min(dailyCapUnits, cumulative((firstDay + 1) * MINUTES_PER_DAY) - cumulative(start));
+            total += Math.min(dailyCapUnits, cumulative(end) - cumulative(lastDay * MINUTES_PER_DAY));
+
+            long fullDays = lastDay - firstDay - 1;
+            total += (fullDays / 7) * cappedWeek;
+            for (long day = firstDay + 1 + (fullDays / 7) * 7; day < lastDay; day++)
+            {
+                total += cappedDay[(int) Math.floorMod(day, 7L)];
+            }
+            return total;
+        }
+
+        private long cumulative(long minute)
+        {
+            return Math.floorDiv(minute, MINUTES_PER_WEEK) * weekPrefix[MINUTES_PER_WEEK]
+                   + weekPrefix[(int) Math.floorMod(minute, (long) MINUTES_PER_WEEK)];
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a tariff file and installs it in a {@link FareEngine} whenever it changes.
+ * <p>
+ * The file is compiled off the exit path, in the reloader thread; a file that does not parse is logged and the
+ * tariff in force is kept. Each version of the file is read once, so an invalid one is logged once, not at every check.
+ */
+public class TariffReloader implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger("TariffReloader");
+
+    private final Path file;
+    private final FareEngine fareEngine;
+    private ScheduledExecutorService scheduler;
+    // of the last version read, installed or not
+    private FileTime lastModified;
+    private boolean unreadable;
+
+    public TariffReloader(Path file, FareEngine fareEngine)
+    {
+        this.file = file;
+        this.fareEngine = fareEngine;
+    }
+
+    /**
+     * Loads the file once, then checks it for changes every {@code intervalMillis}.
+     */
+    public synchronized void start(long intervalMillis)
+    {
+        reloadIfModified();
+        if (scheduler == null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "tariff-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reloadIfModified, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true when a new tariff has been installed
+     */
+    public synchronized boolean reloadIfModified()
+    {
+        FileTime modified;
+        try
+        {
+            modified = Files.getLastModifiedTime(file);
+        }
+        catch (IOException e)
+        {
+            if (!unreadable)
+            {
+                logger.error("Unable to read tariff file " + file + ", keeping the current tariff", e);
+                unreadable = true;
+            }
+            return false;
+        }
+        unreadable = false;
+        if (modified.equals(lastModified))
+        {
+            return false;
+        }
+        lastModified = modified;
+        try
+        {
+            Tariff tariff = Tariff.load(file);
+            fareEngine.setTariff(tariff);
+            logger.info("Tariff loaded from " + file);
+            return true;
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            logger.error("Unable to load tariff from " + file + ", keeping the current one", e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -3,20 +3,47 @@ package com.parkit.parkingsystem.util;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.Scanner;
 
 public class InputReaderUtil {
 
-    private static Scanner scan = new Scanner(System.in);
+    // every reader of the console shares one scanner, otherwise each would buffer part of System.in
+    private static final Scanner consoleScanner = new Scanner(System.in);
     private static final Logger logger = LogManager.getLogger("InputReaderUtil");
 
+    private final Scanner scan;
+    private final PrintStream out;
+
+    public InputReaderUtil() {
+        this.scan = consoleScanner;
+        this.out = System.out;
+    }
+
+    /**
+     * Reader of another input source than the console, e.g. the connection of a remote gate.
+     */
+    public InputReaderUtil(InputStream in, PrintStream out) {
+        this.scan = new Scanner(in);
+        this.out = out;
+    }
+
+    /**
+     * Blocks until a line is available.
+     * @return false once the input source is exhausted
+     */
+    public boolean hasMoreInput() {
+        return scan.hasNextLine();
+    }
+
     public int readSelection() {
         try {
             int input = Integer.parseInt(scan.nextLine());
             return input;
         }catch(Exception e){
             logger.error("Error while reading user input from Shell", e);
-            System.out.println("Error reading input. Please enter valid number for proceeding further");
+            out.println("Error reading input. Please enter valid number for proceeding further");
             return -1;
         }
     }
@@ -30,7 +57,7 @@ public class InputReaderUtil {
             return vehicleRegNumber;
         }catch(Exception e){
             logger.error("Error while reading user input from Shell", e);
-            System.out.println("Error reading input. Please enter a valid string for vehicle registration number");
+            out.println("Error reading input. Please enter a valid string for vehicle registration number");
             throw e;
         }
     }
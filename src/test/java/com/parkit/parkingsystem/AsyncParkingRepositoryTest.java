@@ -0,0 +1,239 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.AsyncParkingRepository;
+import com.parkit.parkingsystem.dao.InMemoryParkingStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ExitResult;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncParkingRepositoryTest
+{
+    private ParkingService parkingService;
+
+    @AfterEach
+    private void tearDownPerTest()
+    {
+        if (parkingService != null)
+        {
+            parkingService.disableAsyncExits();
+        }
+        ThreadContext.remove("gate");
+    }
+
+    /**
+     * Store whose two exit reads each wait for the other: an exit only completes when they run at the same time.
+     */
+    private static final class OverlappingReadsStore extends InMemoryParkingStore
+    {
+        private final CyclicBarrier bothReading = new CyclicBarrier(2);
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        OverlappingReadsStore()
+        {
+            super(2, 0);
+        }
+
+        private void awaitTheOtherRead()
+        {
+            try
+            {
+                bothReading.await(5, TimeUnit.SECONDS);
+            }
+            catch (Exception e)
+            {
+                throw new IllegalStateException("The exit reads did not overlap", e);
+            }
+        }
+
+        @Override
+        public Ticket getOpenTicket(String vehicleRegNumber)
+        {
+            awaitTheOtherRead();
+            calls.add("getOpenTicket");
+            return super.getOpenTicket(vehicleRegNumber);
+        }
+
+        @Override
+        public boolean isRecurringUser(String vehicleRegNumber)
+        {
+            awaitTheOtherRead();
+            calls.add("isRecurringUser");
+            return super.isRecurringUser(vehicleRegNumber);
+        }
+
+        @Override
+        public boolean updateTicket(Ticket ticket)
+        {
+            calls.add("updateTicket");
+            return super.updateTicket(ticket);
+        }
+
+        @Override
+        public boolean updateParking(ParkingSpot parkingSpot)
+        {
+            calls.add("updateParking");
+            return super.updateParking(parkingSpot);
+        }
+    }
+
+    @Test
+    public void theExitReadsRunTogetherThenTheTicketIsClosedBeforeTheSpotIsFreed()
+    {
+        OverlappingReadsStore store = new OverlappingReadsStore();
+        parkingService = new ParkingService(null, store, store);
+        parkingService.enableAsyncExits(2, 4);
+        assertNotNull(store.allocateSpot(ParkingType.CAR, "ABC"));
+
+        ExitResult result = parkingService.exitAsync("ABC").join();
+
+        assertEquals(ExitResult.Status.EXITED, result.getStatus());
+        assertNotNull(result.getTicket().getOutTime());
+        assertFalse(result.isRecurringUser());
+        assertTrue(result.isSpotFreed());
+        assertEquals("updateTicket", store.calls.get(2));
+        assertEquals("updateParking", store.calls.get(3));
+        assertEquals(2, store.getOccupancy(ParkingType.CAR).getFree());
+        assertNotNull(store.getTicket("ABC").getOutTime());
+
+        // sans ticket ouvert, le véhicule n'est pas dans le parking
+        assertEquals(ExitResult.Status.NOT_PARKED, parkingService.exitAsync("ABC").join().getStatus());
+    }
+
+    @Test
+    public void callsRunWithTheLoggingContextOfTheGate()
+    {
+        List<String> gates = Collections.synchronizedList(new ArrayList<>());
+        InMemoryParkingStore store = new InMemoryParkingStore(1, 0)
+        {
+            private void record(String call)
+            {
+                // la barrière doit rester connue sur le thread JDBC, pour les journaux et le routage vers les réplicas
+                assertTrue(Thread.currentThread().getName().startsWith("jdbc-async-"));
+                gates.add(call + ":" + ThreadContext.get("gate"));
+            }
+
+            @Override
+            public Ticket getTicket(String vehicleRegNumber)
+            {
+                record("getTicket");
+                return super.getTicket(vehicleRegNumber);
+            }
+
+            @Override
+            public Ticket getOpenTicket(String vehicleRegNumber)
+            {
+                record("getOpenTicket");
+                return super.getOpenTicket(vehicleRegNumber);
+            }
+
+            @Override
+            public boolean updateTicket(Ticket ticket)
+            {
+                record("updateTicket");
+                return super.updateTicket(ticket);
+            }
+
+            @Override
+            public boolean updateParking(ParkingSpot parkingSpot)
+            {
+                record("updateParking");
+                return super.updateParking(parkingSpot);
+            }
+        };
+        assertNotNull(store.allocateSpot(ParkingType.CAR, "ABC"));
+        parkingService = new ParkingService(null, store, store);
+        parkingService.enableAsyncExits(1, 4);
+        ThreadContext.put("gate", "north");
+
+        // les écritures sont soumises depuis un thread JDBC, elles doivent garder la barrière de la sortie
+        assertEquals(ExitResult.Status.EXITED, parkingService.exitAsync("ABC").join().getStatus());
+        assertEquals(List.of("getOpenTicket:north", "updateTicket:north", "updateParking:north"), gates);
+
+        gates.clear();
+        AsyncParkingRepository repository = new AsyncParkingRepository(store, store, 1, 1);
+        try
+        {
+            assertNotNull(repository.getTicket("ABC").join());
+            assertEquals(List.of("getTicket:north"), gates);
+        }
+        finally
+        {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void anExitAlreadyDoneByAnotherGateIsNotParked()
+    {
+        InMemoryParkingStore store = new InMemoryParkingStore(2, 0)
+        {
+            @Override
+            public boolean updateTicket(Ticket ticket)
+            {
+                // une autre barrière fait sortir le même véhicule juste avant
+                Ticket other = getOpenTicket(ticket.getVehicleRegNumber());
+                other.setOutTime(ticket.getOutTime());
+                super.updateTicket(other);
+                return super.updateTicket(ticket);
+            }
+        };
+        parkingService = new ParkingService(null, store, store);
+
+        assertNotNull(store.allocateSpot(ParkingType.CAR, "ABC"));
+        assertEquals(ExitResult.Status.NOT_PARKED, parkingService.exit("ABC").getStatus());
+
+        parkingService.enableAsyncExits(1, 4);
+        assertNotNull(store.allocateSpot(ParkingType.CAR, "DEF"));
+        assertEquals(ExitResult.Status.NOT_PARKED, parkingService.exitAsync("DEF").join().getStatus());
+    }
+
+    @Test
+    public void aSpotThatCouldNotBeFreedIsReported()
+    {
+        InMemoryParkingStore store = new InMemoryParkingStore(1, 0)
+        {
+            @Override
+            public boolean updateParking(ParkingSpot parkingSpot)
+            {
+                return false;
+            }
+        };
+        parkingService = new ParkingService(null, store, store);
+        parkingService.enableAsyncExits(1, 4);
+        assertNotNull(store.allocateSpot(ParkingType.CAR, "ABC"));
+
+        ExitResult result = parkingService.exitAsync("ABC").join();
+
+        // le véhicule est sorti et a payé, seule la place reste à libérer
+        assertEquals(ExitResult.Status.EXITED, result.getStatus());
+        assertFalse(result.isSpotFreed());
+        assertEquals("Unable to free parking spot 1", result.getMessage());
+        assertEquals(ExitResult.Status.NOT_PARKED, parkingService.exit("ABC").getStatus());
+    }
+
+    @Test
+    public void aClosedRepositoryFailsItsFuturesInsteadOfLeavingThemPending()
+    {
+        InMemoryParkingStore store = new InMemoryParkingStore(1, 0);
+        AsyncParkingRepository repository = new AsyncParkingRepository(store, store, 1, 1);
+        repository.close();
+
+        CompletionException e = assertThrows(CompletionException.class, () -> repository.getOpenTicket("ABC").join());
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+}
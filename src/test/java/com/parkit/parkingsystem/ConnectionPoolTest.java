@@ -0,0 +1,201 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.PoolMetrics;
+import com.parkit.parkingsystem.config.PoolSettings;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ConnectionPoolTest
+{
+    private List<Connection> physicalConnections;
+    private PoolSettings settings;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        physicalConnections = new ArrayList<>();
+        settings = new PoolSettings();
+        settings.setMaxSize(2);
+        settings.setMaxWaitMillis(100);
+        settings.setMinIdle(0);
+        pool = new ConnectionPool("test", this::newPhysicalConnection, settings);
+    }
+
+    @AfterEach
+    private void tearDown()
+    {
+        pool.close();
+    }
+
+    private Connection newPhysicalConnection() throws SQLException
+    {
+        Connection connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+        physicalConnections.add(connection);
+        return connection;
+    }
+
+    @Test
+    public void closedConnectionIsReused() throws SQLException
+    {
+        Connection first = pool.borrow();
+        first.close();
+        Connection second = pool.borrow();
+        second.close();
+
+        assertEquals(1, physicalConnections.size());
+        verify(physicalConnections.get(0), never()).close();
+        assertTrue(first.isClosed(), "a returned lease must look closed to its former borrower");
+    }
+
+    @Test
+    public void borrowTimesOutWhenPoolIsExhausted() throws SQLException
+    {
+        pool.borrow();
+        pool.borrow();
+
+        assertThrows(SQLTimeoutException.class, () -> pool.borrow());
+        PoolMetrics metrics = pool.getMetrics();
+        assertEquals(2, metrics.getActive());
+        assertEquals(1, metrics.getTimeouts());
+    }
+
+    @Test
+    public void invalidConnectionIsReplacedOnBorrow() throws SQLException
+    {
+        settings.setValidationBypassMillis(0);
+        pool.borrow().close();
+        when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+
+        pool.borrow().close();
+
+        assertEquals(2, physicalConnections.size());
+        verify(physicalConnections.get(0)).close();
+        assertEquals(1, pool.getMetrics().getDestroyed());
+    }
+
+    @Test
+    public void openTransactionIsRolledBackOnReturn() throws SQLException
+    {
+        Connection connection = pool.borrow();
+        when(physicalConnections.get(0).getAutoCommit()).thenReturn(false);
+        connection.close();
+
+        verify(physicalConnections.get(0)).rollback();
+        verify(physicalConnections.get(0)).setAutoCommit(true);
+    }
+
+    @Test
+    public void returnedLeaseCannotBeUsed() throws SQLException
+    {
+        Connection connection = pool.borrow();
+        connection.close();
+
+        assertThrows(SQLException.class, () -> connection.prepareStatement("select 1"));
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception
+    {
+        settings.setIdleTimeoutMillis(0);
+        pool.borrow().close();
+        Thread.sleep(5);
+        pool.evictIdleConnections();
+
+        assertEquals(0, pool.getMetrics().getIdle());
+        verify(physicalConnections.get(0)).close();
+    }
+
+    @Test
+    public void preparedStatementIsReusedAcrossBorrows() throws SQLException
+    {
+        Connection connection = pool.borrow();
+        PreparedStatement first = connection.prepareStatement("select 1");
+        first.setInt(1, 42);
+        first.close();
+        connection.close();
+
+        connection = pool.borrow();
+        PreparedStatement second = connection.prepareStatement("select 1");
+        connection.close();
+
+        assertSame(first, second);
+        verify(physicalConnections.get(0), times(1)).prepareStatement("select 1");
+        PoolMetrics metrics = pool.getMetrics();
+        assertEquals(1, metrics.getStatementHits());
+        assertEquals(1, metrics.getStatementMisses());
+    }
+
+    @Test
+    public void statementLeftOpenIsReclaimedWhenTheConnectionReturns() throws SQLException
+    {
+        Connection connection = pool.borrow();
+        PreparedStatement statement = connection.prepareStatement("select 1");
+        connection.close();
+
+        assertTrue(statement.isClosed());
+        assertThrows(SQLException.class, statement::executeQuery);
+        connection = pool.borrow();
+        assertSame(statement, connection.prepareStatement("select 1"));
+        connection.close();
+    }
+
+    @Test
+    public void cacheIsBoundedAndClosesEvictedStatements() throws SQLException
+    {
+        settings.setStatementCacheSize(1);
+        pool.close();
+        pool = new ConnectionPool("test", this::newPhysicalConnection, settings);
+
+        Connection connection = pool.borrow();
+        PreparedStatement first = connection.prepareStatement("select 1");
+        first.close();
+        connection.prepareStatement("select 2").close();
+        connection.close();
+
+        assertEquals(1, pool.getMetrics().getStatementEvictions());
+        assertFalse(first == pool.borrow().prepareStatement("select 1"));
+    }
+
+    @Test
+    public void executionsAreTimedPerQueryAndFailuresCounted() throws SQLException
+    {
+        ParkingMetrics.QueryMetrics metrics = ParkingMetrics.getDefault().query(DBConstants.DELETE_TICKET);
+        long executions = metrics.getLatency().getCount();
+        long errors = metrics.getErrorCount();
+
+        Connection connection = pool.borrow();
+        PreparedStatement statement = connection.prepareStatement(DBConstants.DELETE_TICKET);
+        statement.executeUpdate();
+        // le second exemplaire, hors du cache, est mesuré lui aussi
+        PreparedStatement failing = mock(PreparedStatement.class);
+        when(failing.executeUpdate()).thenThrow(new SQLException("lock wait timeout"));
+        when(physicalConnections.get(0).prepareStatement(DBConstants.DELETE_TICKET)).thenReturn(failing);
+        PreparedStatement copy = connection.prepareStatement(DBConstants.DELETE_TICKET);
+        assertThrows(SQLException.class, copy::executeUpdate);
+        connection.close();
+
+        assertEquals("DELETE_TICKET", metrics.getName());
+        assertEquals(executions + 2, metrics.getLatency().getCount());
+        assertEquals(errors + 1, metrics.getErrorCount());
+    }
+}
@@ -0,0 +1,107 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.EntryResult;
+import com.parkit.parkingsystem.service.ExitResult;
+import com.parkit.parkingsystem.service.Facilities;
+import com.parkit.parkingsystem.service.Facility;
+import com.parkit.parkingsystem.service.FacilityBootstrap;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FacilityBootstrapTest
+{
+    private static final List<String> PROPERTIES = Arrays.asList("parkit.facilities", "parkit.store", "parkit.store.dir",
+                                                                 "parkit.store.carSpots", "parkit.store.bikeSpots",
+                                                                 "parkit.async.threads");
+
+    private Path directory;
+
+    @AfterEach
+    private void tearDownPerTest() throws IOException
+    {
+        PROPERTIES.forEach(System::clearProperty);
+        if (directory != null)
+        {
+            try (Stream<Path> files = Files.walk(directory))
+            {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void eachFacilityHasItsOwnLot()
+    {
+        System.setProperty("parkit.facilities", "north, south");
+        System.setProperty("parkit.store", "memory");
+        System.setProperty("parkit.store.carSpots", "1");
+
+        try (FacilityBootstrap bootstrap = new FacilityBootstrap())
+        {
+            Facilities facilities = bootstrap.createFacilities(null);
+
+            assertEquals(Arrays.asList("north", "south"), facilities.getAll().stream().map(Facility::getId).collect(Collectors.toList()));
+            assertEquals("north", facilities.getDefault().getId());
+            ParkingService north = facilities.get("north").getParkingService();
+            ParkingService south = facilities.get("south").getParkingService();
+            // la seule place de voiture du parking nord ne prend pas celle du parking sud
+            assertEquals(EntryResult.Status.ENTERED, north.enter(ParkingType.CAR, "ABC").getStatus());
+            assertEquals(EntryResult.Status.PARKING_FULL, north.enter(ParkingType.CAR, "DEF").getStatus());
+            assertEquals(EntryResult.Status.ENTERED, south.enter(ParkingType.CAR, "DEF").getStatus());
+            assertEquals(ExitResult.Status.NOT_PARKED, south.exit("ABC").getStatus());
+            // sans base de données, pas de rapport
+            assertNull(facilities.get("north").getReportService());
+        }
+    }
+
+    @Test
+    public void fileStoresAreInASubDirectoryPerFacility() throws IOException
+    {
+        directory = Files.createTempDirectory("facility-bootstrap");
+        System.setProperty("parkit.facilities", "north,south");
+        System.setProperty("parkit.store", "file");
+        System.setProperty("parkit.store.dir", directory.toString());
+        System.setProperty("parkit.async.threads", "1");
+
+        try (FacilityBootstrap bootstrap = new FacilityBootstrap())
+        {
+            Facilities facilities = bootstrap.createFacilities(null);
+            ParkingService north = facilities.get("north").getParkingService();
+            try
+            {
+                assertEquals(EntryResult.Status.ENTERED, north.enter(ParkingType.BIKE, "ABC").getStatus());
+                assertEquals(ExitResult.Status.EXITED, north.exitAsync("ABC").join().getStatus());
+            }
+            finally
+            {
+                facilities.getAll().forEach(facility -> facility.getParkingService().disableAsyncExits());
+            }
+        }
+        assertTrue(Files.isDirectory(directory.resolve("north")));
+        assertTrue(Files.isDirectory(directory.resolve("south")));
+    }
+
+    @Test
+    public void anUnknownStoreIsRefused()
+    {
+        System.setProperty("parkit.store", "cloud");
+
+        try (FacilityBootstrap bootstrap = new FacilityBootstrap())
+        {
+            assertThrows(IllegalArgumentException.class, () -> bootstrap.createFacilities(null));
+        }
+    }
+}
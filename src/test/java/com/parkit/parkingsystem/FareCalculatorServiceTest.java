@@ -120,7 +120,8 @@ public class FareCalculatorServiceTest
         ticket.setOutTime(outTime);
         ticket.setParkingSpot(parkingSpot);
         fareCalculatorService.calculateFare(ticket);
-        assertEquals((0.75 * Fare.CAR_RATE_PER_HOUR), ticket.getPrice());
+        // 3/4 de 1,50 donne 1,125 : le prix est arrondi au centime le plus proche, la moitié vers le haut
+        assertEquals(1.13, ticket.getPrice());
     }
 
     @Test
@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class FareEngineTest
+{
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final FareEngine fareEngine = new FareEngine();
+
+    @ParameterizedTest
+    @EnumSource(ParkingType.class)
+    public void firstThirtyMinutesAreFree(ParkingType parkingType)
+    {
+        assertEquals(0, fareEngine.priceCents(parkingType, 0, 30 * MINUTE + 59_999, false));
+        assertTrue(fareEngine.priceCents(parkingType, 0, 31 * MINUTE, false) > 0);
+    }
+
+    @Test
+    public void priceIsInCentsPerType()
+    {
+        assertEquals(150, fareEngine.priceCents(ParkingType.CAR, 0, HOUR, false));
+        assertEquals(100, fareEngine.priceCents(ParkingType.BIKE, 0, HOUR, false));
+        assertEquals(3600, fareEngine.priceCents(ParkingType.CAR, 0, 24 * HOUR, false));
+    }
+
+    @Test
+    public void priceIsRoundedHalfUpToTheCent()
+    {
+        // 45 minutes à 1,50 de l'heure donnent 112,5 centimes
+        assertEquals(113, fareEngine.priceCents(ParkingType.CAR, 0, 45 * MINUTE, false));
+        // 45 minutes avec 5% de réduction donnent 106,875 centimes
+        assertEquals(107, fareEngine.priceCents(ParkingType.CAR, 0, 45 * MINUTE, true));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ParkingType.class)
+    public void recurringUserGetsFivePercentOff(ParkingType parkingType)
+    {
+        long tenDays = 240 * HOUR;
+        long price = fareEngine.priceCents(parkingType, 0, tenDays, false);
+        assertEquals(price * 95 / 100, fareEngine.priceCents(parkingType, 0, tenDays, true));
+    }
+
+    @Test
+    public void outTimeBeforeInTimeIsRejected()
+    {
+        assertThrows(IllegalArgumentException.class, () -> fareEngine.priceCents(ParkingType.BIKE, HOUR, 0, false));
+    }
+
+    @Test
+    public void unknownTypeIsRejected()
+    {
+        assertThrows(NullPointerException.class, () -> fareEngine.priceCents(null, 0, HOUR, false));
+    }
+
+    @Test
+    public void pricingDoesNotAllocate()
+    {
+        // le compteur d'allocation par thread n'existe que sur HotSpot
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(allocations.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+
+        long total = price(1_000);
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        total += price(100_000);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(total > 0);
+        // seule la mesure elle-même peut allouer quelques octets
+        assertTrue(allocated < 1024, allocated + " octets alloués pour 100000 calculs");
+    }
+
+    private long price(int count)
+    {
+        long total = 0;
+        for (int i = 0; i < count; i++)
+        {
+            total += fareEngine.priceCents(ParkingType.CAR, 0, (31 + i % 600) * MINUTE, (i & 1) == 0);
+        }
+        return total;
+    }
+}
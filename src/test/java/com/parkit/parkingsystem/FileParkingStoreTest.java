@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FileParkingStore;
+import com.parkit.parkingsystem.dao.InMemoryParkingStore;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileParkingStoreTest extends ParkingStoreConformance
+{
+    private Path directory;
+    private FileParkingStore parkingStore;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException
+    {
+        directory = Files.createTempDirectory("parking-store");
+        parkingStore = FileParkingStore.open(directory, InMemoryParkingStore.layout(3, 2));
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws IOException
+    {
+        parkingStore.close();
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Override
+    protected TicketRepository ticketRepository()
+    {
+        return parkingStore;
+    }
+
+    @Override
+    protected SpotRepository spotRepository()
+    {
+        return parkingStore;
+    }
+
+    @Test
+    public void reopeningReplaysTheLogAndDropsATornRecord() throws IOException
+    {
+        Ticket left = parkingStore.allocateSpot(ParkingType.CAR, "LEFT");
+        Ticket parked = parkingStore.allocateSpot(ParkingType.CAR, "PARKED");
+        left.setOutTime(new Date(left.getInTime().getTime() + 3_600_000L));
+        left.setPrice(1.5);
+        assertTrue(parkingStore.updateTicket(left));
+        assertTrue(parkingStore.updateParking(new ParkingSpot(left.getParkingSpot().getId(), ParkingType.CAR, true)));
+        parkingStore.close();
+        // un arrêt brutal pendant une écriture laisse une ligne incomplète
+        Files.write(directory.resolve("parking.log"), "9\tE\tTORN\tCAR".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        parkingStore = FileParkingStore.open(directory, InMemoryParkingStore.layout(3, 2));
+
+        assertNull(parkingStore.getOpenTicket("LEFT"));
+        assertTrue(parkingStore.isRecurringUser("LEFT"));
+        assertEquals(1.5, parkingStore.getTicket("LEFT").getPrice());
+        assertEquals(parked.getId(), parkingStore.getOpenTicket("PARKED").getId());
+        assertNull(parkingStore.getTicket("TORN"));
+        assertEquals(2, parkingStore.getOccupancy(ParkingType.CAR).getFree());
+        assertEquals(1, parkingStore.getNextAvailableSlot(ParkingType.CAR));
+        // les identifiants ne sont pas réutilisés après la relecture
+        assertTrue(parkingStore.allocateSpot(ParkingType.CAR, "NEW").getId() > parked.getId());
+    }
+}
@@ -0,0 +1,216 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.dao.InMemoryParkingStore;
+import com.parkit.parkingsystem.service.Facilities;
+import com.parkit.parkingsystem.service.Facility;
+import com.parkit.parkingsystem.service.GateHttpServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class GateHttpServerTest
+{
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private GateHttpServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        parkingSpotDAO = mock(ParkingSpotDAO.class);
+        ticketDAO = mock(TicketDAO.class);
+        server = new GateHttpServer(new ParkingService(null, parkingSpotDAO, ticketDAO), new InetSocketAddress("localhost", 0), 2, 4);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception
+    {
+        return send(server, method, path);
+    }
+
+    private HttpResponse<String> send(GateHttpServer server, String method, String path) throws Exception
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                                         .method(method, HttpRequest.BodyPublishers.noBody())
+                                         .header("X-Gate-Id", "north")
+                                         .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Ticket ticket(String vehicleRegNumber, Date inTime)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(inTime);
+        return ticket;
+    }
+
+    @Test
+    public void entryAndExitAreAnsweredInJson() throws Exception
+    {
+        Date inTime = new Date(System.currentTimeMillis() - 60 * 60 * 1000);
+        when(parkingSpotDAO.allocateSpot(ParkingType.CAR, "AB\"1")).thenReturn(ticket("AB\"1", inTime));
+        when(ticketDAO.getOpenTicket("AB\"1")).thenReturn(ticket("AB\"1", inTime));
+        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
+
+        HttpResponse<String> entry = send("POST", "/entry?type=car&plate=AB%221");
+        assertEquals(201, entry.statusCode());
+        assertEquals("application/json; charset=utf-8", entry.headers().firstValue("Content-Type").orElse(null));
+        assertEquals("{\"status\":\"ENTERED\",\"recurringUser\":false,\"ticket\":{\"id\":7,\"vehicleRegNumber\":\"AB\\\"1\","
+                     + "\"parkingNumber\":3,\"type\":\"CAR\",\"inTime\":\"" + inTime.toInstant() + "\",\"outTime\":null,"
+                     + "\"price\":0.0}}", entry.body());
+
+        HttpResponse<String> exit = send("POST", "/exit?plate=AB%221");
+        assertEquals(200, exit.statusCode());
+        assertTrue(exit.body().startsWith("{\"status\":\"EXITED\""));
+        assertTrue(exit.body().contains("\"price\":1.5}"));
+        // la place est libérée une fois le ticket fermé
+        verify(parkingSpotDAO).updateParking(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void refusalsAndBadRequestsGetTheirStatusCode() throws Exception
+    {
+        when(parkingSpotDAO.allocateSpot(ParkingType.CAR, "FULL")).thenReturn(null);
+        when(parkingSpotDAO.allocateSpot(ParkingType.BIKE, "IN")).thenThrow(new IllegalStateException("This BIKE IN is already parked"));
+        when(parkingSpotDAO.getOccupancy(ParkingType.CAR)).thenReturn(new Occupancy(ParkingType.CAR, 3, 1));
+
+        assertEquals(409, send("POST", "/entry?type=CAR&plate=FULL").statusCode());
+        HttpResponse<String> alreadyParked = send("POST", "/entry?type=BIKE&plate=IN");
+        assertEquals(409, alreadyParked.statusCode());
+        assertEquals("{\"status\":\"ALREADY_PARKED\",\"message\":\"This BIKE IN is already parked\"}", alreadyParked.body());
+        assertEquals(400, send("POST", "/entry?type=TRUCK&plate=X").statusCode());
+        assertEquals(400, send("POST", "/exit").statusCode());
+        assertEquals(404, send("POST", "/exit?plate=NOBODY").statusCode());
+        assertEquals(404, send("GET", "/tickets/NOBODY").statusCode());
+        assertEquals(405, send("GET", "/entry?type=CAR&plate=X").statusCode());
+
+        HttpResponse<String> occupancy = send("GET", "/occupancy?type=CAR");
+        assertEquals(200, occupancy.statusCode());
+        assertEquals("{\"type\":\"CAR\",\"total\":3,\"free\":1,\"occupied\":2}", occupancy.body());
+
+        HttpResponse<String> metrics = send("GET", "/metrics");
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.body().contains("# TYPE parkit_entries_rejected_total counter"), metrics.body());
+    }
+
+    @Test
+    public void onlyNamedGatesHaveAReadYourWritesSession() throws Exception
+    {
+        List<String> sessions = Collections.synchronizedList(new ArrayList<>());
+        when(ticketDAO.getTicket(any())).thenAnswer(invocation ->
+        {
+            sessions.add(ThreadContext.get("gate") + ":" + ThreadContext.containsKey(DataBaseConfig.NO_SESSION));
+            return null;
+        });
+
+        assertEquals(404, send("GET", "/tickets/ABC").statusCode());
+        // sans X-Gate-Id, l'adresse distante change à chaque connexion : les lectures vont au primaire
+        HttpRequest anonymous = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/tickets/ABC")).GET().build();
+        assertEquals(404, client.send(anonymous, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        assertEquals("north:false", sessions.get(0));
+        assertTrue(sessions.get(1).endsWith(":true"), sessions.get(1));
+    }
+
+    @Test
+    public void eachRequestGoesToItsFacilityWithinItsShareOfThePool() throws Exception
+    {
+        CountDownLatch entering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryParkingStore busyStore = new InMemoryParkingStore(2, 0)
+        {
+            @Override
+            public Ticket allocateSpot(ParkingType parkingType, String vehicleRegNumber)
+            {
+                entering.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return super.allocateSpot(parkingType, vehicleRegNumber);
+            }
+        };
+        InMemoryParkingStore quietStore = new InMemoryParkingStore(2, 0);
+        Facilities facilities = new Facilities(Arrays.asList(
+                new Facility("busy", new ParkingService(null, busyStore, busyStore), null),
+                new Facility("quiet", new ParkingService(null, quietStore, quietStore), null)));
+        GateHttpServer shared = new GateHttpServer(facilities, new InetSocketAddress("localhost", 0), 4, 4, 1);
+        shared.start();
+        try
+        {
+            CompletableFuture<HttpResponse<String>> stuck = CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return send(shared, "POST", "/entry?facility=busy&type=CAR&plate=SLOW");
+                }
+                catch (Exception e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            });
+            entering.await();
+
+            // la part du parking occupé est prise, l'autre parking est servi normalement
+            HttpResponse<String> refused = send(shared, "POST", "/entry?facility=busy&type=CAR&plate=NEXT");
+            assertEquals(503, refused.statusCode());
+            assertEquals("1", refused.headers().firstValue("Retry-After").orElse(null));
+            assertEquals(201, send(shared, "POST", "/entry?facility=quiet&type=CAR&plate=QUIET").statusCode());
+            assertEquals(400, send(shared, "POST", "/entry?type=CAR&plate=NOWHERE").statusCode());
+            assertEquals(400, send(shared, "POST", "/entry?facility=west&type=CAR&plate=NOWHERE").statusCode());
+
+            release.countDown();
+            assertEquals(201, stuck.get().statusCode());
+            // chaque parking ne connaît que ses propres véhicules
+            assertEquals(200, send(shared, "GET", "/tickets/SLOW?facility=busy").statusCode());
+            assertEquals(404, send(shared, "GET", "/tickets/SLOW?facility=quiet").statusCode());
+            assertEquals(1, busyStore.getOccupancy(ParkingType.CAR).getFree());
+            assertEquals(1, quietStore.getOccupancy(ParkingType.CAR).getFree());
+        }
+        finally
+        {
+            release.countDown();
+            shared.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.GateSession;
+import com.parkit.parkingsystem.service.GateSessionExecutor;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class GateSessionTest
+{
+    private static final int GATES = 8;
+
+    @Test
+    public void gatesRunConcurrentlyWithTheirOwnInputAndOutput() throws Exception
+    {
+        ParkingSpotDAO parkingSpotDAO = mock(ParkingSpotDAO.class);
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        AtomicInteger nextSpot = new AtomicInteger();
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(parkingSpotDAO.allocateSpot(eq(ParkingType.CAR), anyString())).thenAnswer(invocation ->
+        {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(nextSpot.incrementAndGet(), ParkingType.CAR, false));
+            ticket.setVehicleRegNumber(invocation.getArgument(1));
+            ticket.setInTime(new Date());
+            return ticket;
+        });
+        ParkingService parkingService = new ParkingService(new InputReaderUtil(), parkingSpotDAO, ticketDAO);
+
+        GateSessionExecutor executor = new GateSessionExecutor(GATES);
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        List<Future<?>> sessions = new ArrayList<>();
+        for (int gate = 0; gate < GATES; gate++)
+        {
+            // chaque borne fait entrer son propre véhicule puis s'arrête
+            String script = "1\n1\nGATE" + gate + "\n3\n";
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(output, true, "UTF-8");
+            InputReaderUtil input = new InputReaderUtil(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), out);
+            outputs.add(output);
+            sessions.add(executor.open(new GateSession("gate" + gate, parkingService, input, out)));
+        }
+        for (Future<?> session : sessions)
+        {
+            session.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        verify(parkingSpotDAO, times(GATES)).allocateSpot(eq(ParkingType.CAR), anyString());
+        for (int gate = 0; gate < GATES; gate++)
+        {
+            String output = outputs.get(gate).toString("UTF-8");
+            verify(parkingSpotDAO).allocateSpot(ParkingType.CAR, "GATE" + gate);
+            assertTrue(output.contains("Recorded in-time for vehicle number:GATE" + gate), output);
+            assertTrue(output.contains("Exiting from the system!"), output);
+            for (int other = 0; other < GATES; other++)
+            {
+                if (other != gate)
+                {
+                    assertFalse(output.contains("GATE" + other + " "), "gate " + gate + " received the output of gate " + other);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sessionEndsWhenItsInputIsExhausted() throws Exception
+    {
+        ParkingService parkingService = mock(ParkingService.class);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true, "UTF-8");
+        InputReaderUtil input = new InputReaderUtil(new ByteArrayInputStream("2\n".getBytes(StandardCharsets.UTF_8)), out);
+
+        new GateSession("gate", parkingService, input, out).run();
+
+        verify(parkingService).processExitingVehicle(input, out);
+        verify(parkingService, never()).processIncomingVehicle(any(InputReaderUtil.class), any(PrintStream.class));
+    }
+}
@@ -0,0 +1,29 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.InMemoryParkingStore;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+
+public class InMemoryParkingStoreTest extends ParkingStoreConformance
+{
+    private InMemoryParkingStore parkingStore;
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        parkingStore = new InMemoryParkingStore(3, 2);
+    }
+
+    @Override
+    protected TicketRepository ticketRepository()
+    {
+        return parkingStore;
+    }
+
+    @Override
+    protected SpotRepository spotRepository()
+    {
+        return parkingStore;
+    }
+}
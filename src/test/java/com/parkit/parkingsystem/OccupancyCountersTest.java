@@ -0,0 +1,92 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OccupancyCounters;
+import com.parkit.parkingsystem.model.Occupancy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OccupancyCountersTest
+{
+    /**
+     * Spots 1 to 100 : les impairs sont des CAR, les pairs des BIKE, tous libres.
+     */
+    private static OccupancyCounters freeParking()
+    {
+        Map<Integer, ParkingType> spotTypes = new HashMap<>();
+        BitSet availableSpots = new BitSet();
+        for (int parkingNumber = 1; parkingNumber <= 100; parkingNumber++)
+        {
+            spotTypes.put(parkingNumber, parkingNumber % 2 == 1 ? ParkingType.CAR : ParkingType.BIKE);
+            availableSpots.set(parkingNumber);
+        }
+        return new OccupancyCounters(spotTypes, availableSpots);
+    }
+
+    @Test
+    public void countersOnlyMoveWhenASpotChanges()
+    {
+        OccupancyCounters counters = freeParking();
+
+        counters.setAvailable(1, false);
+        counters.setAvailable(1, false);
+        counters.setAvailable(2, true);
+        counters.setAvailable(500, false);
+
+        Occupancy cars = counters.snapshot(ParkingType.CAR);
+        assertEquals(50, cars.getTotal());
+        assertEquals(49, cars.getFree());
+        assertEquals(1, cars.getOccupied());
+        assertEquals(50, counters.getFree(ParkingType.BIKE));
+        assertFalse(counters.contains(500));
+    }
+
+    @Test
+    public void concurrentGatesKeepTheCountersExact() throws Exception
+    {
+        OccupancyCounters counters = freeParking();
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try
+        {
+            // chaque porte gère ses 10 places : prises puis libérées en boucle, les places impaires restent prises
+            List<Future<?>> gates = new ArrayList<>();
+            for (int gate = 0; gate < 10; gate++)
+            {
+                int first = gate * 10 + 1;
+                gates.add(executor.submit(() ->
+                {
+                    for (int round = 0; round < 1000; round++)
+                    {
+                        for (int parkingNumber = first; parkingNumber < first + 10; parkingNumber++)
+                        {
+                            counters.setAvailable(parkingNumber, false);
+                            counters.setAvailable(parkingNumber, parkingNumber % 2 == 0);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> gate : gates)
+            {
+                gate.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(0, counters.getFree(ParkingType.CAR));
+        assertEquals(50, counters.getOccupied(ParkingType.CAR));
+        assertEquals(50, counters.getFree(ParkingType.BIKE));
+    }
+}
@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketRegistry;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenTicketRegistryTest
+{
+    private final OpenTicketRegistry registry = new OpenTicketRegistry();
+
+    private static Ticket ticket(int id, String vehicleRegNumber)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(id, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        return ticket;
+    }
+
+    @Test
+    public void enteringVehicleIsParkedButHasNoTicketYet()
+    {
+        assertTrue(registry.reserve("ABC"));
+        assertFalse(registry.reserve("ABC"));
+        assertTrue(registry.contains("ABC"));
+        assertNull(registry.get("ABC"));
+
+        registry.cancel("ABC");
+        assertFalse(registry.contains("ABC"));
+    }
+
+    @Test
+    public void ticketsAreCopiedInAndOut()
+    {
+        Ticket ticket = ticket(1, "ABC");
+        registry.open(ticket);
+        ticket.setOutTime(new Date());
+
+        Ticket open = registry.get("ABC");
+        assertNull(open.getOutTime());
+        open.getParkingSpot().setAvailable(true);
+        assertFalse(registry.get("ABC").getParkingSpot().isAvailable());
+    }
+
+    @Test
+    public void closingAnOldTicketKeepsTheNewOne()
+    {
+        registry.open(ticket(1, "ABC"));
+        registry.open(ticket(2, "ABC"));
+
+        registry.close(ticket(1, "ABC"));
+        assertEquals(2, registry.get("ABC").getId());
+
+        registry.close(ticket(2, "ABC"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void onlyOneGateCanRegisterAVehicle() throws Exception
+    {
+        int gates = 16;
+        Set<Integer> winners = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(gates);
+        for (int gate = 0; gate < gates; gate++)
+        {
+            int id = gate;
+            executor.execute(() ->
+            {
+                try
+                {
+                    start.await();
+                    if (registry.reserve("ABC"))
+                    {
+                        winners.add(id);
+                        registry.open(ticket(id, "ABC"));
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, winners.size());
+        assertEquals(winners.iterator().next().intValue(), registry.get("ABC").getId());
+    }
+}
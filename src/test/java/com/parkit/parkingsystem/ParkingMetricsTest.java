@@ -0,0 +1,52 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.ParkingMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingMetricsTest
+{
+    @Test
+    public void queriesAreNamedAfterTheirConstant()
+    {
+        assertEquals("GET_TICKET", ParkingMetrics.queryName(DBConstants.GET_TICKET));
+        // la liste IN est complétée à l'exécution
+        assertEquals("FIND_OPEN_TICKET_PLATES", ParkingMetrics.queryName(DBConstants.FIND_OPEN_TICKET_PLATES + "(?,?)"));
+        assertEquals(ParkingMetrics.OTHER_QUERY, ParkingMetrics.queryName("select 1"));
+    }
+
+    @Test
+    public void metricsAreWrittenInThePrometheusFormat() throws Exception
+    {
+        ParkingMetrics metrics = new ParkingMetrics();
+        metrics.recordEntry(TimeUnit.MICROSECONDS.toNanos(800));
+        metrics.recordEntry(TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.parkingFull();
+        metrics.query(DBConstants.GET_TICKET).record(TimeUnit.MICROSECONDS.toNanos(50));
+        metrics.query(DBConstants.GET_TICKET).error();
+        metrics.connectionError();
+
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE parkit_entry_seconds histogram\n"), text);
+        assertTrue(text.contains("parkit_entry_seconds_bucket{le=\"0.0005\"} 0\n"), text);
+        assertTrue(text.contains("parkit_entry_seconds_bucket{le=\"0.001\"} 1\n"), text);
+        assertTrue(text.contains("parkit_entry_seconds_bucket{le=\"0.025\"} 2\n"), text);
+        assertTrue(text.contains("parkit_entry_seconds_bucket{le=\"+Inf\"} 2\n"), text);
+        assertTrue(text.contains("parkit_entry_seconds_count 2\n"), text);
+        assertTrue(text.contains("parkit_exit_seconds_count 0\n"), text);
+        assertTrue(text.contains("parkit_entries_rejected_total{reason=\"parking_full\"} 1\n"), text);
+        assertTrue(text.contains("parkit_entries_rejected_total{reason=\"already_parked\"} 0\n"), text);
+        assertTrue(text.contains("parkit_query_seconds_bucket{query=\"GET_TICKET\",le=\"0.0001\"} 1\n"), text);
+        assertTrue(text.contains("parkit_query_seconds_count{query=\"GET_TICKET\"} 1\n"), text);
+        assertTrue(text.contains("parkit_db_errors_total{query=\"connection\"} 1\n"), text);
+        assertTrue(text.contains("parkit_db_errors_total{query=\"GET_TICKET\"} 1\n"), text);
+    }
+}
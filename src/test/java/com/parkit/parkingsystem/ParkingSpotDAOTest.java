@@ -0,0 +1,136 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ParkingSpotDAOTest
+{
+    private ParkingSpotDAO parkingSpotDAO;
+
+    @Mock
+    private DataBaseConfig dataBaseConfig;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement loadStatement;
+    @Mock
+    private PreparedStatement updateStatement;
+    @Mock
+    private ResultSet spots;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception
+    {
+        // parking : 1 CAR libre, 2 CAR occupée, 3 CAR libre, 4 BIKE libre
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        lenient().when(dataBaseConfig.getReadConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_ALL_PARKING_SPOTS)).thenReturn(loadStatement);
+        when(loadStatement.executeQuery()).thenReturn(spots);
+        when(spots.next()).thenReturn(true, true, true, true, false);
+        when(spots.getInt(1)).thenReturn(1, 2, 3, 4);
+        when(spots.getBoolean(2)).thenReturn(true, false, true, true);
+        when(spots.getString(3)).thenReturn("CAR", "CAR", "CAR", "BIKE");
+
+        parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+        assertTrue(parkingSpotDAO.enableSpotIndex());
+    }
+
+    @Test
+    public void nextAvailableSlotIsServedFromTheIndex() throws Exception
+    {
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(4, parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+        verify(connection, never()).prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+    }
+
+    @Test
+    public void updateParkingWritesThroughTheIndex() throws Exception
+    {
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(updateStatement);
+        when(updateStatement.executeUpdate()).thenReturn(1);
+
+        assertTrue(parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false)));
+        assertEquals(3, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+
+        assertTrue(parkingSpotDAO.updateParking(new ParkingSpot(2, ParkingType.CAR, true)));
+        assertEquals(2, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void failedUpdateLeavesTheIndexUntouched() throws Exception
+    {
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(updateStatement);
+        when(updateStatement.executeUpdate()).thenReturn(0);
+
+        assertFalse(parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false)));
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void fullTypeReturnsZeroLikeTheSqlQuery() throws Exception
+    {
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(updateStatement);
+        when(updateStatement.executeUpdate()).thenReturn(1);
+
+        parkingSpotDAO.updateParking(new ParkingSpot(4, ParkingType.BIKE, false));
+        assertEquals(0, parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+    }
+
+    @Test
+    public void occupancyIsReadFromTheCountersWithoutCountQueries() throws Exception
+    {
+        // second chargement du même parking pour les compteurs
+        when(spots.next()).thenReturn(true, true, true, true, false);
+        when(spots.getInt(1)).thenReturn(1, 2, 3, 4);
+        when(spots.getBoolean(2)).thenReturn(true, false, true, true);
+        when(spots.getString(3)).thenReturn("CAR", "CAR", "CAR", "BIKE");
+        assertTrue(parkingSpotDAO.enableOccupancyCounters());
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(updateStatement);
+        when(updateStatement.executeUpdate()).thenReturn(1);
+
+        parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+        parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+
+        Occupancy cars = parkingSpotDAO.getOccupancy(ParkingType.CAR);
+        assertEquals(3, cars.getTotal());
+        assertEquals(1, cars.getFree());
+        assertEquals(2, cars.getOccupied());
+        assertEquals(1, parkingSpotDAO.getOccupancy(ParkingType.BIKE).getFree());
+        assertEquals(3, parkingSpotDAO.countSlotByType(ParkingType.CAR));
+        verify(connection, never()).prepareStatement(DBConstants.COUNT_SLOT_BY_TYPE);
+        verify(connection, never()).prepareStatement(DBConstants.COUNT_FREE_SLOT_BY_TYPE);
+    }
+
+    @Test
+    public void disabledIndexFallsBackToSql() throws Exception
+    {
+        PreparedStatement nextSpotStatement = mock(PreparedStatement.class);
+        ResultSet nextSpot = mock(ResultSet.class);
+        when(connection.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT)).thenReturn(nextSpotStatement);
+        when(nextSpotStatement.executeQuery()).thenReturn(nextSpot);
+        when(nextSpot.next()).thenReturn(true);
+        when(nextSpot.getInt(1)).thenReturn(3);
+
+        parkingSpotDAO.disableSpotIndex();
+
+        assertEquals(3, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        verify(nextSpotStatement).setString(1, "CAR");
+    }
+}
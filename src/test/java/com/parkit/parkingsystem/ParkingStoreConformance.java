@@ -0,0 +1,149 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.Occupancy;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * What every store of tickets and spots must do, whatever it keeps them in. A subclass gives the stores of a lot laid
+ * out like {@code Data.sql}: car spots 1 to 3 and bike spots 4 and 5, all free and without any ticket.
+ */
+public abstract class ParkingStoreConformance
+{
+    protected abstract TicketRepository ticketRepository();
+
+    protected abstract SpotRepository spotRepository();
+
+    @Test
+    public void allocatesTheLowestFreeSpotAndOpensATicket()
+    {
+        assertEquals(1, spotRepository().getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(4, spotRepository().getNextAvailableSlot(ParkingType.BIKE));
+
+        Ticket ticket = spotRepository().allocateSpot(ParkingType.BIKE, "BIKE-1");
+
+        assertNotNull(ticket);
+        assertTrue(ticket.getId() > 0);
+        assertEquals(4, ticket.getParkingSpot().getId());
+        assertEquals(ParkingType.BIKE, ticket.getParkingSpot().getParkingType());
+        assertNotNull(ticket.getInTime());
+        assertNull(ticket.getOutTime());
+        assertEquals(5, spotRepository().getNextAvailableSlot(ParkingType.BIKE));
+        assertEquals(ticket.getId(), ticketRepository().getOpenTicket("BIKE-1").getId());
+        assertEquals(ticket.getId(), ticketRepository().getTicket("BIKE-1").getId());
+        assertFalse(ticketRepository().isRecurringUser("BIKE-1"));
+
+        Occupancy occupancy = spotRepository().getOccupancy(ParkingType.BIKE);
+        assertEquals(2, occupancy.getTotal());
+        assertEquals(1, occupancy.getFree());
+    }
+
+    @Test
+    public void refusesAVehicleAlreadyParkedWithoutTakingASpot()
+    {
+        spotRepository().allocateSpot(ParkingType.CAR, "CAR-1");
+
+        assertThrows(IllegalStateException.class, () -> spotRepository().allocateSpot(ParkingType.BIKE, "CAR-1"));
+        // la place de moto n'a pas été consommée
+        assertEquals(4, spotRepository().getNextAvailableSlot(ParkingType.BIKE));
+        assertEquals(2, spotRepository().getOccupancy(ParkingType.CAR).getFree());
+    }
+
+    @Test
+    public void answersNullWhenTheTypeIsFull()
+    {
+        assertNotNull(spotRepository().allocateSpot(ParkingType.BIKE, "BIKE-1"));
+        assertNotNull(spotRepository().allocateSpot(ParkingType.BIKE, "BIKE-2"));
+
+        assertNull(spotRepository().allocateSpot(ParkingType.BIKE, "BIKE-3"));
+        assertTrue(spotRepository().getNextAvailableSlot(ParkingType.BIKE) <= 0);
+        assertNull(ticketRepository().getOpenTicket("BIKE-3"));
+    }
+
+    @Test
+    public void exitClosesTheTicketAndFreesTheSpot()
+    {
+        Ticket ticket = spotRepository().allocateSpot(ParkingType.CAR, "CAR-1");
+        ticket.setOutTime(new Date(ticket.getInTime().getTime() + 3_600_000L));
+        ticket.setPrice(1.5);
+
+        assertTrue(ticketRepository().updateTicket(ticket));
+        // une deuxième barrière qui ferme le même ticket ne le facture pas une seconde fois
+        ticket.setPrice(3.0);
+        assertFalse(ticketRepository().updateTicket(ticket));
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        parkingSpot.setAvailable(true);
+        assertTrue(spotRepository().updateParking(parkingSpot));
+
+        assertNull(ticketRepository().getOpenTicket("CAR-1"));
+        Ticket closed = ticketRepository().getTicket("CAR-1");
+        assertNotNull(closed.getOutTime());
+        assertEquals(1.5, closed.getPrice());
+        assertTrue(ticketRepository().isRecurringUser("CAR-1"));
+        assertEquals(1, spotRepository().getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(3, spotRepository().getOccupancy(ParkingType.CAR).getFree());
+
+        // le véhicule peut revenir et reprendre la place libérée
+        assertEquals(1, spotRepository().allocateSpot(ParkingType.CAR, "CAR-1").getParkingSpot().getId());
+    }
+
+    @Test
+    public void ticketsHandedOutAreCopies()
+    {
+        Ticket ticket = spotRepository().allocateSpot(ParkingType.CAR, "CAR-1");
+        ticket.setOutTime(new Date());
+
+        assertNull(ticketRepository().getOpenTicket("CAR-1").getOutTime());
+    }
+
+    @Test
+    public void concurrentGatesGetDistinctSpots() throws Exception
+    {
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<Ticket>> entries = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+            {
+                String vehicleRegNumber = "CAR-" + i;
+                entries.add(gates.submit(() -> spotRepository().allocateSpot(ParkingType.CAR, vehicleRegNumber)));
+            }
+            Set<Integer> parkingNumbers = new HashSet<>();
+            int refused = 0;
+            for (Future<Ticket> entry : entries)
+            {
+                Ticket ticket = entry.get();
+                if (ticket == null)
+                {
+                    refused++;
+                }
+                else
+                {
+                    assertTrue(parkingNumbers.add(ticket.getParkingSpot().getId()));
+                }
+            }
+            assertEquals(3, parkingNumbers.size());
+            assertEquals(5, refused);
+            assertEquals(0, spotRepository().getOccupancy(ParkingType.CAR).getFree());
+        }
+        finally
+        {
+            gates.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.ReplicaSet;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ReplicaSetTest
+{
+    private final AtomicLong replicaBeat = new AtomicLong();
+    private DataBaseConfig replica;
+    private ReplicaSet replicaSet;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception
+    {
+        replica = mock(DataBaseConfig.class);
+        ConnectionPool pool = mock(ConnectionPool.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet heartbeat = mock(ResultSet.class);
+        when(replica.getPool()).thenReturn(pool);
+        when(pool.borrow()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.READ_HEARTBEAT)).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(heartbeat);
+        when(heartbeat.next()).thenReturn(true);
+        when(heartbeat.getLong(1)).thenAnswer(invocation -> replicaBeat.get());
+        // le primaire partage le pool simulé, seule l'écriture du battement y passe
+        DataBaseConfig primary = mock(DataBaseConfig.class);
+        when(primary.getPool()).thenReturn(pool);
+        when(connection.prepareStatement(DBConstants.WRITE_HEARTBEAT)).thenReturn(mock(PreparedStatement.class));
+
+        replicaSet = new ReplicaSet(primary, Collections.singletonList(replica), 1_000);
+    }
+
+    /**
+     * The replica has applied everything committed on the primary until now.
+     */
+    private void replicate() throws InterruptedException
+    {
+        Thread.sleep(2);
+        replicaBeat.set(System.currentTimeMillis());
+        replicaSet.checkReplicas();
+    }
+
+    @Test
+    public void readsGoToTheReplicaOnlyWithinTheStalenessBound() throws Exception
+    {
+        // jamais lu : le réplica est considéré comme infiniment en retard
+        assertNull(replicaSet.route("north"));
+
+        replicate();
+        assertSame(replica, replicaSet.route("north"));
+
+        replicaBeat.set(System.currentTimeMillis() - 5_000);
+        replicaSet.checkReplicas();
+        assertNull(replicaSet.route("north"));
+    }
+
+    @Test
+    public void aSessionReadsItsOwnWritesFromThePrimary() throws Exception
+    {
+        replicate();
+        replicaSet.beginWrite("north");
+        assertNull(replicaSet.route("north"));
+        assertSame(replica, replicaSet.route("south"));
+
+        // une fois rendue la connexion, le réplica n'a toujours pas l'écriture
+        replicaSet.endWrite("north");
+        assertNull(replicaSet.route("north"));
+
+        replicate();
+        assertSame(replica, replicaSet.route("north"));
+    }
+
+    @Test
+    public void caughtUpSessionsAreForgotten() throws Exception
+    {
+        replicaSet.beginWrite("north");
+        replicaSet.endWrite("north");
+        replicaSet.beginWrite("south");
+        replicate();
+
+        replicaSet.beat();
+
+        // "south" écrit encore, seule "north" est oubliée
+        assertEquals(1, replicaSet.getSessionCount());
+        assertNull(replicaSet.route("south"));
+        assertSame(replica, replicaSet.route("north"));
+    }
+
+    @Test
+    public void anUnreachableReplicaIsNoLongerReadOnceItsHeartbeatIsTooOld() throws Exception
+    {
+        replicaBeat.set(System.currentTimeMillis() - 900);
+        replicaSet.checkReplicas();
+        assertSame(replica, replicaSet.route("north"));
+
+        when(replica.getPool()).thenThrow(new ClassNotFoundException("no driver"));
+        replicaSet.checkReplicas();
+        Thread.sleep(150);
+        assertNull(replicaSet.route("north"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.Facilities;
+import com.parkit.parkingsystem.service.Facility;
+import com.parkit.parkingsystem.service.ReportService;
+import com.parkit.parkingsystem.service.RevenueReport;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RevenueReportTest
+{
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+    private static final LocalDate JANUARY_FIRST = LocalDate.of(2024, 1, 1);
+
+    private static Ticket ticket(ParkingType parkingType, LocalDate day, int exitHour, int minutes, double price)
+    {
+        ZonedDateTime out = day.atTime(exitHour, 30).atZone(ZONE);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setVehicleRegNumber("ABC");
+        ticket.setInTime(Date.from(out.minusMinutes(minutes).toInstant()));
+        ticket.setOutTime(Date.from(out.toInstant()));
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    @Test
+    public void ticketsAreAggregatedByDayTypeAndHourOfExit() throws Exception
+    {
+        RevenueReport report = new RevenueReport(JANUARY_FIRST, JANUARY_FIRST.plusDays(2), ZONE);
+        report.add(ticket(ParkingType.CAR, JANUARY_FIRST, 8, 90, 2.25));
+        report.add(ticket(ParkingType.CAR, JANUARY_FIRST, 8, 60, 1.5));
+        report.add(ticket(ParkingType.BIKE, JANUARY_FIRST.plusDays(1), 23, 120, 2.0));
+        report.add(ticket(ParkingType.CAR, JANUARY_FIRST.plusDays(2), 0, 60, 1.5));
+
+        assertEquals(2, report.getTicketCount(JANUARY_FIRST, ParkingType.CAR, 8));
+        assertEquals(375, report.getRevenueCents(JANUARY_FIRST, ParkingType.CAR, 8));
+        assertEquals(150, report.getParkedMinutes(JANUARY_FIRST, ParkingType.CAR, 8));
+        assertEquals(200, report.getTotalRevenueCents(ParkingType.BIKE));
+        assertEquals(1, report.getIgnoredCount());
+
+        StringWriter csv = new StringWriter();
+        report.writeCsv(csv);
+        assertEquals("date,hour,type,tickets,revenue,parked_minutes\n"
+                     + "2024-01-01,8,CAR,2,3.75,150\n"
+                     + "2024-01-02,23,BIKE,1,2.00,120\n", csv.toString());
+
+        StringWriter json = new StringWriter();
+        report.writeJson(json);
+        assertEquals("[\n{\"date\":\"2024-01-01\",\"hour\":8,\"type\":\"CAR\",\"tickets\":2,\"revenue\":3.75,\"parkedMinutes\":150},\n"
+                     + "{\"date\":\"2024-01-02\",\"hour\":23,\"type\":\"BIKE\",\"tickets\":1,\"revenue\":2.00,\"parkedMinutes\":120}\n]\n",
+                     json.toString());
+    }
+
+    @Test
+    public void parallelPartitionsGiveTheSameReport() throws Exception
+    {
+        List<Ticket> history = new ArrayList<>();
+        for (int day = 0; day < 31; day++)
+        {
+            for (int hour = 0; hour < 24; hour += 5)
+            {
+                history.add(ticket(hour % 2 == 0 ? ParkingType.CAR : ParkingType.BIKE, JANUARY_FIRST.plusDays(day), hour, 45 + day, 1.13));
+            }
+        }
+        // la base simulée ne renvoie que les tickets sortis dans l'intervalle demandé
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        doAnswer(invocation ->
+        {
+            Date from = invocation.getArgument(0);
+            Date to = invocation.getArgument(1);
+            Consumer<Ticket> consumer = invocation.getArgument(2);
+            history.stream().filter(t -> !t.getOutTime().before(from) && t.getOutTime().before(to)).forEach(consumer);
+            return null;
+        }).when(ticketDAO).forEachClosedTicket(any(Date.class), any(Date.class), any());
+
+        ReportService reportService = new ReportService(ticketDAO, ZONE);
+        LocalDate february = JANUARY_FIRST.plusMonths(1);
+        RevenueReport sequential = reportService.revenueReport(JANUARY_FIRST, february);
+        RevenueReport parallel = reportService.revenueReport(JANUARY_FIRST, february, 4);
+
+        verify(ticketDAO, times(5)).forEachClosedTicket(any(Date.class), any(Date.class), any());
+        assertEquals(history.size(), parallel.getTotalTicketCount());
+        assertEquals(0, parallel.getIgnoredCount());
+        StringWriter expected = new StringWriter();
+        sequential.writeCsv(expected);
+        StringWriter actual = new StringWriter();
+        parallel.writeCsv(actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void facilitiesAreReportedInParallelEachOnItsShard() throws Exception
+    {
+        // chaque parking attend l'autre : le rapport ne se termine que s'ils sont lus en même temps
+        CyclicBarrier bothRunning = new CyclicBarrier(2);
+        List<Facility> facilities = new ArrayList<>();
+        for (String facilityId : Arrays.asList("north", "south"))
+        {
+            Ticket ticket = ticket(ParkingType.CAR, JANUARY_FIRST, 10, 60, "north".equals(facilityId) ? 1.5 : 3.0);
+            TicketDAO ticketDAO = mock(TicketDAO.class);
+            doAnswer(invocation ->
+            {
+                bothRunning.await(5, TimeUnit.SECONDS);
+                Consumer<Ticket> consumer = invocation.getArgument(2);
+                consumer.accept(ticket);
+                return null;
+            }).when(ticketDAO).forEachClosedTicket(any(Date.class), any(Date.class), any());
+            facilities.add(new Facility(facilityId, null, new ReportService(ticketDAO, ZONE)));
+        }
+
+        Map<String, RevenueReport> reports = new Facilities(facilities).revenueReports(JANUARY_FIRST, JANUARY_FIRST.plusDays(1), 1);
+
+        assertEquals(Arrays.asList("north", "south"), new ArrayList<>(reports.keySet()));
+        assertEquals(150, reports.get("north").getRevenueCents(JANUARY_FIRST, ParkingType.CAR, 10));
+        assertEquals(300, reports.get("south").getRevenueCents(JANUARY_FIRST, ParkingType.CAR, 10));
+    }
+}
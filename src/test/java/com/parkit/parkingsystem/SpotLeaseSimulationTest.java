@@ -0,0 +1,165 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingStore;
+import com.parkit.parkingsystem.dao.LeasedSpotAllocator;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Several nodes in one JVM sharing a parking, the in-memory store standing for the database.
+ */
+public class SpotLeaseSimulationTest
+{
+    private final List<LeasedSpotAllocator> nodes = new ArrayList<>();
+
+    @AfterEach
+    private void tearDownPerTest()
+    {
+        nodes.forEach(LeasedSpotAllocator::close);
+    }
+
+    private LeasedSpotAllocator node(InMemoryParkingStore dataBase, String nodeId, int blockSize, long leaseMillis)
+    {
+        LeasedSpotAllocator node = new LeasedSpotAllocator(nodeId, dataBase, dataBase, blockSize, leaseMillis);
+        nodes.add(node);
+        return node;
+    }
+
+    private static void exit(InMemoryParkingStore dataBase, LeasedSpotAllocator node, Ticket ticket)
+    {
+        Ticket open = dataBase.getOpenTicket(ticket.getVehicleRegNumber());
+        open.setOutTime(new Date());
+        assertTrue(dataBase.updateTicket(open));
+        open.getParkingSpot().setAvailable(true);
+        assertTrue(node.updateParking(open.getParkingSpot()));
+    }
+
+    @Test
+    public void gatesOfAllTheNodesNeverShareASpot() throws Exception
+    {
+        InMemoryParkingStore dataBase = new InMemoryParkingStore(40, 0);
+        for (int i = 0; i < 4; i++)
+        {
+            node(dataBase, "node-" + i, 4, 60_000).start(2);
+        }
+        // chaque véhicule garé est enregistré avec sa place, deux véhicules sur la même place font échouer le test
+        ConcurrentHashMap<Integer, String> parked = new ConcurrentHashMap<>();
+        ExecutorService gates = Executors.newFixedThreadPool(16);
+        try
+        {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int gate = 0; gate < 16; gate++)
+            {
+                LeasedSpotAllocator node = nodes.get(gate % 4);
+                String prefix = "G" + gate + "-";
+                runs.add(gates.submit(() -> {
+                    List<Ticket> mine = new ArrayList<>();
+                    for (int vehicle = 0; vehicle < 500; vehicle++)
+                    {
+                        Ticket ticket = node.allocateSpot(ParkingType.CAR, prefix + vehicle);
+                        if (ticket != null)
+                        {
+                            assertNull(parked.putIfAbsent(ticket.getParkingSpot().getId(), ticket.getVehicleRegNumber()));
+                            mine.add(ticket);
+                        }
+                        if (!mine.isEmpty() && (ticket == null || ThreadLocalRandom.current().nextBoolean()))
+                        {
+                            Ticket leaving = mine.remove(ThreadLocalRandom.current().nextInt(mine.size()));
+                            assertTrue(parked.remove(leaving.getParkingSpot().getId(), leaving.getVehicleRegNumber()));
+                            exit(dataBase, node, leaving);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs)
+            {
+                run.get();
+            }
+        }
+        finally
+        {
+            gates.shutdownNow();
+        }
+        assertEquals(40 - parked.size(), dataBase.getOccupancy(ParkingType.CAR).getFree());
+    }
+
+    @Test
+    public void theLotFillsUpWhateverNodeTheVehiclesUse()
+    {
+        InMemoryParkingStore dataBase = new InMemoryParkingStore(12, 0);
+        LeasedSpotAllocator greedy = node(dataBase, "greedy", 12, 60_000);
+        LeasedSpotAllocator other = node(dataBase, "other", 4, 60_000);
+        greedy.maintain();
+        other.maintain();
+        assertEquals(12, greedy.getLeasedCount(ParkingType.CAR));
+        assertEquals(0, other.getLeasedCount(ParkingType.CAR));
+
+        Set<Integer> spots = new HashSet<>();
+        for (int vehicle = 0; vehicle < 12; vehicle++)
+        {
+            // le second nœud n'a aucun bail, il prend des places réservées par le premier
+            LeasedSpotAllocator node = vehicle % 2 == 0 ? greedy : other;
+            Ticket ticket = node.allocateSpot(ParkingType.CAR, "V" + vehicle);
+            assertNotNull(ticket, "vehicle " + vehicle);
+            assertTrue(spots.add(ticket.getParkingSpot().getId()));
+        }
+        assertNull(greedy.allocateSpot(ParkingType.CAR, "FULL"));
+        assertNull(other.allocateSpot(ParkingType.CAR, "FULL"));
+        assertEquals(0, greedy.getLeasedCount(ParkingType.CAR));
+    }
+
+    @Test
+    public void aScarceTypeIsRebalancedToTheNodeRunningShort()
+    {
+        InMemoryParkingStore dataBase = new InMemoryParkingStore(8, 0);
+        LeasedSpotAllocator greedy = node(dataBase, "greedy", 8, 60_000);
+        LeasedSpotAllocator shortNode = node(dataBase, "short", 2, 60_000);
+        greedy.maintain();
+        shortNode.maintain();
+        assertEquals(0, shortNode.getLeasedCount(ParkingType.CAR));
+
+        // plus aucune place hors bail : le nœud qui en a trop n'en garde qu'un quart de bloc
+        greedy.maintain();
+        assertEquals(2, greedy.getLeasedCount(ParkingType.CAR));
+        shortNode.maintain();
+        assertEquals(2, shortNode.getLeasedCount(ParkingType.CAR));
+        assertEquals(3, shortNode.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(3, shortNode.allocateSpot(ParkingType.CAR, "SHORT").getParkingSpot().getId());
+    }
+
+    @Test
+    public void anExpiredLeaseIsTakenOverByAnotherNode() throws Exception
+    {
+        InMemoryParkingStore dataBase = new InMemoryParkingStore(2, 0);
+        LeasedSpotAllocator stale = node(dataBase, "stale", 2, 1);
+        LeasedSpotAllocator live = node(dataBase, "live", 2, 60_000);
+        stale.maintain();
+        Thread.sleep(5);
+        live.maintain();
+        assertEquals(2, live.getLeasedCount(ParkingType.CAR));
+
+        Ticket first = stale.allocateSpot(ParkingType.CAR, "STALE");
+        Ticket second = live.allocateSpot(ParkingType.CAR, "LIVE");
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotEquals(first.getParkingSpot().getId(), second.getParkingSpot().getId());
+        assertEquals(0, dataBase.getOccupancy(ParkingType.CAR).getFree());
+    }
+}
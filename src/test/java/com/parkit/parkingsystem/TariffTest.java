@@ -0,0 +1,163 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareEngine;
+import com.parkit.parkingsystem.service.Tariff;
+import com.parkit.parkingsystem.service.TariffReloader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TariffTest
+{
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Test
+    public void timeOfDayRuleAppliesToTheMinutesItCovers()
+    {
+        Tariff tariff = tariff("CAR.rule.1=MON-FRI 08:00-19:00 2.50");
+
+        // lundi 1er janvier 2024 : une heure à 1,50 puis une heure à 2,50
+        assertEquals(400, tariff.priceCents(ParkingType.CAR, at("2024-01-01T07:00"), at("2024-01-01T09:00"), false));
+        assertEquals(500, tariff.priceCents(ParkingType.CAR, at("2024-01-01T08:00"), at("2024-01-01T10:00"), false));
+        // la règle ne concerne pas les vélos
+        assertEquals(200, tariff.priceCents(ParkingType.BIKE, at("2024-01-01T08:00"), at("2024-01-01T10:00"), false));
+    }
+
+    @Test
+    public void weekendRuleAndLaterRuleWins()
+    {
+        Tariff tariff = tariff("CAR.rule.1=MON-SUN 00:00-24:00 2.00",
+                               "CAR.rule.2=SAT,SUN 00:00-24:00 1.00");
+
+        // vendredi 23h au samedi 1h
+        assertEquals(300, tariff.priceCents(ParkingType.CAR, at("2024-01-05T23:00"), at("2024-01-06T01:00"), false));
+    }
+
+    @Test
+    public void overnightRuleRunsPastMidnight()
+    {
+        Tariff tariff = tariff("BIKE.rule.1=SUN 22:00-06:00 0.50");
+
+        // du dimanche 21h au lundi 7h : 2h à 1,00 et 8h à 0,50
+        assertEquals(600, tariff.priceCents(ParkingType.BIKE, at("2024-01-07T21:00"), at("2024-01-08T07:00"), false));
+    }
+
+    @Test
+    public void dailyCapLimitsEachCalendarDay()
+    {
+        Tariff tariff = tariff("CAR.ratePerHour=2.00", "CAR.dailyCap=20.00");
+
+        assertEquals(1000, tariff.priceCents(ParkingType.CAR, at("2024-01-01T10:00"), at("2024-01-01T15:00"), false));
+        assertEquals(2000, tariff.priceCents(ParkingType.CAR, at("2024-01-01T00:00"), at("2024-01-01T23:00"), false));
+        // 2h le premier jour, 9 jours plafonnés, 3h le dernier jour
+        assertEquals(400 + 9 * 2000 + 600, tariff.priceCents(ParkingType.CAR, at("2024-01-01T22:00"), at("2024-01-11T03:00"), false));
+        // la réduction s'applique au total plafonné
+        assertEquals(1900, tariff.priceCents(ParkingType.CAR, at("2024-01-01T00:00"), at("2024-01-01T23:00"), true));
+    }
+
+    @Test
+    public void longStaysAreWholeWeeksPlusTheRemainder()
+    {
+        Tariff tariff = tariff("CAR.rule.1=MON-FRI 08:00-19:00 2.50");
+        long week = tariff.priceCents(ParkingType.CAR, at("2024-01-01T00:00"), at("2024-01-08T00:00"), false);
+        long remainder = tariff.priceCents(ParkingType.CAR, at("2024-01-01T00:00"), at("2024-01-01T12:00"), false);
+
+        assertEquals(52 * week + remainder, tariff.priceCents(ParkingType.CAR, at("2024-01-01T00:00"), at("2024-12-30T12:00"), false));
+    }
+
+    @Test
+    public void rulesFollowTheTariffZone()
+    {
+        Tariff tariff = tariff("zone=Europe/Paris", "CAR.rule.1=MON-SUN 08:00-09:00 3.00");
+
+        // 7h UTC en hiver correspond à 8h à Paris
+        assertEquals(300, tariff.priceCents(ParkingType.CAR, at("2024-01-01T07:00"), at("2024-01-01T08:00"), false));
+        assertEquals(150, tariff.priceCents(ParkingType.CAR, at("2024-01-01T08:00"), at("2024-01-01T09:00"), false));
+        assertEquals(ZoneId.of("Europe/Paris"), tariff.getZone());
+    }
+
+    @Test
+    public void freeMinutesAndDiscountAreConfigurable()
+    {
+        Tariff tariff = tariff("freeMinutes=60", "recurringDiscountPercent=10");
+
+        assertEquals(0, tariff.priceCents(ParkingType.CAR, 0, HOUR, false));
+        assertEquals(270, tariff.priceCents(ParkingType.CAR, 0, 2 * HOUR, true));
+    }
+
+    @Test
+    public void invalidTariffsAreRejected()
+    {
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.ratePerHour=1.505"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.ratePerHour=-1"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.rule.1=XYZ 08:00-19:00 2.50"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.rule.1=MON 08:00 2.50"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.rule.1=MON 25:00-26:00 2.50"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.rule.first=MON 08:00-09:00 2.50"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("zone=Nowhere/Nothing"));
+    }
+
+    @Test
+    public void reloaderSwapsTheTariffOfARunningEngine() throws Exception
+    {
+        Path file = Files.createTempFile("tariff", ".properties");
+        try
+        {
+            FareEngine fareEngine = new FareEngine();
+            Files.write(file, "CAR.ratePerHour=3.00".getBytes(StandardCharsets.UTF_8));
+            TariffReloader reloader = new TariffReloader(file, fareEngine);
+
+            assertTrue(reloader.reloadIfModified());
+            assertEquals(300, fareEngine.priceCents(ParkingType.CAR, 0, HOUR, false));
+            assertFalse(reloader.reloadIfModified());
+
+            // un fichier invalide est ignoré et le tarif en cours est conservé
+            FileTime invalidVersion = FileTime.fromMillis(System.currentTimeMillis() + 2000);
+            Files.write(file, "CAR.ratePerHour=abc".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, invalidVersion);
+            assertFalse(reloader.reloadIfModified());
+            assertEquals(300, fareEngine.priceCents(ParkingType.CAR, 0, HOUR, false));
+            // il n'est relu qu'à sa prochaine modification, pas à chaque vérification
+            Files.write(file, "CAR.ratePerHour=5.00".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, invalidVersion);
+            assertFalse(reloader.reloadIfModified());
+            assertEquals(300, fareEngine.priceCents(ParkingType.CAR, 0, HOUR, false));
+
+            Files.write(file, "CAR.ratePerHour=4.00".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 4000));
+            assertTrue(reloader.reloadIfModified());
+            assertEquals(400, fareEngine.priceCents(ParkingType.CAR, 0, HOUR, false));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    private static Tariff tariff(String... lines)
+    {
+        Properties properties = new Properties();
+        for (String line : lines)
+        {
+            int separator = line.indexOf('=');
+            properties.setProperty(line.substring(0, separator), line.substring(separator + 1));
+        }
+        return Tariff.fromProperties(properties);
+    }
+
+    private static long at(String utcDateTime)
+    {
+        return LocalDateTime.parse(utcDateTime).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,202 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketArchive;
+import com.parkit.parkingsystem.dao.TicketArchiver;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class TicketArchiveTest
+{
+    private Path directory;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException
+    {
+        directory = Files.createTempDirectory("ticket-archive");
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Ticket closedTicket(int id, String vehicleRegNumber, ParkingType parkingType, long inTime)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(id % 5 + 1, parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(new Date(inTime + 5_400_000L));
+        ticket.setPrice(2.25);
+        return ticket;
+    }
+
+    /**
+     * Archive rempli par l'archiver, les tickets venant d'un DAO simulé.
+     */
+    private TicketArchive archive(Ticket... tickets) throws Exception
+    {
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        when(ticketDAO.getClosedTicketsBefore(any(Date.class), anyInt())).thenReturn(Arrays.asList(tickets)).thenReturn(Collections.emptyList());
+        TicketArchive archive = TicketArchive.open(directory);
+        new TicketArchiver(archive, ticketDAO, tickets.length).archiveClosedBefore(new Date());
+        return archive;
+    }
+
+    @Test
+    public void historyOfAVehicleIsFoundAcrossArchivings() throws Exception
+    {
+        try (TicketArchive archive = archive(closedTicket(1, "ABC", ParkingType.CAR, 3_000_000L),
+                                             closedTicket(2, "DEF", ParkingType.BIKE, 1_000_000L)))
+        {
+            TicketDAO ticketDAO = mock(TicketDAO.class);
+            when(ticketDAO.getClosedTicketsBefore(any(Date.class), anyInt()))
+                .thenReturn(Collections.singletonList(closedTicket(3, "ABC", ParkingType.CAR, 1_000_000L)))
+                .thenReturn(Collections.emptyList());
+            assertEquals(1, new TicketArchiver(archive, ticketDAO).archiveClosedBefore(new Date()));
+
+            assertEquals(3, archive.size());
+            assertTrue(archive.contains("ABC"));
+            assertFalse(archive.contains("XYZ"));
+            assertEquals(2, archive.countTickets("ABC"));
+
+            List<Ticket> history = archive.findTickets("ABC");
+            assertEquals(3, history.get(0).getId());
+            Ticket last = archive.findLastTicket("ABC");
+            assertEquals(1, last.getId());
+            assertEquals("ABC", last.getVehicleRegNumber());
+            assertEquals(2, last.getParkingSpot().getId());
+            assertEquals(ParkingType.CAR, last.getParkingSpot().getParkingType());
+            assertEquals(3_000_000L, last.getInTime().getTime());
+            assertEquals(8_400_000L, last.getOutTime().getTime());
+            assertEquals(2.25, last.getPrice());
+            assertEquals(ParkingType.BIKE, archive.findLastTicket("DEF").getParkingSpot().getParkingType());
+        }
+    }
+
+    @Test
+    public void aRecordIsOnlyFoundByItsOwnPlate() throws Exception
+    {
+        archive(closedTicket(1, "ABC", ParkingType.CAR, 0), closedTicket(2, "DEF", ParkingType.CAR, 0)).close();
+        // le premier enregistrement garde l'empreinte de "ABC" mais porte "ABD" : une collision d'empreintes
+        try (FileChannel records = FileChannel.open(directory.resolve("tickets.archive"), StandardOpenOption.WRITE))
+        {
+            records.write(ByteBuffer.wrap("ABD".getBytes(StandardCharsets.UTF_8)), 32 + 48);
+        }
+
+        try (TicketArchive archive = TicketArchive.open(directory))
+        {
+            assertFalse(archive.contains("ABC"));
+            assertEquals(0, archive.countTickets("ABC"));
+            assertNull(archive.findLastTicket("ABC"));
+            assertEquals("DEF", archive.findLastTicket("DEF").getVehicleRegNumber());
+        }
+    }
+
+    @Test
+    public void ticketsClosedInARangeAreStreamedWithTheOnesStillInTheDataBase() throws Exception
+    {
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        when(ticketDAO.getClosedTicketsBefore(any(Date.class), anyInt()))
+            .thenReturn(Arrays.asList(closedTicket(1, "ABC", ParkingType.CAR, 0), closedTicket(2, "DEF", ParkingType.BIKE, 10_000_000L)))
+            .thenReturn(Collections.singletonList(closedTicket(3, "GHI", ParkingType.CAR, 20_000_000L)));
+        doNothing().doThrow(new SQLException("connection lost")).when(ticketDAO).deleteTickets(any());
+
+        try (TicketArchive archive = TicketArchive.open(directory))
+        {
+            assertThrows(SQLException.class, () -> new TicketArchiver(archive, ticketDAO, 2).archiveClosedBefore(new Date()));
+
+            // les tickets sortis avant 10 000 000 ms ne font pas partie de l'intervalle
+            List<String> streamed = new ArrayList<>();
+            Set<Integer> notDeleted = archive.forEachClosedTicket(new Date(10_000_000L), new Date(30_000_000L),
+                    ticket -> streamed.add(ticket.getId() + ":" + ticket.getVehicleRegNumber() + ":" + ticket.getParkingSpot().getParkingType()
+                                           + ":" + ticket.getOutTime().getTime() + ":" + ticket.getPrice()));
+
+            assertEquals(Arrays.asList("2:DEF:BIKE:15400000:2.25", "3:GHI:CAR:25400000:2.25"), streamed);
+            // le dernier lot n'a pas pu être supprimé de la base, le rapport ne doit pas l'y compter une seconde fois
+            assertEquals(Collections.singleton(3), notDeleted);
+
+            // un rapport lancé à côté lit la même archive sans la modifier
+            try (TicketArchive readOnly = TicketArchive.openReadOnly(directory))
+            {
+                assertEquals(3, readOnly.size());
+                assertEquals(1, readOnly.countTickets("GHI"));
+                assertEquals(notDeleted, readOnly.forEachClosedTicket(new Date(10_000_000L), new Date(30_000_000L), ticket -> { }));
+            }
+        }
+    }
+
+    @Test
+    public void incompleteArchivingIsDroppedAndIndexRebuilt() throws Exception
+    {
+        archive(closedTicket(1, "ABC", ParkingType.CAR, 0), closedTicket(2, "DEF", ParkingType.CAR, 0)).close();
+        // crash pendant l'écriture d'un lot : enregistrement non validé et index perdu
+        Files.write(directory.resolve("tickets.archive"), new byte[48], StandardOpenOption.APPEND);
+        Files.delete(directory.resolve("tickets.archive.idx"));
+
+        try (TicketArchive archive = TicketArchive.open(directory))
+        {
+            assertEquals(2, archive.size());
+            assertEquals(1, archive.countTickets("ABC"));
+            assertEquals(1, archive.countTickets("DEF"));
+        }
+    }
+
+    @Test
+    public void archivedBatchIsDeletedBeforeTheNextOneAfterAFailure() throws Exception
+    {
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        when(ticketDAO.getClosedTicketsBefore(any(Date.class), anyInt()))
+            .thenReturn(Arrays.asList(closedTicket(1, "ABC", ParkingType.CAR, 0), closedTicket(2, "DEF", ParkingType.CAR, 0)))
+            .thenReturn(Collections.singletonList(closedTicket(3, "GHI", ParkingType.CAR, 0)));
+        doThrow(new SQLException("connection lost")).doNothing().when(ticketDAO).deleteTickets(any());
+
+        try (TicketArchive archive = TicketArchive.open(directory))
+        {
+            TicketArchiver archiver = new TicketArchiver(archive, ticketDAO, 2);
+            assertThrows(SQLException.class, () -> archiver.archiveClosedBefore(new Date()));
+            // le lot est déjà lisible dans l'archive
+            assertTrue(archive.contains("ABC"));
+        }
+
+        try (TicketArchive archive = TicketArchive.open(directory))
+        {
+            assertEquals(1, new TicketArchiver(archive, ticketDAO, 2).archiveClosedBefore(new Date()));
+            assertEquals(3, archive.size());
+        }
+        verify(ticketDAO, times(2)).deleteTickets(Arrays.asList(1, 2));
+        verify(ticketDAO).deleteTickets(Collections.singletonList(3));
+    }
+}
@@ -0,0 +1,325 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SaveStatus;
+import com.parkit.parkingsystem.dao.OpenTicketRegistry;
+import com.parkit.parkingsystem.dao.TicketArchive;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+public class TicketDAOTest
+{
+    private TicketDAO ticketDAO;
+    private Connection connection;
+    private PreparedStatement insertStatement;
+    private ResultSet openPlates;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception
+    {
+        DataBaseConfig dataBaseConfig = mock(DataBaseConfig.class);
+        connection = mock(Connection.class);
+        insertStatement = mock(PreparedStatement.class);
+        PreparedStatement openPlatesStatement = mock(PreparedStatement.class);
+        openPlates = mock(ResultSet.class);
+
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(dataBaseConfig.getReadConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(insertStatement);
+        when(insertStatement.getGeneratedKeys()).thenReturn(mock(ResultSet.class));
+        when(connection.prepareStatement(startsWith(DBConstants.FIND_OPEN_TICKET_PLATES))).thenReturn(openPlatesStatement);
+        when(openPlatesStatement.executeQuery()).thenReturn(openPlates);
+
+        ticketDAO = new TicketDAO(dataBaseConfig);
+    }
+
+    private Ticket ticket(String vehicleRegNumber, boolean closed)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        ticket.setOutTime(closed ? new Date() : null);
+        return ticket;
+    }
+
+    @Test
+    public void ticketsAreSentInCommittedChunks() throws Exception
+    {
+        List<SaveStatus> statuses = ticketDAO.saveTickets(Arrays.asList(ticket("A", true), ticket("B", true), ticket("C", true),
+                                                                        ticket("D", true), ticket("E", true)), 2);
+
+        assertEquals(Arrays.asList(SaveStatus.SAVED, SaveStatus.SAVED, SaveStatus.SAVED, SaveStatus.SAVED, SaveStatus.SAVED), statuses);
+        verify(insertStatement, times(5)).addBatch();
+        verify(insertStatement, times(3)).executeBatch();
+        verify(connection, times(3)).commit();
+        verify(insertStatement, never()).execute();
+    }
+
+    @Test
+    public void openTicketsOfParkedVehiclesAreRefused() throws Exception
+    {
+        // "A" est déjà dans le parking d'après la base, "B" entre deux fois dans le lot rejoué
+        when(openPlates.next()).thenReturn(true, false);
+        when(openPlates.getString(1)).thenReturn("A");
+
+        List<SaveStatus> statuses = ticketDAO.saveTickets(Arrays.asList(ticket("A", false), ticket("B", false),
+                                                                        ticket("B", false), ticket("A", true)));
+
+        assertEquals(Arrays.asList(SaveStatus.DUPLICATE_OPEN_TICKET, SaveStatus.SAVED,
+                                   SaveStatus.DUPLICATE_OPEN_TICKET, SaveStatus.SAVED), statuses);
+        verify(insertStatement, times(2)).addBatch();
+    }
+
+    @Test
+    public void failingChunkIsRolledBackWithoutUndoingThePreviousOnes() throws Exception
+    {
+        when(insertStatement.executeBatch()).thenReturn(new int[]{1, 1}).thenThrow(new BatchUpdateException());
+
+        List<SaveStatus> statuses = ticketDAO.saveTickets(Arrays.asList(ticket("A", false), ticket("B", false),
+                                                                        ticket("C", false), ticket("D", false)), 2);
+
+        assertEquals(Arrays.asList(SaveStatus.SAVED, SaveStatus.SAVED, SaveStatus.FAILED, SaveStatus.FAILED), statuses);
+        verify(connection, times(1)).commit();
+        verify(connection, times(1)).rollback();
+    }
+
+    @Test
+    public void closedTicketsAreStreamedThroughABoundedCursor() throws Exception
+    {
+        PreparedStatement reportStatement = mock(PreparedStatement.class);
+        ResultSet rows = mock(ResultSet.class);
+        when(connection.prepareStatement(DBConstants.GET_TICKETS_CLOSED_BETWEEN, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+            .thenReturn(reportStatement);
+        when(reportStatement.executeQuery()).thenReturn(rows);
+        when(rows.next()).thenReturn(true, true, false);
+        when(rows.getString(6)).thenReturn("CAR");
+        when(rows.getString(7)).thenReturn("A", "B");
+
+        List<String> plates = new ArrayList<>();
+        ticketDAO.forEachClosedTicket(new Date(0), new Date(), ticket -> plates.add(ticket.getVehicleRegNumber()));
+
+        assertEquals(Arrays.asList("A", "B"), plates);
+        verify(reportStatement).setFetchSize(TicketDAO.REPORT_FETCH_SIZE);
+        verify(rows).close();
+    }
+
+    private void warmRecurringUserCache(String vehicleRegNumber, boolean singleWriter) throws Exception
+    {
+        PreparedStatement recurringUsersStatement = mock(PreparedStatement.class);
+        ResultSet recurringUsers = mock(ResultSet.class);
+        when(connection.prepareStatement(DBConstants.GET_RECURRING_USERS)).thenReturn(recurringUsersStatement);
+        when(recurringUsersStatement.executeQuery()).thenReturn(recurringUsers);
+        when(recurringUsers.next()).thenReturn(true, false);
+        when(recurringUsers.getString(1)).thenReturn(vehicleRegNumber);
+        assertTrue(ticketDAO.enableRecurringUserCache(1000, 0.01, 100, singleWriter));
+    }
+
+    @Test
+    public void unknownVehicleIsNotRecurringWithoutQuery() throws Exception
+    {
+        warmRecurringUserCache("KNOWN", true);
+
+        assertFalse(ticketDAO.isRecurringUser("NEVER-SEEN"));
+        verify(connection, never()).prepareStatement(DBConstants.IS_RECURRING_USER);
+    }
+
+    @Test
+    public void unknownVehicleIsQueriedWhenOtherProcessesWrite() throws Exception
+    {
+        // le ticket de "ELSEWHERE" a été clos par un autre nœud après le chargement du cache
+        warmRecurringUserCache("KNOWN", false);
+        PreparedStatement countStatement = mock(PreparedStatement.class);
+        ResultSet count = mock(ResultSet.class);
+        when(connection.prepareStatement(DBConstants.IS_RECURRING_USER)).thenReturn(countStatement);
+        when(countStatement.executeQuery()).thenReturn(count);
+        when(count.next()).thenReturn(true);
+        when(count.getInt(1)).thenReturn(1);
+
+        assertTrue(ticketDAO.isRecurringUser("ELSEWHERE"));
+        assertTrue(ticketDAO.isRecurringUser("ELSEWHERE"));
+        verify(connection, times(1)).prepareStatement(DBConstants.IS_RECURRING_USER);
+    }
+
+    @Test
+    public void confirmedRecurringUserIsOnlyQueriedOnce() throws Exception
+    {
+        warmRecurringUserCache("KNOWN", true);
+        PreparedStatement countStatement = mock(PreparedStatement.class);
+        ResultSet count = mock(ResultSet.class);
+        when(connection.prepareStatement(DBConstants.IS_RECURRING_USER)).thenReturn(countStatement);
+        when(countStatement.executeQuery()).thenReturn(count);
+        when(count.next()).thenReturn(true);
+        when(count.getInt(1)).thenReturn(2);
+
+        assertTrue(ticketDAO.isRecurringUser("KNOWN"));
+        assertTrue(ticketDAO.isRecurringUser("KNOWN"));
+        verify(connection, times(1)).prepareStatement(DBConstants.IS_RECURRING_USER);
+    }
+
+    private void updatedRows(int rows) throws Exception
+    {
+        PreparedStatement updateStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(DBConstants.UPDATE_TICKET)).thenReturn(updateStatement);
+        when(updateStatement.executeUpdate()).thenReturn(rows);
+    }
+
+    @Test
+    public void closingATicketMakesTheVehicleRecurring() throws Exception
+    {
+        warmRecurringUserCache("KNOWN", true);
+        updatedRows(1);
+
+        assertTrue(ticketDAO.updateTicket(ticket("NEW", true)));
+
+        assertTrue(ticketDAO.isRecurringUser("NEW"));
+        verify(connection, never()).prepareStatement(DBConstants.IS_RECURRING_USER);
+    }
+
+    @Test
+    public void aTicketAlreadyClosedIsNotClosedAgain() throws Exception
+    {
+        warmRecurringUserCache("KNOWN", true);
+        // une autre barrière a déjà fait sortir le véhicule, aucune ligne n'est modifiée
+        updatedRows(0);
+
+        assertFalse(ticketDAO.updateTicket(ticket("NEW", true)));
+
+        assertFalse(ticketDAO.isRecurringUser("NEW"));
+    }
+
+    @Test
+    public void archivedTicketsAreStreamedOnceWithTheTicketTable() throws Exception
+    {
+        // le ticket 5 est archivé mais sa suppression de la base n'est pas encore confirmée
+        TicketArchive archive = mock(TicketArchive.class);
+        when(archive.forEachClosedTicket(any(Date.class), any(Date.class), any())).thenAnswer(invocation ->
+        {
+            Consumer<Ticket> consumer = invocation.getArgument(2);
+            Ticket archived = ticket("OLD", true);
+            archived.setId(5);
+            consumer.accept(archived);
+            return Collections.singleton(5);
+        });
+        ticketDAO.enableTicketArchive(archive);
+        PreparedStatement reportStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(DBConstants.GET_TICKETS_CLOSED_BETWEEN, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+            .thenReturn(reportStatement);
+        ResultSet closed = mock(ResultSet.class);
+        when(reportStatement.executeQuery()).thenReturn(closed);
+        when(closed.next()).thenReturn(true, true, false);
+        when(closed.getInt(2)).thenReturn(5, 6);
+        when(closed.getString(6)).thenReturn("CAR");
+
+        List<Integer> ids = new ArrayList<>();
+        ticketDAO.forEachClosedTicket(new Date(0), new Date(), ticket -> ids.add(ticket.getId()));
+
+        assertEquals(Arrays.asList(5, 6), ids);
+    }
+
+    private void enableOpenTicketRegistry(ResultSet... loads) throws Exception
+    {
+        PreparedStatement openTicketsStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(DBConstants.GET_ALL_OPEN_TICKETS)).thenReturn(openTicketsStatement);
+        ResultSet parked = mock(ResultSet.class);
+        when(parked.next()).thenReturn(true, false);
+        when(parked.getInt(1)).thenReturn(2);
+        when(parked.getInt(2)).thenReturn(7);
+        when(parked.getString(6)).thenReturn("CAR");
+        when(parked.getString(7)).thenReturn("PARKED");
+        when(openTicketsStatement.executeQuery()).thenReturn(parked, loads);
+        assertTrue(ticketDAO.enableOpenTicketRegistry(new OpenTicketRegistry()));
+    }
+
+    @Test
+    public void exitAndParkedChecksAreServedFromTheRegistry() throws Exception
+    {
+        enableOpenTicketRegistry();
+
+        Ticket ticket = ticketDAO.getOpenTicket("PARKED");
+        assertEquals(7, ticket.getId());
+        assertEquals(2, ticket.getParkingSpot().getId());
+        assertNull(ticketDAO.hasAlreadyAnOpenTicket("OTHER"));
+        verify(connection, never()).prepareStatement(DBConstants.GET_OPEN_TICKET);
+        verify(connection, never()).prepareStatement(DBConstants.HAS_AN_OPEN_TICKET);
+    }
+
+    @Test
+    public void savingAndClosingATicketUpdateTheRegistry() throws Exception
+    {
+        enableOpenTicketRegistry();
+        when(insertStatement.executeUpdate()).thenReturn(1);
+        updatedRows(1);
+
+        Ticket ticket = ticket("NEW", false);
+        ticketDAO.saveNewTicket(ticket);
+        assertNotNull(ticketDAO.getOpenTicket("NEW"));
+        assertThrows(IllegalStateException.class, () -> ticketDAO.saveNewTicket(ticket("NEW", false)));
+
+        ticket.setOutTime(new Date());
+        assertTrue(ticketDAO.updateTicket(ticket));
+        assertNull(ticketDAO.getOpenTicket("NEW"));
+    }
+
+    @Test
+    public void replayedTicketsAreReservedInTheRegistry() throws Exception
+    {
+        enableOpenTicketRegistry();
+        OpenTicketRegistry registry = ticketDAO.getOpenTicketRegistry();
+        // une barrière est en train de faire entrer "GATE" pendant le rejeu
+        assertTrue(registry.reserve("GATE"));
+
+        List<SaveStatus> statuses = ticketDAO.saveTickets(Arrays.asList(ticket("GATE", false), ticket("REPLAY", false)));
+
+        assertEquals(Arrays.asList(SaveStatus.DUPLICATE_OPEN_TICKET, SaveStatus.SAVED), statuses);
+        assertNotNull(ticketDAO.getOpenTicket("REPLAY"));
+        assertFalse(registry.reserve("REPLAY"));
+    }
+
+    @Test
+    public void failedReplayReleasesItsReservations() throws Exception
+    {
+        enableOpenTicketRegistry();
+        when(insertStatement.executeBatch()).thenThrow(new BatchUpdateException());
+
+        List<SaveStatus> statuses = ticketDAO.saveTickets(Arrays.asList(ticket("REPLAY", false)));
+
+        assertEquals(Arrays.asList(SaveStatus.FAILED), statuses);
+        assertTrue(ticketDAO.getOpenTicketRegistry().reserve("REPLAY"));
+    }
+
+    @Test
+    public void consistencyCheckDropsTicketsClosedElsewhere() throws Exception
+    {
+        // à la vérification, le ticket de "PARKED" a été clos par un autre processus
+        enableOpenTicketRegistry(mock(ResultSet.class));
+        PreparedStatement openTicketStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(DBConstants.GET_OPEN_TICKET)).thenReturn(openTicketStatement);
+        when(openTicketStatement.executeQuery()).thenReturn(mock(ResultSet.class));
+
+        assertEquals(1, ticketDAO.checkOpenTicketRegistry());
+        assertNull(ticketDAO.getOpenTicket("PARKED"));
+    }
+}
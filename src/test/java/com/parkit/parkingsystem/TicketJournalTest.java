@@ -0,0 +1,218 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SaveStatus;
+import com.parkit.parkingsystem.dao.JournalFlusher;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class TicketJournalTest
+{
+    private Path directory;
+    private TicketDAO ticketDAO;
+    private ParkingSpotDAO parkingSpotDAO;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException
+    {
+        directory = Files.createTempDirectory("ticket-journal");
+        ticketDAO = mock(TicketDAO.class);
+        parkingSpotDAO = mock(ParkingSpotDAO.class);
+        when(ticketDAO.closeTickets(anyCollection())).thenReturn(true);
+        when(ticketDAO.saveTickets(anyCollection(), anyInt()))
+            .thenAnswer(invocation -> Collections.nCopies(((Collection<?>) invocation.getArgument(0)).size(), SaveStatus.SAVED));
+        when(parkingSpotDAO.updateParkingSpots(anyCollection())).thenReturn(true);
+    }
+
+    @AfterEach
+    private void tearDownPerTest() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Ticket ticket(int parkingNumber, String vehicleRegNumber)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(1_600_000_000_000L + parkingNumber * 1000L));
+        return ticket;
+    }
+
+    private static Ticket closed(Ticket ticket)
+    {
+        ticket.setOutTime(new Date(ticket.getInTime().getTime() + 3_600_000L));
+        ticket.setPrice(1.5);
+        return ticket;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Ticket> savedTickets()
+    {
+        ArgumentCaptor<Collection<Ticket>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(ticketDAO, atLeastOnce()).saveTickets(captor.capture(), anyInt());
+        List<Ticket> saved = new ArrayList<>();
+        captor.getAllValues().forEach(saved::addAll);
+        return saved;
+    }
+
+    @Test
+    public void recordsNotFlushedAreRecoveredOnNextStart() throws Exception
+    {
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            journal.appendSpot(1, false);
+            journal.appendEntry(ticket(1, "ABC"));
+            journal.appendSpot(2, false);
+            journal.appendEntry(ticket(2, "DEF"));
+        }
+
+        // redémarrage sans flush : les deux entrées arrivent en base à la reprise
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            assertEquals(4, new JournalFlusher(journal, ticketDAO, parkingSpotDAO).recover());
+        }
+        List<Ticket> saved = savedTickets();
+        assertEquals(2, saved.size());
+        assertEquals("ABC", saved.get(0).getVehicleRegNumber());
+        assertEquals(2, saved.get(1).getParkingSpot().getId());
+        verify(ticketDAO, atLeastOnce()).ticketExists(any(String.class), any(Date.class));
+
+        // une fois appliquées elles ne sont plus rejouées
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            assertEquals(0, new JournalFlusher(journal, ticketDAO, parkingSpotDAO).recover());
+        }
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsDropped() throws Exception
+    {
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            journal.appendEntry(ticket(1, "ABC"));
+        }
+        // écriture interrompue par un crash
+        Files.write(directory.resolve("tickets.journal"), "2\tE\tDEF\tCAR\t2\t16000".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            assertEquals(1, new JournalFlusher(journal, ticketDAO, parkingSpotDAO).recover());
+            journal.appendEntry(ticket(3, "GHI"));
+        }
+        List<String> lines = Files.readAllLines(directory.resolve("tickets.journal"), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("GHI"));
+    }
+
+    @Test
+    public void exitOfAnEntryOfTheSameBatchIsSavedAsAClosedTicket() throws Exception
+    {
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            JournalFlusher flusher = new JournalFlusher(journal, ticketDAO, parkingSpotDAO);
+            journal.appendEntry(ticket(1, "ABC"));
+            journal.appendExit(closed(ticket(1, "ABC")));
+            journal.appendExit(closed(ticket(2, "DEF")));
+
+            assertEquals(3, flusher.flush());
+            assertEquals(0, flusher.flush());
+        }
+        List<Ticket> saved = savedTickets();
+        assertEquals(1, saved.size());
+        assertNotNull(saved.get(0).getOutTime());
+        assertEquals(1.5, saved.get(0).getPrice());
+        verify(ticketDAO).closeTickets(argThat(exits -> exits.size() == 1
+                                                        && "DEF".equals(exits.iterator().next().getVehicleRegNumber())));
+        verify(ticketDAO, never()).ticketExists(any(String.class), any(Date.class));
+    }
+
+    @Test
+    public void failedBatchIsAppliedAgainWithoutDuplicates() throws Exception
+    {
+        when(parkingSpotDAO.updateParkingSpots(anyCollection())).thenReturn(false).thenReturn(true);
+        when(ticketDAO.ticketExists("ABC", new Date(1_600_000_001_000L))).thenReturn(true);
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            JournalFlusher flusher = new JournalFlusher(journal, ticketDAO, parkingSpotDAO);
+            journal.appendEntry(ticket(1, "ABC"));
+
+            // les tickets sont passés, les places non
+            assertEquals(0, flusher.flush());
+            assertEquals(1, flusher.flush());
+        }
+        verify(ticketDAO, times(1)).saveTickets(anyCollection(), anyInt());
+        verify(parkingSpotDAO, times(2)).updateParkingSpots(anyCollection());
+    }
+
+    @Test
+    public void everyEntryOfConcurrentGatesIsDurable() throws Exception
+    {
+        int gates = 8;
+        int entriesPerGate = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(gates);
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int gate = 0; gate < gates; gate++)
+            {
+                int first = gate * entriesPerGate;
+                futures.add(executor.submit(() ->
+                {
+                    for (int i = first; i < first + entriesPerGate; i++)
+                    {
+                        journal.appendEntry(ticket(i, "CAR-" + i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        try (TicketJournal journal = TicketJournal.open(directory))
+        {
+            assertEquals(gates * entriesPerGate, new JournalFlusher(journal, ticketDAO, parkingSpotDAO, 100).recover());
+        }
+        assertEquals(gates * entriesPerGate, savedTickets().stream().map(Ticket::getVehicleRegNumber).distinct().count());
+    }
+}
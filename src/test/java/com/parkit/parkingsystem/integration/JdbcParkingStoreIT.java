@@ -0,0 +1,40 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.ParkingStoreConformance;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.SpotRepository;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ * The conformance tests of the stores, against the test database.
+ */
+public class JdbcParkingStoreIT extends ParkingStoreConformance
+{
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        new DataBasePrepareService().clearDataBaseEntries();
+        parkingSpotDAO = new ParkingSpotDAO(dataBaseTestConfig);
+        ticketDAO = new TicketDAO(dataBaseTestConfig);
+    }
+
+    @Override
+    protected TicketRepository ticketRepository()
+    {
+        return ticketDAO;
+    }
+
+    @Override
+    protected SpotRepository spotRepository()
+    {
+        return parkingSpotDAO;
+    }
+}
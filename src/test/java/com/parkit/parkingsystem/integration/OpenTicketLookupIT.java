@@ -0,0 +1,143 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SaveStatus;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenTicketLookupIT
+{
+    private static final String VEHICLE = "ABCDEF";
+    private static final int LOOKUPS = 200;
+    private static final int HISTORY = 50_000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp()
+    {
+        ticketDAO = new TicketDAO(dataBaseTestConfig);
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @Test
+    public void exitFindsTheOpenTicketAndNotTheOldestOne()
+    {
+        long now = System.currentTimeMillis();
+        ticketDAO.saveTickets(Arrays.asList(closedTicket(VEHICLE, now - 3 * 60 * 60 * 1000),
+                                            openTicket(VEHICLE, now - 60 * 60 * 1000)));
+
+        Ticket openTicket = ticketDAO.getOpenTicket(VEHICLE);
+        assertNotNull(openTicket);
+        assertNull(openTicket.getOutTime(), "le ticket trouvé n'est pas le ticket en cours");
+        assertEquals(ParkingType.BIKE, openTicket.getParkingSpot().getParkingType());
+
+        // getTicket rend le ticket le plus récent
+        assertEquals(openTicket.getId(), ticketDAO.getTicket(VEHICLE).getId());
+        assertNull(ticketDAO.getOpenTicket("UNKNOWN"));
+    }
+
+    @Test
+    public void openTicketLookupGoesThroughTheIndex() throws Exception
+    {
+        try
+        (
+            Connection con = dataBaseTestConfig.getConnection();
+            ResultSet rs = con.createStatement().executeQuery("explain " + DBConstants.GET_OPEN_TICKET.replace("?", "'" + VEHICLE + "'"))
+        )
+        {
+            boolean ticketTableSeen = false;
+            while (rs.next())
+            {
+                if ("t".equals(rs.getString("table")))
+                {
+                    ticketTableSeen = true;
+                    assertEquals("TICKET_VEHICLE_OUT_TIME", rs.getString("key"), "la recherche du ticket en cours ne passe pas par l'index");
+                }
+            }
+            assertTrue(ticketTableSeen);
+        }
+    }
+
+    @Test
+    public void exitLatencyStaysFlatAsHistoryGrows()
+    {
+        long now = System.currentTimeMillis();
+        ticketDAO.saveTickets(Arrays.asList(openTicket(VEHICLE, now - 60 * 60 * 1000)));
+        long medianWithoutHistory = medianLookupNanos();
+
+        // un historique important pour le même véhicule et pour les autres
+        List<Ticket> history = new ArrayList<>(HISTORY);
+        for (int i = 0; i < HISTORY; i++)
+        {
+            history.add(closedTicket(i % 2 == 0 ? VEHICLE : "H" + i, now - 2L * (HISTORY - i) * 60 * 60 * 1000));
+        }
+        assertFalse(ticketDAO.saveTickets(history).contains(SaveStatus.FAILED));
+        long medianWithHistory = medianLookupNanos();
+
+        assertTrue(medianWithHistory <= 3 * medianWithoutHistory + 1_000_000,
+                   "temps médian de sortie passé de " + medianWithoutHistory / 1000 + " µs à " + medianWithHistory / 1000 + " µs");
+    }
+
+    private long medianLookupNanos()
+    {
+        // le premier passage prépare les requêtes et charge les pages de l'index
+        for (int i = 0; i < LOOKUPS / 10; i++)
+        {
+            assertNotNull(ticketDAO.getOpenTicket(VEHICLE));
+        }
+        long[] durations = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++)
+        {
+            long start = System.nanoTime();
+            assertNotNull(ticketDAO.getOpenTicket(VEHICLE));
+            durations[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+        return durations[LOOKUPS / 2];
+    }
+
+    private static Ticket openTicket(String vehicleRegNumber, long inTime)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(4, ParkingType.BIKE, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        return ticket;
+    }
+
+    private static Ticket closedTicket(String vehicleRegNumber, long inTime)
+    {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(new Date(inTime + 60 * 60 * 1000));
+        ticket.setPrice(1.5);
+        return ticket;
+    }
+}
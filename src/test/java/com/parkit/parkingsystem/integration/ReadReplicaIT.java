@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@code test} stands for the primary and {@code test_replica} for its replica. Nothing replicates between them:
+ * the test plays the replication by writing the heartbeat of the replica itself.
+ */
+public class ReadReplicaIT
+{
+    private static final String ONLY_ON_REPLICA = "REPLICA";
+
+    private static DataBaseTestConfig replicaTestConfig;
+    private static DataBaseTestConfig dataBaseTestConfig;
+    private static TicketDAO ticketDAO;
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp()
+    {
+        // the test decides when the replica is read, not the background heartbeat
+        System.setProperty("parkit.db.replica.heartbeatMillis", "3600000");
+        dataBasePrepareService = new DataBasePrepareService();
+        dataBasePrepareService.createReplicaDataBase();
+        replicaTestConfig = new DataBaseTestConfig("test_replica", Collections.emptyList());
+        dataBaseTestConfig = new DataBaseTestConfig("test", Collections.<DataBaseConfig>singletonList(replicaTestConfig));
+        ticketDAO = new TicketDAO(dataBaseTestConfig);
+        parkingSpotDAO = new ParkingSpotDAO(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception
+    {
+        dataBasePrepareService.clearDataBaseEntries();
+        try (Connection con = replicaTestConfig.getConnection())
+        {
+            con.prepareStatement("truncate table ticket").execute();
+            // un véhicule connu du seul réplica : le lire montre où la lecture est allée
+            PreparedStatement ps = con.prepareStatement("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(1, ?, 1.5, ?, ?)");
+            long now = System.currentTimeMillis();
+            ps.setString(1, ONLY_ON_REPLICA);
+            ps.setTimestamp(2, new Timestamp(now - 2 * 60 * 60 * 1000));
+            ps.setTimestamp(3, new Timestamp(now - 60 * 60 * 1000));
+            ps.execute();
+        }
+        replicate();
+    }
+
+    @AfterEach
+    private void tearDownPerTest()
+    {
+        ThreadContext.remove("gate");
+        ThreadContext.remove(DataBaseConfig.NO_SESSION);
+    }
+
+    /**
+     * The replica catches up with everything committed on the primary so far.
+     */
+    private static void replicate() throws Exception
+    {
+        setReplicaHeartbeat(System.currentTimeMillis() + 1);
+    }
+
+    private static void setReplicaHeartbeat(long beat) throws Exception
+    {
+        Thread.sleep(2);
+        try (Connection con = replicaTestConfig.getConnection())
+        {
+            PreparedStatement ps = con.prepareStatement("update replication_heartbeat set BEAT = ? where ID = 1");
+            ps.setLong(1, beat);
+            ps.execute();
+        }
+        dataBaseTestConfig.getReplicaSet().checkReplicas();
+    }
+
+    private static boolean readsFromReplica(String gate)
+    {
+        ThreadContext.put("gate", gate);
+        return ticketDAO.isRecurringUser(ONLY_ON_REPLICA);
+    }
+
+    @Test
+    public void readsGoToAFreshReplica()
+    {
+        assertTrue(readsFromReplica("north"));
+        assertTrue(readsFromReplica("south"));
+        assertEquals(5, parkingSpotDAO.countSlotByType(ParkingType.CAR) + parkingSpotDAO.countSlotByType(ParkingType.BIKE));
+    }
+
+    @Test
+    public void aGateReadsFromThePrimaryAfterItsOwnWriteUntilTheReplicaHasIt() throws Exception
+    {
+        ThreadContext.put("gate", "north");
+        assertTrue(parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false)));
+
+        assertFalse(readsFromReplica("north"));
+        // les autres barrières n'ont rien écrit, elles lisent toujours le réplica
+        assertTrue(readsFromReplica("south"));
+
+        replicate();
+        assertTrue(readsFromReplica("north"));
+    }
+
+    @Test
+    public void aCallerWithoutSessionReadsFromThePrimary()
+    {
+        ThreadContext.put(DataBaseConfig.NO_SESSION, "true");
+        assertFalse(readsFromReplica("/127.0.0.1:50412"));
+
+        ThreadContext.remove(DataBaseConfig.NO_SESSION);
+        assertTrue(readsFromReplica("north"));
+    }
+
+    @Test
+    public void aLaggingReplicaIsNoLongerRead() throws Exception
+    {
+        setReplicaHeartbeat(System.currentTimeMillis() - 60_000);
+
+        assertFalse(readsFromReplica("north"));
+        assertFalse(readsFromReplica("south"));
+        assertEquals(ParkingType.CAR, parkingSpotDAO.getOccupancy(ParkingType.CAR).getParkingType());
+    }
+}
@@ -0,0 +1,207 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpotAllocationConcurrencyIT
+{
+    private static final int GATES = 16;
+    private static final int CYCLES_PER_GATE = 50;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp()
+    {
+        parkingSpotDAO = new ParkingSpotDAO(dataBaseTestConfig);
+        ticketDAO = new TicketDAO(dataBaseTestConfig);
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ParkingType.class)
+    public void concurrentGatesFillTheLotWithoutSharingASpot(ParkingType parkingType) throws Exception
+    {
+        int numberOfSlot = parkingSpotDAO.countSlotByType(parkingType);
+        Set<Integer> allocatedSpots = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService gates = Executors.newFixedThreadPool(GATES);
+        List<Future<?>> results = new ArrayList<>();
+        for (int gate = 0; gate < GATES; gate++)
+        {
+            String vehicleRegNumber = "G" + gate + parkingType.name().charAt(0);
+            results.add(gates.submit(() ->
+            {
+                start.await();
+                Ticket ticket = parkingSpotDAO.allocateSpot(parkingType, vehicleRegNumber);
+                if (ticket != null && !allocatedSpots.add(ticket.getParkingSpot().getId()))
+                {
+                    duplicates.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results)
+        {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        gates.shutdown();
+
+        // on s'assure qu'aucune place n'a été attribuée deux fois et que toutes les places ont été remplies
+        assertEquals(0, duplicates.get(), "une place a été attribuée deux fois");
+        assertEquals(numberOfSlot, allocatedSpots.size());
+        assertEquals(0, parkingSpotDAO.getNextAvailableSlot(parkingType));
+        assertEquals(0, countSpotsWithSeveralOpenTickets());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ParkingType.class)
+    public void concurrentEntriesAndExitsNeverShareASpot(ParkingType parkingType) throws Exception
+    {
+        Set<Integer> occupiedSpots = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger allocations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService gates = Executors.newFixedThreadPool(GATES);
+        List<Future<?>> results = new ArrayList<>();
+        for (int gate = 0; gate < GATES; gate++)
+        {
+            String vehicleRegNumber = "G" + gate + parkingType.name().charAt(0);
+            results.add(gates.submit(() ->
+            {
+                start.await();
+                for (int cycle = 0; cycle < CYCLES_PER_GATE; cycle++)
+                {
+                    Ticket ticket = parkingSpotDAO.allocateSpot(parkingType, vehicleRegNumber);
+                    if (ticket == null)
+                    {
+                        continue;
+                    }
+                    allocations.incrementAndGet();
+                    int parkingNumber = ticket.getParkingSpot().getId();
+                    if (!occupiedSpots.add(parkingNumber))
+                    {
+                        duplicates.incrementAndGet();
+                    }
+
+                    // la place est libérée de la table en mémoire avant la base pour ne jamais masquer un doublon
+                    occupiedSpots.remove(parkingNumber);
+                    ticket.setOutTime(new Date());
+                    ticketDAO.updateTicket(ticket);
+                    parkingSpotDAO.updateParking(new ParkingSpot(parkingNumber, parkingType, true));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results)
+        {
+            result.get(120, TimeUnit.SECONDS);
+        }
+        gates.shutdown();
+
+        assertTrue(allocations.get() > 0);
+        assertEquals(0, duplicates.get(), "une place a été attribuée à deux véhicules en même temps");
+        assertEquals(0, countSpotsWithSeveralOpenTickets());
+    }
+
+    @Test
+    public void aVehicleEnteringThroughSeveralGatesAtOnceGetsOneTicket() throws Exception
+    {
+        AtomicInteger tickets = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService gates = Executors.newFixedThreadPool(GATES);
+        List<Future<?>> results = new ArrayList<>();
+        for (int gate = 0; gate < GATES; gate++)
+        {
+            results.add(gates.submit(() ->
+            {
+                start.await();
+                try
+                {
+                    if (parkingSpotDAO.allocateSpot(ParkingType.CAR, "SAME") != null)
+                    {
+                        tickets.incrementAndGet();
+                    }
+                }
+                catch (IllegalStateException e)
+                {
+                    // refusé : le véhicule est déjà entré par une autre barrière
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results)
+        {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        gates.shutdown();
+
+        // chaque barrière lit qu'aucun ticket n'est ouvert avant de prendre une place, la base n'en garde qu'un
+        assertEquals(1, tickets.get());
+        try
+        (
+            Connection con = dataBaseTestConfig.getConnection();
+            ResultSet rs = con.prepareStatement("select count(*) from ticket where VEHICLE_REG_NUMBER = 'SAME' and OUT_TIME is null").executeQuery()
+        )
+        {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+        assertEquals(parkingSpotDAO.countSlotByType(ParkingType.CAR) - 1, parkingSpotDAO.getOccupancy(ParkingType.CAR).getFree());
+    }
+
+    private int countSpotsWithSeveralOpenTickets() throws Exception
+    {
+        try
+        (
+            Connection con = dataBaseTestConfig.getConnection();
+            ResultSet rs = con.prepareStatement("select count(*) from (select PARKING_NUMBER from ticket where OUT_TIME is null group by PARKING_NUMBER having count(*) > 1) shared").executeQuery()
+        )
+        {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.LeasedSpotAllocator;
+import com.parkit.parkingsystem.dao.OpenTicketRegistry;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ExitResult;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes on the test database, each with its own DAOs, registry and cache, as two processes would have.
+ */
+public class SpotLeaseNodesIT
+{
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+
+    private final List<LeasedSpotAllocator> allocators = new ArrayList<>();
+
+    private static final class Node
+    {
+        final ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseTestConfig);
+        final TicketDAO ticketDAO = new TicketDAO(dataBaseTestConfig);
+        LeasedSpotAllocator allocator;
+        ParkingService parkingService;
+    }
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @AfterEach
+    private void tearDownPerTest()
+    {
+        allocators.forEach(LeasedSpotAllocator::close);
+    }
+
+    private Node node(String nodeId, boolean inMemoryState)
+    {
+        Node node = new Node();
+        if (inMemoryState)
+        {
+            OpenTicketRegistry registry = new OpenTicketRegistry();
+            assertTrue(node.ticketDAO.enableOpenTicketRegistry(registry));
+            node.parkingSpotDAO.setOpenTicketRegistry(registry);
+            assertTrue(node.ticketDAO.enableRecurringUserCache(1_000, 0.01, 100, false));
+        }
+        node.allocator = new LeasedSpotAllocator(nodeId, node.parkingSpotDAO, node.parkingSpotDAO, 1, 60_000);
+        node.allocator.maintain();
+        allocators.add(node.allocator);
+        node.parkingService = new ParkingService(null, node.allocator, node.ticketDAO);
+        return node;
+    }
+
+    @Test
+    public void aVehicleParkedThroughOneNodeCannotEnterThroughAnother()
+    {
+        // chaque nœud a son propre registre, qui ignore les tickets ouverts par l'autre
+        Node first = node("first", true);
+        Node second = node("second", true);
+        assertEquals(1, first.allocator.getLeasedCount(ParkingType.CAR));
+        assertEquals(1, second.allocator.getLeasedCount(ParkingType.CAR));
+
+        Ticket ticket = first.allocator.allocateSpot(ParkingType.CAR, "ABC");
+        assertNotNull(ticket);
+
+        assertThrows(IllegalStateException.class, () -> second.allocator.allocateSpot(ParkingType.CAR, "ABC"));
+        assertEquals(1, second.allocator.getLeasedCount(ParkingType.CAR));
+    }
+
+    @Test
+    public void aVehicleLeavesThroughAnotherNodeThanTheOneItEnteredBy()
+    {
+        // sans état en mémoire, comme InteractiveShell configure un nœud qui loue ses places
+        Node first = node("first", false);
+        Node second = node("second", false);
+
+        assertNotNull(first.parkingService.enter(ParkingType.CAR, "ABC").getTicket());
+        assertEquals(ExitResult.Status.EXITED, second.parkingService.exit("ABC").getStatus());
+        // le ticket fermé par l'autre nœud compte pour la réduction des habitués
+        assertTrue(first.parkingService.enter(ParkingType.CAR, "ABC").isRecurringUser());
+    }
+}
@@ -0,0 +1,67 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SaveStatus;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketBatchIT
+{
+    private static final int REPLAYED_TICKETS = 100_000;
+
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp()
+    {
+        ticketDAO = new TicketDAO(new DataBaseTestConfig());
+        dataBasePrepareService = new DataBasePrepareService();
+    }
+
+    @BeforeEach
+    private void setUpPerTest()
+    {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    @Test
+    public void replayOfAnOfflineGateLogTakesSeconds()
+    {
+        // journal d'une borne hors ligne : 100 000 tickets clos sur la place 1
+        long now = System.currentTimeMillis();
+        List<Ticket> tickets = new ArrayList<>(REPLAYED_TICKETS);
+        for (int i = 0; i < REPLAYED_TICKETS; i++)
+        {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("R" + i);
+            ticket.setInTime(new Date(now - 2 * 60 * 60 * 1000));
+            ticket.setOutTime(new Date(now - 60 * 60 * 1000));
+            ticket.setPrice(1.5);
+            tickets.add(ticket);
+        }
+
+        long start = System.nanoTime();
+        List<SaveStatus> statuses = ticketDAO.saveTickets(tickets);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Replayed " + REPLAYED_TICKETS + " tickets in " + elapsedMillis + " ms");
+
+        assertEquals(REPLAYED_TICKETS, statuses.size());
+        assertTrue(statuses.stream().allMatch(status -> status == SaveStatus.SAVED));
+        assertTrue(ticketDAO.isRecurringUser("R" + (REPLAYED_TICKETS - 1)));
+        assertTrue(elapsedMillis < 30_000, "replaying " + REPLAYED_TICKETS + " tickets took " + elapsedMillis + " ms");
+    }
+}
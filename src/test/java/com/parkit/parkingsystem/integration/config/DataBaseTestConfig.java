@@ -1,71 +1,25 @@
 package com.parkit.parkingsystem.integration.config;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
-import java.sql.*;
+import java.util.Collections;
+import java.util.List;
 
 public class DataBaseTestConfig extends DataBaseConfig
 {
-
-    private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
-
-    public Connection getConnection() throws ClassNotFoundException, SQLException
-    {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-//        return DriverManager.getConnection("jdbc:mysql://localhost:3306/test", "root", "rootroot");
-
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/test?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC", "root", "rootroot");
-    }
-
-    public void closeConnection(Connection con)
-    {
-        if (con != null)
-        {
-            try
-            {
-                con.close();
-                logger.info("Closing DB connection");
-            }
-            catch (SQLException e)
-            {
-                logger.error("Error while closing connection", e);
-            }
-        }
-    }
-
-    public void closePreparedStatement(PreparedStatement ps)
+    public DataBaseTestConfig()
     {
-        if (ps != null)
-        {
-            try
-            {
-                ps.close();
-                logger.info("Closing Prepared Statement");
-            }
-            catch (SQLException e)
-            {
-                logger.error("Error while closing prepared statement", e);
-            }
-        }
+        this("test", Collections.emptyList());
     }
 
-    public void closeResultSet(ResultSet rs)
+    /**
+     * @param replicas read replicas of the database, usually a {@code DataBaseTestConfig} of {@code test_replica}
+     */
+    public DataBaseTestConfig(String schema, List<DataBaseConfig> replicas)
     {
-        if (rs != null)
-        {
-            try
-            {
-                rs.close();
-                logger.info("Closing Result Set");
-            }
-            catch (SQLException e)
-            {
-                logger.error("Error while closing result set", e);
-            }
-        }
+        super("jdbc:mysql://localhost:3306/" + schema + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC&rewriteBatchedStatements=true&useServerPrepStmts=true&useCursorFetch=true",
+              "root",
+              "rootroot",
+              replicas);
     }
 }
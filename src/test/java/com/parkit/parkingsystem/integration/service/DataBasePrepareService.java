@@ -14,7 +14,7 @@ public class DataBasePrepareService {
             connection = dataBaseTestConfig.getConnection();
 
             //set parking entries to available
-            connection.prepareStatement("update parking set available = true").execute();
+            connection.prepareStatement("update parking set available = true, LEASE_OWNER = null, LEASE_EXPIRY = null").execute();
 
             //clear ticket entries;
             connection.prepareStatement("truncate table ticket").execute();
@@ -26,5 +26,25 @@ public class DataBasePrepareService {
         }
     }
 
+    /**
+     * Creates {@code test_replica}, a second database standing in for a read replica of {@code test}, fed by the tests.
+     */
+    public void createReplicaDataBase(){
+        Connection connection = null;
+        try{
+            connection = dataBaseTestConfig.getConnection();
+            connection.prepareStatement("create database if not exists test_replica").execute();
+            connection.prepareStatement("create table if not exists test_replica.parking like test.parking").execute();
+            connection.prepareStatement("create table if not exists test_replica.ticket like test.ticket").execute();
+            connection.prepareStatement("create table if not exists test_replica.replication_heartbeat like test.replication_heartbeat").execute();
+            connection.prepareStatement("replace into test_replica.parking select * from test.parking").execute();
+            connection.prepareStatement("replace into test_replica.replication_heartbeat select * from test.replication_heartbeat").execute();
+        }catch(Exception e){
+            e.printStackTrace();
+        }finally {
+            dataBaseTestConfig.closeConnection(connection);
+        }
+    }
+
 
 }